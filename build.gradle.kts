@@ -17,11 +17,38 @@ repositories {
     mavenCentral()
 }
 
+// JMH benchmarks in src/jmh/java, run them with `./gradlew jmh`
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+// Runs the benchmarks and writes the results to build/reports/jmh/results.json, so they can be compared with a baseline.
+// Select benchmarks with -Pjmh.include=<regex>, e.g. -Pjmh.include=WarehouseBenchmark
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    val workingDirectory = layout.buildDirectory.dir("jmh").get().asFile // benchmarks write their log files here
+    workingDir = workingDirectory
+    args("-rf", "json", "-rff", results.absolutePath)
+    project.findProperty("jmh.include")?.let { args(it.toString()) }
+    doFirst {
+        results.parentFile.mkdirs()
+        workingDirectory.mkdirs()
+    }
+}
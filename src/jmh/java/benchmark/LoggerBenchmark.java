@@ -0,0 +1,46 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import product.Product;
+import utils.Event;
+import utils.Logger;
+import utils.Messages;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the calling thread spends in Logger.log and Logger.event. The records are written by the logger thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.console=false")
+@State(Scope.Benchmark)
+public class LoggerBenchmark {
+
+    private static final String LOG_FILE = "benchmark_log.txt";
+
+    @TearDown(Level.Iteration)
+    public void flush() {
+        Logger.flush(10000);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void message() {
+        Logger.log(Messages.getBuyAttemptMessage(1, 0, Product.SALT, 3), LOG_FILE);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void event() {
+        Logger.event(Event.BUY_ATTEMPT, 1, 0, Product.SALT, 3, LOG_FILE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void eventMultiThreaded() {
+        Logger.event(Event.BUY_ATTEMPT, 1, 0, Product.SALT, 3, LOG_FILE);
+    }
+}
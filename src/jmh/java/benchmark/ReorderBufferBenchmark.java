@@ -0,0 +1,80 @@
+package benchmark;
+
+import cache.FIFOWarehouseCache;
+import cache.UpdateMessage;
+import org.openjdk.jmh.annotations.*;
+import product.Product;
+import warehouse.Warehouse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time FIFOWarehouseCache.updateCache needs per cache update, when the updates arrive shuffled within windows
+ * of windowSize sequence numbers. A window size of 1 means the updates arrive in order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.console=false")
+@State(Scope.Thread)
+public class ReorderBufferBenchmark {
+
+    private static final int UPDATES = 1024; // cache updates per invocation
+
+    @Param({"1", "16", "256"})
+    public int windowSize;
+
+    private Warehouse warehouse;
+    private File inventoryFile;
+    private File inventoryLogFile;
+    private UpdateMessage[] updateMessages;
+    private FIFOWarehouseCache cache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        inventoryFile = File.createTempFile("inventory", ".txt");
+        inventoryLogFile = File.createTempFile("inventory_log", ".txt");
+        warehouse = new Warehouse(false, inventoryFile.getPath(), inventoryLogFile.getPath());
+
+        // sequence numbers 1 to UPDATES, shuffled within each window
+        Random random = new Random(42);
+        updateMessages = new UpdateMessage[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            updateMessages[i] = new UpdateMessage(i + 1, 0, Product.FISH, i % 2 == 0 ? 1 : -1);
+        }
+        for (int start = 0; start < UPDATES; start += windowSize) {
+            int end = Math.min(start + windowSize, UPDATES);
+            for (int i = end - 1; i > start; i--) {
+                int j = start + random.nextInt(i - start + 1);
+                UpdateMessage swap = updateMessages[i];
+                updateMessages[i] = updateMessages[j];
+                updateMessages[j] = swap;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventoryFile.delete();
+        inventoryLogFile.delete();
+    }
+
+    // the sequence numbers start at 1 again, so every invocation needs a new cache
+    @Setup(Level.Invocation)
+    public void newCache() {
+        cache = new FIFOWarehouseCache(warehouse);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public FIFOWarehouseCache drain() {
+        for (UpdateMessage updateMessage : updateMessages) {
+            cache.updateCache(updateMessage);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,66 @@
+package benchmark;
+
+import cache.FIFOWarehouseCache;
+import cache.UpdateMessage;
+import org.openjdk.jmh.annotations.*;
+import peer.IPeer;
+import peer.ReplyStatus;
+import peer.Seller;
+import product.Product;
+import warehouse.Warehouse;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a trader handling sell and buy requests in the same process, without RMI between buyer, trader
+ * and warehouse. Includes the cache and the cache update of the trader itself.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.console=false")
+@State(Scope.Thread)
+public class TraderBenchmark {
+
+    private static final int BUYER_ID = 1;
+    private static final int SELLER_ID = 2;
+
+    private Seller trader;
+    private File inventoryFile;
+    private File inventoryLogFile;
+    private int buyerSequenceNumber;
+    private int sellerSequenceNumber;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        inventoryFile = File.createTempFile("inventory", ".txt");
+        inventoryLogFile = File.createTempFile("inventory_log", ".txt");
+        Warehouse warehouse = new Warehouse(false, inventoryFile.getPath(), inventoryLogFile.getPath());
+
+        trader = new Seller(0, new FIFOWarehouseCache(warehouse), 1);
+        trader.setPeers(new IPeer[] { trader });
+        trader.election(new int[] {}, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventoryFile.delete();
+        inventoryLogFile.delete();
+    }
+
+    @Benchmark
+    public ReplyStatus sell() throws RemoteException {
+        return trader.sell(new UpdateMessage(++sellerSequenceNumber, SELLER_ID, Product.BOARS, 1));
+    }
+
+    // sells first, so the buy does not fail because of missing stock
+    @Benchmark
+    public ReplyStatus sellAndBuy() throws RemoteException {
+        trader.sell(new UpdateMessage(++sellerSequenceNumber, SELLER_ID, Product.BOARS, 1));
+        return trader.buy(new UpdateMessage(++buyerSequenceNumber, BUYER_ID, Product.BOARS, 1));
+    }
+}
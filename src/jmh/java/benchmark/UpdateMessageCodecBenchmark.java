@@ -0,0 +1,64 @@
+package benchmark;
+
+import cache.UpdateMessage;
+import cache.UpdateMessageCodec;
+import org.openjdk.jmh.annotations.*;
+import product.Product;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of a batch of update messages with UpdateMessageCodec and with Java serialization, as RMI does it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UpdateMessageCodecBenchmark {
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    private List<UpdateMessage> updateMessages;
+    private ByteBuffer encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        updateMessages = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            updateMessages.add(new UpdateMessage(i + 1, 3, Product.SALT, -2));
+        }
+        ByteBuffer buffer = UpdateMessageCodec.getBuffer(UpdateMessageCodec.sizeOf(updateMessages));
+        UpdateMessageCodec.encode(updateMessages, buffer);
+        encoded = ByteBuffer.allocate(buffer.position()).put(buffer.flip()).flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        ByteBuffer buffer = UpdateMessageCodec.getBuffer(UpdateMessageCodec.sizeOf(updateMessages));
+        UpdateMessageCodec.encode(updateMessages, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public List<UpdateMessage> decode() {
+        return UpdateMessageCodec.decodeAll(encoded.duplicate());
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(updateMessages);
+        }
+        return bytes.toByteArray();
+    }
+}
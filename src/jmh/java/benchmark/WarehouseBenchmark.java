@@ -0,0 +1,74 @@
+package benchmark;
+
+import cache.UpdateMessage;
+import org.openjdk.jmh.annotations.*;
+import peer.ReplyStatus;
+import product.Product;
+import warehouse.Warehouse;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of Warehouse.sell and Warehouse.buy, called directly without RMI.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.console=false")
+@State(Scope.Benchmark)
+public class WarehouseBenchmark {
+
+    private Warehouse warehouse;
+    private File inventoryFile;
+    private File inventoryLogFile;
+    private final AtomicInteger nextPeerID = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        inventoryFile = File.createTempFile("inventory", ".txt");
+        inventoryLogFile = File.createTempFile("inventory_log", ".txt");
+        warehouse = new Warehouse(false, inventoryFile.getPath(), inventoryLogFile.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventoryFile.delete();
+        inventoryLogFile.delete();
+    }
+
+    // every benchmark thread acts as its own peer, so the sequence numbers of the threads don't collide.
+    @State(Scope.Thread)
+    public static class PeerState {
+        int peerID;
+        int sequenceNumber;
+
+        @Setup(Level.Trial)
+        public void setup(WarehouseBenchmark benchmark) {
+            peerID = benchmark.nextPeerID.getAndIncrement();
+            sequenceNumber = 0;
+        }
+    }
+
+    // sells and buys the same amount, so the stock stays the same
+    private ReplyStatus sellAndBuy(PeerState peer) throws RemoteException {
+        warehouse.sell(new UpdateMessage(++peer.sequenceNumber, peer.peerID, Product.SALT, 1));
+        return warehouse.buy(new UpdateMessage(++peer.sequenceNumber, peer.peerID, Product.SALT, 1));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ReplyStatus singleThreaded(PeerState peer) throws RemoteException {
+        return sellAndBuy(peer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ReplyStatus multiThreaded(PeerState peer) throws RemoteException {
+        return sellAndBuy(peer);
+    }
+}
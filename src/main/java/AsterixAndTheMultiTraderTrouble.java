@@ -1,12 +1,26 @@
+import cache.WarehouseCachePolicies;
+import failure.PhiAccrualFailureDetector;
+import metrics.Metrics;
+import peer.APeer;
+import peer.Directory;
 import peer.IPeer;
+import peer.OrderWindow;
+import peer.PeerHost;
+import transport.Transport;
+import utils.Scheduler;
+import warehouse.FailoverWarehouse;
+import warehouse.InventoryLog;
+import warehouse.IWarehouseReplica;
+import warehouse.Warehouse;
 
 import java.io.IOException;
-import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 public class AsterixAndTheMultiTraderTrouble {
@@ -16,69 +30,117 @@ public class AsterixAndTheMultiTraderTrouble {
     public static String BUYER_CLASS = "peer.Buyer";
     public static String SELLER_CLASS = "peer.Seller";
     public static String WAREHOUSE_CLASS = "warehouse.Warehouse";
+    public static String HOST_CLASS = "peer.PeerHost";
+    public static String WORKERS_PROPERTY = "workers"; // number of JVMs to host the peers in, 0 for one JVM per peer
+    public static String BACKUPS_PROPERTY = "warehouse.backups"; // number of backups of the warehouse
     public static String CORES_LIMIT =  "-XX:ActiveProcessorCount=1";
 
     public static boolean SEND_HEARTBEATS = true;
     public static int TRADER_CRASH_TIME = 15000; // set higher than zero to simulate crash.
+    public static int WAREHOUSE_CRASH_TIME = 0; // set higher than zero to simulate crash of the primary warehouse.
 
-    public static void main(String[] args) throws IOException, InterruptedException, NotBoundException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         int b = Integer.parseInt(args[0]); // Number of buyers
         int s = Integer.parseInt(args[1]); // Number of sellers
         int t = Integer.parseInt(args[2]); // Number of traders
         int n = b + s; // number of peers
 
-        Registry registry = LocateRegistry.createRegistry(REGISTRY_PORT);
-        runProcess("java", CORES_LIMIT, "-cp", CLASS_PATH, WAREHOUSE_CLASS);
-
-        Thread.sleep(1000); // ensure that warehouse is bound
-
-        Process[] processes = new Process[n];
-
-        // initialize all peers
-        for (int i = 0; i < n; i++) {
+        // cache policy of the traders, defaults to the cache.policy system property
+        String cachePolicy = args.length > 3
+                ? args[3]
+                : System.getProperty(WarehouseCachePolicies.POLICY_PROPERTY, WarehouseCachePolicies.DEFAULT_POLICY);
+        if (!WarehouseCachePolicies.getNames().contains(cachePolicy)) {
+            throw new IllegalArgumentException("Unknown cache policy " + cachePolicy + ". Available policies: " + WarehouseCachePolicies.getNames() + ".");
+        }
 
-            String className;
-
-            if (b == 0) {
-                className = SELLER_CLASS;
-            } else if (s == 0) {
-                className = BUYER_CLASS;
-            } else if (i % 2 == 0) {
-                b--;
-                className = BUYER_CLASS;
-            } else {
-                className = SELLER_CLASS;
-                s--;
+        Registry registry = LocateRegistry.createRegistry(REGISTRY_PORT);
+        // peers and warehouse announce themselves here once they are bound
+        Directory directory = new Directory(n);
+        registry.rebind(Directory.DIRECTORY_NAME, directory);
+        long startTime = System.currentTimeMillis();
+        // text or binary logs, forwarded to all processes
+        String logFormat = "-Dlog.format=" + System.getProperty("log.format", "text");
+        // rmi or nio for trades and cache updates, forwarded to all processes
+        String transport = "-D" + Transport.TRANSPORT_PROPERTY + "=" + System.getProperty(Transport.TRANSPORT_PROPERTY, Transport.DEFAULT_TRANSPORT);
+        String cachePolicyOption = "-D" + WarehouseCachePolicies.POLICY_PROPERTY + "=" + cachePolicy;
+        String startupTimeout = "-Dstartup.timeout=" + Directory.STARTUP_TIMEOUT;
+        // tree or ring election, forwarded to all processes
+        String electionMode = "-Delection.mode=" + APeer.ELECTION_MODE;
+        // suspicion threshold and tolerated pause of the failure detector, forwarded to all processes
+        String failureThreshold = "-Dfailure.threshold=" + PhiAccrualFailureDetector.THRESHOLD;
+        String failurePause = "-Dfailure.pause=" + PhiAccrualFailureDetector.ACCEPTABLE_PAUSE;
+        // how far behind a backup may be to answer lookups, forwarded to all peers
+        String staleness = "-Dwarehouse.staleness=" + FailoverWarehouse.MAX_STALENESS;
+        // how often every process writes its metrics file, forwarded to all processes
+        String metricsInterval = "-Dmetrics.interval=" + Metrics.REPORT_INTERVAL;
+        // how the warehouses group the writes of their logs, forwarded to the warehouses
+        String commitBatch = "-D" + InventoryLog.COMMIT_BATCH_PROPERTY + "=" + InventoryLog.COMMIT_BATCH_SIZE;
+        String commitLinger = "-D" + InventoryLog.COMMIT_LINGER_PROPERTY + "=" + InventoryLog.COMMIT_LINGER;
+        // when the buyers and sellers place orders and how many buys may run at once, forwarded to all peers
+        List<String> workloadOptions = new ArrayList<>(APeer.WORKLOAD.toOptions());
+        workloadOptions.add("-D" + OrderWindow.SIZE_PROPERTY + "=" + OrderWindow.SIZE);
+        String[] peerTypes = PeerHost.getPeerTypes(b, s);
+        List<Process> processes = new ArrayList<>();
+
+        int workers = Math.min(Integer.getInteger(WORKERS_PROPERTY, 0), n);
+        if (workers <= 0) {
+            // one JVM for the warehouse and one for every peer
+            runProcess("java", CORES_LIMIT, logFormat, transport, metricsInterval, commitBatch, commitLinger, "-cp", CLASS_PATH, WAREHOUSE_CLASS);
+
+            // initialize all peers, they wait for the warehouse themselves
+            for (int i = 0; i < n; i++) {
+                String className = peerTypes[i].equals(PeerHost.BUYER_TYPE) ? BUYER_CLASS : SELLER_CLASS;
+                List<String> cmd = new ArrayList<>(List.of("java", CORES_LIMIT, cachePolicyOption, logFormat, transport, startupTimeout, electionMode, failureThreshold, failurePause, staleness, metricsInterval));
+                cmd.addAll(workloadOptions);
+                cmd.addAll(List.of("-cp", CLASS_PATH, className, "" + i, "" + n));
+                processes.add(runProcess(cmd.toArray(new String[0])));
+            }
+        } else {
+            // pack neighboring peers into the worker JVMs, the first one also hosts the warehouse
+            for (int w = 0; w < workers; w++) {
+                List<String> cmd = new ArrayList<>(List.of("java", cachePolicyOption, logFormat, transport, startupTimeout, electionMode, failureThreshold, failurePause, staleness, metricsInterval, commitBatch, commitLinger));
+                cmd.addAll(workloadOptions);
+                cmd.addAll(List.of("-cp", CLASS_PATH, HOST_CLASS, "" + n));
+                if (w == 0) {
+                    cmd.add(PeerHost.WAREHOUSE_ARGUMENT);
+                }
+                for (int i = w * n / workers; i < (w + 1) * n / workers; i++) {
+                    cmd.add(i + ":" + peerTypes[i]);
+                }
+                processes.add(runProcess(cmd.toArray(new String[0])));
             }
-
-            Process process = runProcess(
-                    "java",
-                    CORES_LIMIT,
-                    "-cp",
-                    CLASS_PATH,
-                    className,
-                    "" + i,
-                    "" + n);
-
-            processes[i] = process;
         }
 
-        Thread.sleep(2000); // ensure that all peers are bound
+        // backups of the warehouse, they join the primary as soon as it is bound
+        int backups = Integer.getInteger(BACKUPS_PROPERTY, 1);
+        for (int i = 0; i < backups; i++) {
+            runProcess("java", CORES_LIMIT, logFormat, startupTimeout, metricsInterval, commitBatch, commitLinger, "-cp", CLASS_PATH, WAREHOUSE_CLASS, Warehouse.BACKUP_ARGUMENT, "" + i);
+        }
 
-        // retrieve proxies
-        IPeer[] peers = new IPeer[n];
-        for (int i = 0; i < n; i++) {
-            System.out.println("Registering peer " + i);
-            peers[i] = (IPeer) registry.lookup("" + i);
+        // wait until all peers are bound
+        if (!directory.awaitPeers(Directory.STARTUP_TIMEOUT)) {
+            throw new IllegalStateException("Not all peers started within " + Directory.STARTUP_TIMEOUT + " ms.");
         }
+        System.out.println("All " + n + " peers are ready after " + (System.currentTimeMillis() - startTime) + " ms.");
+        IPeer[] peers = directory.getPeers();
 
+        // start all peers in parallel
+        CompletableFuture<?>[] starts = new CompletableFuture<?>[n];
         for (int i = 0; i < n; i++) {
-            peers[i].start();
+            IPeer peer = peers[i];
+            starts[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    peer.start();
+                } catch (RemoteException e) {
+                    throw new CompletionException(e);
+                }
+            }, Scheduler.getWorkers());
         }
+        CompletableFuture.allOf(starts).join();
 
         // do initial election
-        peers[0].election(new int[] {}, t);
+        peers[0].elect(t);
 
         // only starts heartbeat for Traders
         if (SEND_HEARTBEATS) {
@@ -89,8 +151,7 @@ public class AsterixAndTheMultiTraderTrouble {
 
         // crash behavior
         if (TRADER_CRASH_TIME > 0) {
-            ScheduledExecutorService crashExecutor = Executors.newScheduledThreadPool(1);
-            crashExecutor.schedule(() -> {
+            Scheduler.schedule(() -> {
                 try {
                     peers[peers.length - 1].crash();
                 } catch (RemoteException e) {
@@ -99,29 +160,32 @@ public class AsterixAndTheMultiTraderTrouble {
             }, TRADER_CRASH_TIME, TimeUnit.MILLISECONDS);
         }
 
+        if (WAREHOUSE_CRASH_TIME > 0) {
+            IWarehouseReplica warehouse = (IWarehouseReplica) directory.getWarehouse(Directory.STARTUP_TIMEOUT);
+            Scheduler.schedule(() -> {
+                try {
+                    warehouse.crash();
+                } catch (RemoteException e) {
+                    throw new RuntimeException(e);
+                }
+            }, WAREHOUSE_CRASH_TIME, TimeUnit.MILLISECONDS);
+        }
+
         // don't exit program
-        for (int i = 0; i < n; i++) {
-            processes[i].waitFor();
+        for (Process process : processes) {
+            process.waitFor();
         }
     }
 
+    /**
+     * Starts a process that writes to the output of this one and is destroyed when this one stops.
+     * @param cmd The command and its arguments.
+     * @return The process.
+     */
     private static Process runProcess(String... cmd) throws IOException {
         ProcessBuilder processBuilder = new ProcessBuilder(cmd);
+        processBuilder.inheritIO(); // output of the process goes straight to the output of the main process
         Process process = processBuilder.start();
-        var inputStream = process.getInputStream();
-        var outputStream = System.out;
-
-        // redirect output stream of peer process to main process
-        new Thread(() -> {
-            try (inputStream; outputStream) {
-                int byteData;
-                while ((byteData = inputStream.read()) != -1) {
-                    outputStream.write(byteData);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
 
         // destroy process when stopping program
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -0,0 +1,233 @@
+package cache;
+
+import peer.ReplyStatus;
+import product.Product;
+import warehouse.IWarehouse;
+
+import utils.Scheduler;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements caching with causal consistency using vector clocks. Every cache update carries the clock of
+ * its sender, i.e. how many updates of each peer the sender had applied. An update is applied once all
+ * updates it depends on have been applied, so a trader never sees an effect before its cause, even if the
+ * cause came from a third trader. FIFO consistency only orders the updates of each trader on its own.
+ * If more than PENDING_CAPACITY updates wait, or an update waits longer than PENDING_TIMEOUT, the missing
+ * updates are considered lost: the clock skips them and the cached stock is looked up again.
+ */
+public class CausalWarehouseCache implements IWarehouseCache {
+
+    public static final int PENDING_CAPACITY = FIFOWarehouseCache.REORDER_BUFFER_CAPACITY; // max. number of waiting updates
+    public static final long PENDING_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    private final IWarehouse warehouse;
+    private final Map<Product, Integer> inventoryCache;
+    private final Map<Integer, TreeMap<Integer, UpdateMessage>> pendingMessages; // waiting updates by peer ID and sequence number
+    private int pendingCount;
+    private long pendingSince; // from Scheduler.nanoTime(), only valid if pendingCount > 0
+    private int skippedUpdates;
+    private int[] vectorClock; // number of applied updates per peer ID
+
+    public CausalWarehouseCache(IWarehouse warehouse) {
+        this.warehouse = warehouse;
+        this.inventoryCache = new EnumMap<>(Product.class);
+        this.pendingMessages = new HashMap<>();
+        this.pendingCount = 0;
+        this.skippedUpdates = 0;
+        this.vectorClock = new int[0];
+    }
+
+    @Override
+    public synchronized int lookup(Product product) {
+        return inventoryCache.getOrDefault(product, 0);
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        Integer stock;
+        synchronized (this) {
+            expirePending(Scheduler.nanoTime());
+            stock = inventoryCache.get(updateMessage.product());
+        }
+
+        // check if entry exists in cache, else lookup in warehouse.
+        if (stock == null) {
+            int warehouseStock = warehouse.lookup(updateMessage.product());
+            synchronized (this) {
+                stock = inventoryCache.putIfAbsent(updateMessage.product(), warehouseStock);
+                stock = stock == null ? warehouseStock : stock;
+            }
+        }
+
+        // check cache if in stock or not.
+        if (stock < updateMessage.amount()) {
+            return ReplyStatus.NOT_IN_STOCK;
+        }
+        return warehouse.buy(updateMessage);
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        return warehouse.sell(updateMessage);
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        return warehouse.batch(updateMessages);
+    }
+
+    @Override
+    public synchronized void updateCache(UpdateMessage cacheUpdateMessage) {
+        long now = Scheduler.nanoTime();
+        if (cacheUpdateMessage.sequenceNumber() <= getClock(cacheUpdateMessage.peerID())) {
+            expirePending(now);
+            return; // already applied
+        }
+        if (cacheUpdateMessage.isResync()) {
+            // updates of the sender have been dropped, skip them and look the stock up again
+            skip(cacheUpdateMessage.peerID(), cacheUpdateMessage.sequenceNumber());
+            inventoryCache.clear();
+        } else if (!isDeliverable(cacheUpdateMessage)) {
+            TreeMap<Integer, UpdateMessage> peerMessages = pendingMessages.computeIfAbsent(cacheUpdateMessage.peerID(), peerID -> new TreeMap<>());
+            if (peerMessages.putIfAbsent(cacheUpdateMessage.sequenceNumber(), cacheUpdateMessage) == null && pendingCount++ == 0) {
+                pendingSince = now;
+            }
+            if (pendingCount > PENDING_CAPACITY) {
+                resetClock();
+            } else {
+                expirePending(now);
+            }
+            return;
+        } else {
+            apply(cacheUpdateMessage);
+        }
+        deliverPending();
+        expirePending(now);
+    }
+
+    @Override
+    public synchronized int getNextSequenceNumber(int peerID) {
+        return getClock(peerID) + 1;
+    }
+
+    @Override
+    public synchronized UpdateMessage createCacheUpdate(int peerID, Product product, int amount) {
+        return new UpdateMessage(getClock(peerID) + 1, peerID, product, amount, Arrays.copyOf(vectorClock, vectorClock.length));
+    }
+
+    /**
+     * @return Number of updates that wait for updates they depend on.
+     */
+    public synchronized int getPendingUpdates() {
+        return pendingCount;
+    }
+
+    /**
+     * @return Number of times waiting updates were given up and missing updates were skipped.
+     */
+    public synchronized int getSkippedUpdates() {
+        return skippedUpdates;
+    }
+
+    // apply pending updates whose dependencies are now satisfied, only the next update of every peer can be
+    private void deliverPending() {
+        boolean applied = true;
+        while (applied && pendingCount > 0) {
+            applied = false;
+            for (TreeMap<Integer, UpdateMessage> peerMessages : pendingMessages.values()) {
+                UpdateMessage next = peerMessages.isEmpty() ? null : peerMessages.firstEntry().getValue();
+                while (next != null && isDeliverable(next)) {
+                    peerMessages.pollFirstEntry();
+                    pendingCount--;
+                    apply(next);
+                    applied = true;
+                    next = peerMessages.isEmpty() ? null : peerMessages.firstEntry().getValue();
+                }
+            }
+        }
+    }
+
+    // give up on the missing updates if the pending ones have been waiting too long
+    private void expirePending(long now) {
+        if (pendingCount > 0 && now - pendingSince > PENDING_TIMEOUT) {
+            resetClock();
+        }
+    }
+
+    // skip the missing updates: move the clock past every pending update and everything they depend on,
+    // drop them and look the stock up again, the warehouse already contains their effects.
+    private void resetClock() {
+        for (TreeMap<Integer, UpdateMessage> peerMessages : pendingMessages.values()) {
+            for (UpdateMessage pendingMessage : peerMessages.values()) {
+                if (pendingMessage.sequenceNumber() > getClock(pendingMessage.peerID())) {
+                    setClock(pendingMessage.peerID(), pendingMessage.sequenceNumber());
+                }
+                int[] dependencies = pendingMessage.dependencies();
+                for (int peerID = 0; dependencies != null && peerID < dependencies.length; peerID++) {
+                    if (dependencies[peerID] > getClock(peerID)) {
+                        setClock(peerID, dependencies[peerID]);
+                    }
+                }
+            }
+        }
+        pendingMessages.clear();
+        pendingCount = 0;
+        skippedUpdates++;
+        inventoryCache.clear();
+    }
+
+    // move the clock of a peer to the given sequence number and drop its pending updates up to it
+    private void skip(int peerID, int sequenceNumber) {
+        setClock(peerID, sequenceNumber);
+        TreeMap<Integer, UpdateMessage> peerMessages = pendingMessages.get(peerID);
+        if (peerMessages != null) {
+            Map<Integer, UpdateMessage> skipped = peerMessages.headMap(sequenceNumber, true);
+            pendingCount -= skipped.size();
+            skipped.clear();
+        }
+    }
+
+    // checks if the update is the next one of its sender and everything the sender had seen has been applied
+    private boolean isDeliverable(UpdateMessage cacheUpdateMessage) {
+        if (cacheUpdateMessage.sequenceNumber() != getClock(cacheUpdateMessage.peerID()) + 1) {
+            return false;
+        }
+        int[] dependencies = cacheUpdateMessage.dependencies();
+        if (dependencies == null) {
+            return true;
+        }
+        for (int peerID = 0; peerID < dependencies.length; peerID++) {
+            if (peerID != cacheUpdateMessage.peerID() && dependencies[peerID] > getClock(peerID)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // update warehouse cache and vector clock, products that aren't cached are looked up in the warehouse when they are needed
+    private void apply(UpdateMessage cacheUpdateMessage) {
+        inventoryCache.computeIfPresent(cacheUpdateMessage.product(), (product, stock) -> stock + cacheUpdateMessage.amount());
+        setClock(cacheUpdateMessage.peerID(), cacheUpdateMessage.sequenceNumber());
+    }
+
+    // sets the number of applied updates of a peer
+    private void setClock(int peerID, int sequenceNumber) {
+        if (peerID >= vectorClock.length) {
+            vectorClock = Arrays.copyOf(vectorClock, peerID + 1);
+        }
+        vectorClock[peerID] = sequenceNumber;
+    }
+
+    // number of applied updates of a peer
+    private int getClock(int peerID) {
+        return peerID < vectorClock.length ? vectorClock[peerID] : 0;
+    }
+}
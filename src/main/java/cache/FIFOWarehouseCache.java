@@ -1,7 +1,9 @@
 package cache;
 
+import metrics.Metrics;
 import peer.ReplyStatus;
 import product.Product;
+import utils.Scheduler;
 import warehouse.IWarehouse;
 
 import java.rmi.RemoteException;
@@ -9,22 +11,30 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Implements caching with FIFO consistency.
  */
 public class FIFOWarehouseCache implements IWarehouseCache {
 
+    public static final int REORDER_BUFFER_CAPACITY = 1024; // max. number of out of order messages per peer
+
+    private static final LongAdder CACHE_HITS = Metrics.counter("cache.hit");
+    private static final LongAdder CACHE_MISSES = Metrics.counter("cache.miss");
+
     private final IWarehouse warehouse;
     private final Map<Product, Integer> inventoryCache;
-    private final List<UpdateMessage> cacheUpdateMessages;
-    private final Map<Integer, Integer> peerIDToSequenceNumber;
+    private final Map<Integer, ReorderBuffer> peerIDToReorderBuffer; // also tracks the sequence number per peer
+    private int maxReorderBufferDepth;
+    private int skippedUpdates;
 
     public FIFOWarehouseCache(IWarehouse warehouse) {
         this.warehouse = warehouse;
         this.inventoryCache = new HashMap<>();
-        this.cacheUpdateMessages = new ArrayList<>();
-        this.peerIDToSequenceNumber = new HashMap<>();
+        this.peerIDToReorderBuffer = new HashMap<>();
+        this.maxReorderBufferDepth = 0;
+        this.skippedUpdates = 0;
     }
 
     @Override
@@ -33,60 +43,139 @@ public class FIFOWarehouseCache implements IWarehouseCache {
     }
 
     @Override
-    public synchronized ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
-        // check if entry exists in cache, else lookup in warehouse.
-        if (inventoryCache.get(updateMessage.product()) == null) {
-            inventoryCache.put(updateMessage.product(), warehouse.lookup(updateMessage.product()));
-        }
-
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
         // check cache if in stock or not.
-        if (inventoryCache.get(updateMessage.product()) < updateMessage.amount()) {
+        if (!isInStock(updateMessage.product(), updateMessage.amount())) {
             return ReplyStatus.NOT_IN_STOCK;
         }
 
-        return warehouse.buy(updateMessage); // buy from warehouse.
+        return warehouse.buy(updateMessage); // buy from warehouse, which decides if the buy succeeds.
     }
 
     @Override
-    public synchronized ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
         return warehouse.sell(updateMessage); // sell to warehouse
     }
 
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        ReplyStatus[] replyStatuses = new ReplyStatus[updateMessages.size()];
+        List<UpdateMessage> forwardedMessages = new ArrayList<>();
+        List<Integer> forwardedIndices = new ArrayList<>();
+
+        // reject buys that are out of stock according to the cache, forward the rest.
+        for (int i = 0; i < replyStatuses.length; i++) {
+            UpdateMessage updateMessage = updateMessages.get(i);
+            if (updateMessage.amount() < 0 && !isInStock(updateMessage.product(), -updateMessage.amount())) {
+                replyStatuses[i] = ReplyStatus.NOT_IN_STOCK;
+            } else {
+                forwardedMessages.add(updateMessage);
+                forwardedIndices.add(i);
+            }
+        }
+
+        if (!forwardedMessages.isEmpty()) {
+            ReplyStatus[] forwardedStatuses = warehouse.batch(forwardedMessages);
+            for (int i = 0; i < forwardedStatuses.length; i++) {
+                replyStatuses[forwardedIndices.get(i)] = forwardedStatuses[i];
+            }
+        }
+        return replyStatuses;
+    }
+
     @Override
     public synchronized void updateCache(UpdateMessage cacheUpdateMessage) {
-        // check if sequence number is correct. If so, proceed, else put message into queue.
-        if (peerIDToSequenceNumber.getOrDefault(cacheUpdateMessage.peerID(), 0) == cacheUpdateMessage.sequenceNumber() - 1) {
-            update(cacheUpdateMessage); // update warehouse.
-
-            // check queue if updates can now be applied. If so, apply.
-            // this ensures correct update ordering per peer id.
-            boolean found = true;
-            while (found) {
-                found = false;
-                for (UpdateMessage queuedMessage : cacheUpdateMessages) {
-                    if (peerIDToSequenceNumber.get(cacheUpdateMessage.peerID()) == queuedMessage.sequenceNumber() - 1) {
-                        update(queuedMessage);
-                        cacheUpdateMessages.remove(queuedMessage);
-                        found = true;
-                        break;
-                    }
-                }
+        // put message into the reorder buffer of its peer and apply all messages that are now in order.
+        // this ensures correct update ordering per peer id.
+        ReorderBuffer reorderBuffer = getReorderBuffer(cacheUpdateMessage.peerID());
+        List<UpdateMessage> releasedMessages = new ArrayList<>();
+        boolean skipped = reorderBuffer.offer(cacheUpdateMessage, Scheduler.nanoTime(), releasedMessages);
+        for (UpdateMessage releasedMessage : releasedMessages) {
+            if (!releasedMessage.isResync()) {
+                update(releasedMessage);
             }
+        }
 
-        } else if (peerIDToSequenceNumber.getOrDefault(cacheUpdateMessage.peerID(), 0) < cacheUpdateMessage.sequenceNumber() - 1) {
-            cacheUpdateMessages.add(cacheUpdateMessage); // put message into queue if sequence number too large.
+        // updates got lost, cached values can't be trusted anymore and are looked up again.
+        if (skipped) {
+            skippedUpdates++;
+            inventoryCache.clear();
         }
+        maxReorderBufferDepth = Math.max(maxReorderBufferDepth, reorderBuffer.size());
     }
 
     @Override
-    public int getNextSequenceNumber(int peerID) {
-        return peerIDToSequenceNumber.getOrDefault(peerID, 0) + 1; // increment sequence number of peer ID.
+    public synchronized int getNextSequenceNumber(int peerID) {
+        return getReorderBuffer(peerID).getLastSequenceNumber() + 1; // increment sequence number of peer ID.
+    }
+
+    // METRICS
+
+    /**
+     * @return Number of out of order messages currently buffered over all peers.
+     */
+    public synchronized int getReorderBufferDepth() {
+        int depth = 0;
+        for (ReorderBuffer reorderBuffer : peerIDToReorderBuffer.values()) {
+            depth += reorderBuffer.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return Highest number of out of order messages that have been buffered for a single peer.
+     */
+    public synchronized int getMaxReorderBufferDepth() {
+        return maxReorderBufferDepth;
+    }
+
+    /**
+     * @return Time in milliseconds the oldest open gap in the update sequence of any peer exists.
+     */
+    public synchronized long getOldestGapAge() {
+        long now = Scheduler.nanoTime();
+        long gapAge = 0;
+        for (ReorderBuffer reorderBuffer : peerIDToReorderBuffer.values()) {
+            gapAge = Math.max(gapAge, reorderBuffer.getGapAge(now));
+        }
+        return gapAge / 1_000_000;
+    }
+
+    /**
+     * @return Number of times a reorder buffer overflowed and missing updates were skipped.
+     */
+    public synchronized int getSkippedUpdates() {
+        return skippedUpdates;
     }
 
-    // update warehouse cache and sequence numbers
+    // check if entry exists in cache, else lookup in warehouse. Then check if in stock.
+    private boolean isInStock(Product product, int amount) throws RemoteException {
+        Integer stock;
+        synchronized (this) {
+            stock = inventoryCache.get(product);
+        }
+        if (stock != null) {
+            CACHE_HITS.increment();
+        } else {
+            CACHE_MISSES.increment();
+            int warehouseStock = warehouse.lookup(product);
+            synchronized (this) {
+                stock = inventoryCache.putIfAbsent(product, warehouseStock);
+                if (stock == null) {
+                    stock = warehouseStock;
+                }
+            }
+        }
+        return stock >= amount;
+    }
+
+    // update warehouse cache, products that aren't cached are looked up in the warehouse when they are needed
     private void update(UpdateMessage cacheUpdateMessage) {
-        int stock = this.inventoryCache.getOrDefault(cacheUpdateMessage.product(), 0);
-        this.inventoryCache.put(cacheUpdateMessage.product(), stock + cacheUpdateMessage.amount());
-        peerIDToSequenceNumber.put(cacheUpdateMessage.peerID(), cacheUpdateMessage.sequenceNumber());
+        this.inventoryCache.computeIfPresent(cacheUpdateMessage.product(), (product, stock) -> stock + cacheUpdateMessage.amount());
+    }
+
+    // get reorder buffer of a peer, create it if necessary
+    private ReorderBuffer getReorderBuffer(int peerID) {
+        return peerIDToReorderBuffer.computeIfAbsent(peerID, id -> new ReorderBuffer(REORDER_BUFFER_CAPACITY));
     }
 }
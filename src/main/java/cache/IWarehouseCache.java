@@ -2,9 +2,11 @@ package cache;
 
 import peer.ReplyStatus;
 import product.Product;
+import warehouse.BatchingWarehouse;
 import warehouse.IWarehouse;
 
 import java.rmi.RemoteException;
+import java.util.List;
 
 public interface IWarehouseCache {
 
@@ -14,7 +16,18 @@ public interface IWarehouseCache {
      * @return The new warehouse cache.
      */
     static IWarehouseCache getNewWarehouseCache(IWarehouse warehouse) {
-        return new FIFOWarehouseCache(warehouse);
+        return new FIFOWarehouseCache(new BatchingWarehouse(warehouse));
+    }
+
+    /**
+     * Simplifies the cache creation for a peer. The cache policy is taken from the cache.policy system property.
+     * @param warehouse The warehouse to be cached.
+     * @param peerID ID of the peer that owns the cache.
+     * @return The new warehouse cache.
+     */
+    static IWarehouseCache getNewWarehouseCache(IWarehouse warehouse, int peerID) {
+        String policy = System.getProperty(WarehouseCachePolicies.POLICY_PROPERTY, WarehouseCachePolicies.DEFAULT_POLICY);
+        return WarehouseCachePolicies.create(policy, warehouse, peerID);
     }
 
     /**
@@ -38,6 +51,13 @@ public interface IWarehouseCache {
      */
     ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException;
 
+    /**
+     * Buys and sells several items at once.
+     * @param updateMessages Contains product type and amount per message. Negative amounts are buys, positive amounts are sells.
+     * @return Returns the reply status of every message, in the same order.
+     */
+    ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException;
+
     /**
      * Updates the cache data to stay consistent.
      * @param cacheUpdateMessage Contains important information, such as product type, amount, and metadata for caching.
@@ -50,4 +70,32 @@ public interface IWarehouseCache {
      * @return Returns the sequence number corresponding to the peer ID.
      */
     int getNextSequenceNumber(int peerID) throws RemoteException;
+
+    /**
+     * Creates the message that tells all traders about a change of the inventory made by this peer.
+     * @param peerID ID of the peer.
+     * @param product Changed product.
+     * @param amount Change of the amount.
+     * @return Returns the cache update message.
+     */
+    default UpdateMessage createCacheUpdate(int peerID, Product product, int amount) throws RemoteException {
+        return new UpdateMessage(getNextSequenceNumber(peerID), peerID, product, amount);
+    }
+
+    /**
+     * Lets the cache report the changes of the warehouse stock caused by its buys itself. Needed if the stock
+     * doesn't change when a buy succeeds, e.g. because the buy is served from stock that was leased before.
+     * @param listener Sends the changes to all traders.
+     * @return Whether the cache reports its buys, otherwise the peer reports every successful buy.
+     */
+    default boolean setStockListener(StockListener listener) {
+        return false;
+    }
+
+    /**
+     * Receives changes of the warehouse stock.
+     */
+    interface StockListener {
+        void stockChanged(Product product, int amount) throws RemoteException;
+    }
 }
@@ -0,0 +1,258 @@
+package cache;
+
+import peer.ReplyStatus;
+import product.Product;
+import utils.Scheduler;
+import warehouse.IWarehouse;
+import warehouse.SequenceNumbers;
+import warehouse.Warehouse;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements caching with FIFO consistency, where buys are served from stock leased from the warehouse.
+ * A trader leases a block of stock per product and sells from it without contacting the warehouse until the
+ * lease runs out or expires, so most buys take a single hop from the buyer to the trader. Unused stock goes
+ * back to the warehouse when the lease ends. All stock passes through the warehouse, so it is never oversold.
+ * The buys from a lease are reported to the warehouse in batches, every REPORT_INTERVAL and before a lease is
+ * acquired or released. The warehouse checks the buyer's sequence numbers when the report arrives: a retry that
+ * another trader or the warehouse itself has applied already is rejected, and the trader puts the amount back
+ * into its lease. So the buyer may get a second SUCCESSFUL for a retry, but the buy is counted once.
+ * Buys that haven't been reported when the trader crashes are lost: the warehouse reclaims the unused stock of
+ * expired leases, and those products count as unused.
+ * The other traders are told about the stock when it is leased and released, not about every buy from a lease.
+ */
+public class LeasingWarehouseCache extends FIFOWarehouseCache {
+
+    public static final int LEASE_SIZE = 10; // amount of products leased at once
+    public static final int LEASE_DURATION = Warehouse.LEASE_DURATION; // in milliseconds
+    public static final int REPORT_INTERVAL = 100; // in milliseconds, how often buys from leases are reported
+
+    private final IWarehouse warehouse;
+    private final int traderID;
+    private final Map<Product, Lease> leases;
+    private final SequenceNumbers peerIDToBuySequenceNumber; // buys served from the leases of this trader per buyer
+    private final List<UpdateMessage> unreportedBuys; // buys from leases the warehouse doesn't know yet, guarded by this
+    private final Object reportLock; // one report at a time, so the warehouse gets the buys in order
+    private final ScheduledFuture<?> releaseTask;
+    private final ScheduledFuture<?> reportTask;
+    private volatile StockListener stockListener;
+
+    public LeasingWarehouseCache(IWarehouse warehouse, int traderID) {
+        super(warehouse);
+        this.warehouse = warehouse;
+        this.traderID = traderID;
+        this.leases = new EnumMap<>(Product.class);
+        this.peerIDToBuySequenceNumber = new SequenceNumbers();
+        this.unreportedBuys = new ArrayList<>();
+        this.reportLock = new Object();
+        this.releaseTask = Scheduler.scheduleAtFixedRate(this::releaseExpiredLeases, LEASE_DURATION, LEASE_DURATION / 2, TimeUnit.MILLISECONDS);
+        this.reportTask = Scheduler.scheduleAtFixedRate(this::reportBuys, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean setStockListener(StockListener listener) {
+        this.stockListener = listener;
+        return true;
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        // serve from the current lease
+        ReplyStatus replyStatus = buyFromLease(updateMessage);
+        if (replyStatus != null) {
+            return replyStatus;
+        }
+
+        // lease a new block and serve from it, the warehouse gets the buys of the old one first
+        reportBuys();
+        int granted = warehouse.acquireLease(traderID, updateMessage.product(), Math.max(LEASE_SIZE, updateMessage.amount()));
+        if (granted > 0) {
+            synchronized (this) {
+                Lease lease = leases.computeIfAbsent(updateMessage.product(), product -> new Lease());
+                lease.remaining += granted;
+                lease.expiresAt = TimeUnit.NANOSECONDS.toMillis(Scheduler.nanoTime()) + LEASE_DURATION;
+            }
+            reportStockChange(updateMessage.product(), -granted);
+            replyStatus = buyFromLease(updateMessage);
+            if (replyStatus != null) {
+                return replyStatus;
+            }
+        }
+
+        // warehouse is short, ask it directly.
+        replyStatus = super.buy(updateMessage);
+        if (replyStatus == ReplyStatus.SUCCESSFUL) {
+            reportStockChange(updateMessage.product(), -updateMessage.amount());
+        }
+        return replyStatus;
+    }
+
+    /**
+     * Returns the unused stock of all leases to the warehouse.
+     */
+    public void releaseAllLeases() {
+        releaseLeases(false);
+    }
+
+    /**
+     * Stops the periodic tasks, reports the buys from leases and returns the unused stock of all leases to the warehouse.
+     */
+    public void close() {
+        releaseTask.cancel(false);
+        reportTask.cancel(false);
+        releaseAllLeases();
+    }
+
+    /**
+     * Sends the buys from leases that haven't been reported yet to the warehouse with a single call. Buys the
+     * warehouse has applied already go back into the lease, buys that can't be reported are tried again later.
+     */
+    public void reportBuys() {
+        synchronized (reportLock) {
+            List<UpdateMessage> buys;
+            synchronized (this) {
+                if (unreportedBuys.isEmpty()) {
+                    return;
+                }
+                buys = new ArrayList<>(unreportedBuys);
+                unreportedBuys.clear();
+            }
+
+            ReplyStatus[] replyStatuses;
+            try {
+                replyStatuses = warehouse.buyFromLease(traderID, buys);
+            } catch (RemoteException e) {
+                replyStatuses = null;
+            }
+
+            synchronized (this) {
+                List<UpdateMessage> retries = new ArrayList<>();
+                for (int i = 0; i < buys.size(); i++) {
+                    ReplyStatus replyStatus = replyStatuses == null ? ReplyStatus.ERROR_DURING_WRITE : replyStatuses[i];
+                    if (replyStatus == ReplyStatus.LOW_SEQUENCE_NUMBER) {
+                        giveBack(buys.get(i).product(), buys.get(i).amount()); // a retry, applied elsewhere first
+                    } else if (replyStatus != ReplyStatus.SUCCESSFUL) {
+                        retries.add(buys.get(i));
+                    }
+                }
+                unreportedBuys.addAll(0, retries);
+            }
+        }
+    }
+
+    /**
+     * @return Number of buys from leases the warehouse doesn't know yet.
+     */
+    public synchronized int getUnreportedBuys() {
+        return unreportedBuys.size();
+    }
+
+    /**
+     * Returns the unused stock of expired leases to the warehouse.
+     */
+    public void releaseExpiredLeases() {
+        releaseLeases(true);
+    }
+
+    /**
+     * @param product Leased product.
+     * @return Amount of the product that can still be sold from the lease.
+     */
+    public synchronized int getLeasedAmount(Product product) {
+        Lease lease = leases.get(product);
+        return lease == null ? 0 : lease.remaining;
+    }
+
+    /**
+     * Sells from the lease of the product, if the lease is valid and large enough. The buy is reported to the
+     * warehouse later.
+     * @param updateMessage The buy request.
+     * @return The reply status, or null if the lease can't serve the request.
+     */
+    private synchronized ReplyStatus buyFromLease(UpdateMessage updateMessage) {
+        // check if sequence number is valid
+        SequenceNumbers.Entry sequenceNumber = peerIDToBuySequenceNumber.get(updateMessage.peerID());
+        if (sequenceNumber.isDuplicate(updateMessage.sequenceNumber())) {
+            return ReplyStatus.LOW_SEQUENCE_NUMBER;
+        }
+        Lease lease = leases.get(updateMessage.product());
+        if (lease == null || lease.expiresAt <= TimeUnit.NANOSECONDS.toMillis(Scheduler.nanoTime()) || lease.remaining < updateMessage.amount()) {
+            return null;
+        }
+        lease.remaining -= updateMessage.amount();
+        sequenceNumber.markApplied(updateMessage.sequenceNumber());
+        unreportedBuys.add(updateMessage);
+        return ReplyStatus.SUCCESSFUL;
+    }
+
+    // returns the amount of a buy the warehouse rejected to the lease. If the lease has ended, the warehouse
+    // still counts the amount as leased and reclaims it once the lease expired.
+    private synchronized void giveBack(Product product, int amount) {
+        Lease lease = leases.get(product);
+        if (lease != null) {
+            lease.remaining += amount;
+        }
+    }
+
+    /**
+     * Ends leases and reports them to the warehouse. Leases that can't be reported are kept and retried later.
+     * @param expiredOnly Whether only expired leases should be released.
+     */
+    private void releaseLeases(boolean expiredOnly) {
+        reportBuys(); // the warehouse takes the sold amount out of the lease first
+        List<Product> products = new ArrayList<>();
+        List<Lease> endedLeases = new ArrayList<>();
+        synchronized (this) {
+            long now = TimeUnit.NANOSECONDS.toMillis(Scheduler.nanoTime());
+            for (var entry : leases.entrySet()) {
+                if (!expiredOnly || entry.getValue().expiresAt <= now) {
+                    products.add(entry.getKey());
+                    endedLeases.add(entry.getValue());
+                }
+            }
+            for (Product product : products) {
+                leases.remove(product);
+            }
+        }
+
+        for (int i = 0; i < products.size(); i++) {
+            Lease lease = endedLeases.get(i);
+            try {
+                warehouse.releaseLease(traderID, products.get(i), lease.remaining);
+            } catch (RemoteException e) {
+                // keep the stock reserved and try again with the next release.
+                synchronized (this) {
+                    Lease current = leases.computeIfAbsent(products.get(i), product -> new Lease());
+                    current.remaining += lease.remaining;
+                }
+                continue;
+            }
+            reportStockChange(products.get(i), lease.remaining);
+        }
+    }
+
+    // tells the other traders about a change of the warehouse stock, they are only updated on a best effort basis
+    private void reportStockChange(Product product, int amount) {
+        StockListener listener = stockListener;
+        if (listener != null && amount != 0) {
+            try {
+                listener.stockChanged(product, amount);
+            } catch (RemoteException ignored) { }
+        }
+    }
+
+    /**
+     * Stock of a product leased from the warehouse.
+     */
+    private static class Lease {
+        private int remaining;
+        private long expiresAt;
+    }
+}
@@ -6,6 +6,7 @@ import warehouse.IWarehouse;
 import warehouse.Warehouse;
 
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * Implements no caching for the warehouse.
@@ -19,20 +20,25 @@ public class NoWarehouseCache implements IWarehouseCache {
     }
 
     @Override
-    public synchronized int lookup(Product product) throws RemoteException {
+    public int lookup(Product product) throws RemoteException {
         return warehouse.lookup(product);
     }
 
     @Override
-    public synchronized ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
         return warehouse.buy(updateMessage);
     }
 
     @Override
-    public synchronized ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
         return warehouse.sell(updateMessage);
     }
 
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        return warehouse.batch(updateMessages);
+    }
+
     @Override
     public synchronized void updateCache(UpdateMessage cacheUpdateMessage) {}
 
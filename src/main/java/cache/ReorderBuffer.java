@@ -0,0 +1,144 @@
+package cache;
+
+import java.util.List;
+
+/**
+ * Puts the cache updates of a single peer back into sequence number order.
+ * Early messages are stored in a ring indexed by their sequence number, so storing a message is O(1)
+ * and releasing a contiguous run of k messages is O(k). At most capacity sequence numbers ahead of the
+ * last applied one are buffered.
+ */
+public class ReorderBuffer {
+
+    private final UpdateMessage[] messages;
+    private final long[] arrivalTimes;
+    private int lastSequenceNumber; // last sequence number released in order
+    private int size;
+    private long gapSince; // arrival time of the oldest buffered message, only valid if size > 0
+
+    public ReorderBuffer(int capacity) {
+        this.messages = new UpdateMessage[capacity];
+        this.arrivalTimes = new long[capacity];
+        this.lastSequenceNumber = 0;
+        this.size = 0;
+        this.gapSince = 0;
+    }
+
+    /**
+     * Adds a message and releases every message that is now in order.
+     * If the message is too far ahead or a resync, the missing messages are considered lost. The buffered
+     * messages are released anyway, skipping the gaps, so the buffer never exceeds its capacity.
+     * @param message The received message.
+     * @param now Current time in nanoseconds.
+     * @param released Receives the messages that can be applied, in order.
+     * @return Whether sequence numbers have been skipped.
+     */
+    public boolean offer(UpdateMessage message, long now, List<UpdateMessage> released) {
+        int sequenceNumber = message.sequenceNumber();
+
+        // drop duplicates
+        if (sequenceNumber <= lastSequenceNumber) {
+            return false;
+        }
+
+        // the sender dropped the messages up to this one, release what is buffered and continue after it
+        if (message.isResync()) {
+            for (int next = lastSequenceNumber + 1; size > 0 && next <= sequenceNumber && next <= lastSequenceNumber + messages.length; next++) {
+                int index = indexOf(next);
+                if (messages[index] != null) {
+                    released.add(messages[index]);
+                    messages[index] = null;
+                    size--;
+                }
+            }
+            lastSequenceNumber = sequenceNumber;
+            releaseInOrder(released);
+            return true;
+        }
+
+        // buffer message that is too early
+        if (sequenceNumber > lastSequenceNumber + 1) {
+            if (sequenceNumber - lastSequenceNumber <= messages.length) {
+                int index = indexOf(sequenceNumber);
+                if (messages[index] == null) {
+                    messages[index] = message;
+                    arrivalTimes[index] = now;
+                    size++;
+                    if (size == 1) {
+                        gapSince = now;
+                    }
+                }
+                return false;
+            }
+
+            // too far ahead, release everything buffered and continue after the message.
+            for (int next = lastSequenceNumber + 1; size > 0; next++) {
+                int index = indexOf(next);
+                if (messages[index] != null) {
+                    released.add(messages[index]);
+                    messages[index] = null;
+                    size--;
+                }
+            }
+            released.add(message);
+            lastSequenceNumber = sequenceNumber;
+            return true;
+        }
+
+        // release message and the contiguous run behind it
+        released.add(message);
+        lastSequenceNumber = sequenceNumber;
+        releaseInOrder(released);
+        return false;
+    }
+
+    /**
+     * Releases the contiguous run of buffered messages after the last released one.
+     * @param released Receives the messages, in order.
+     */
+    private void releaseInOrder(List<UpdateMessage> released) {
+        int index = indexOf(lastSequenceNumber + 1);
+        while (messages[index] != null) {
+            released.add(messages[index]);
+            messages[index] = null;
+            size--;
+            lastSequenceNumber++;
+            index = indexOf(lastSequenceNumber + 1);
+        }
+
+        // the gap moved, it now exists since the arrival of the next buffered message.
+        for (int next = lastSequenceNumber + 2; size > 0 && next <= lastSequenceNumber + messages.length; next++) {
+            if (messages[indexOf(next)] != null) {
+                gapSince = arrivalTimes[indexOf(next)];
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return The last sequence number that has been released in order.
+     */
+    public int getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    /**
+     * @return Number of buffered messages.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param now Current time in nanoseconds.
+     * @return Time in nanoseconds the oldest buffered message has been waiting for its predecessors, 0 if there is no gap.
+     */
+    public long getGapAge(long now) {
+        return size == 0 ? 0 : now - gapSince;
+    }
+
+    // index of a sequence number in the ring
+    private int indexOf(int sequenceNumber) {
+        return Math.floorMod(sequenceNumber, messages.length);
+    }
+}
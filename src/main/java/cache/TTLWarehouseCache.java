@@ -0,0 +1,108 @@
+package cache;
+
+import peer.ReplyStatus;
+import product.Product;
+import utils.Scheduler;
+import warehouse.IWarehouse;
+
+import java.rmi.RemoteException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements a read-through cache where entries expire after a fixed time.
+ * Cache updates of other traders are not applied, so a cached amount is at most TTL milliseconds old.
+ * Fewer messages have to be processed than with FIFO consistency, at the cost of staler reads.
+ */
+public class TTLWarehouseCache implements IWarehouseCache {
+
+    public static final int TTL = 1000; // in milliseconds
+
+    private final IWarehouse warehouse;
+    private final Map<Product, Entry> inventoryCache;
+    private final Map<Integer, Integer> peerIDToSequenceNumber;
+
+    public TTLWarehouseCache(IWarehouse warehouse) {
+        this.warehouse = warehouse;
+        this.inventoryCache = new EnumMap<>(Product.class);
+        this.peerIDToSequenceNumber = new HashMap<>();
+    }
+
+    @Override
+    public int lookup(Product product) throws RemoteException {
+        synchronized (this) {
+            Entry entry = inventoryCache.get(product);
+            if (entry != null && entry.expiresAt > TimeUnit.NANOSECONDS.toMillis(Scheduler.nanoTime())) {
+                return entry.amount;
+            }
+        }
+
+        // entry is missing or expired, read through.
+        int amount = warehouse.lookup(product);
+        synchronized (this) {
+            inventoryCache.put(product, new Entry(amount, TimeUnit.NANOSECONDS.toMillis(Scheduler.nanoTime()) + TTL));
+        }
+        return amount;
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        // check cache if in stock or not.
+        if (lookup(updateMessage.product()) < updateMessage.amount()) {
+            return ReplyStatus.NOT_IN_STOCK;
+        }
+
+        ReplyStatus replyStatus = warehouse.buy(updateMessage);
+        if (replyStatus == ReplyStatus.SUCCESSFUL) {
+            adjust(updateMessage.product(), -updateMessage.amount());
+        }
+        return replyStatus;
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        ReplyStatus replyStatus = warehouse.sell(updateMessage);
+        if (replyStatus == ReplyStatus.SUCCESSFUL) {
+            adjust(updateMessage.product(), updateMessage.amount());
+        }
+        return replyStatus;
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        ReplyStatus[] replyStatuses = warehouse.batch(updateMessages);
+        for (int i = 0; i < replyStatuses.length; i++) {
+            if (replyStatuses[i] == ReplyStatus.SUCCESSFUL) {
+                adjust(updateMessages.get(i).product(), updateMessages.get(i).amount());
+            }
+        }
+        return replyStatuses;
+    }
+
+    @Override
+    public synchronized void updateCache(UpdateMessage cacheUpdateMessage) {
+        // only track sequence numbers, the entries refresh themselves.
+        peerIDToSequenceNumber.merge(cacheUpdateMessage.peerID(), cacheUpdateMessage.sequenceNumber(), Math::max);
+    }
+
+    @Override
+    public synchronized int getNextSequenceNumber(int peerID) {
+        return peerIDToSequenceNumber.getOrDefault(peerID, 0) + 1;
+    }
+
+    // apply own change to a cached entry without extending its lifetime
+    private synchronized void adjust(Product product, int amount) {
+        Entry entry = inventoryCache.get(product);
+        if (entry != null) {
+            inventoryCache.put(product, new Entry(entry.amount + amount, entry.expiresAt));
+        }
+    }
+
+    /**
+     * A cached amount and the time it expires.
+     */
+    private record Entry(int amount, long expiresAt) { }
+}
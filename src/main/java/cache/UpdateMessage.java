@@ -2,6 +2,41 @@ package cache;
 
 import product.Product;
 
+import java.io.Serial;
 import java.io.Serializable;
 
-public record UpdateMessage(int sequenceNumber, int peerID, Product product, int amount) implements Serializable { }
+/**
+ * A change of the inventory that a trader sends to the other traders. A message without a product is a resync:
+ * the updates of the peer up to its sequence number have been dropped, so the receiver skips them and looks
+ * the stock up again.
+ * @param dependencies Vector clock of the sender when the message was created, indexed by peer ID.
+ *                     Only used by caches with causal consistency, null otherwise.
+ */
+public record UpdateMessage(int sequenceNumber, int peerID, Product product, int amount, int[] dependencies) implements Serializable {
+
+    public UpdateMessage(int sequenceNumber, int peerID, Product product, int amount) {
+        this(sequenceNumber, peerID, product, amount, null);
+    }
+
+    /**
+     * @param sequenceNumber Sequence number of the last dropped update.
+     * @param peerID ID of the peer that sent the dropped updates.
+     * @return The resync message.
+     */
+    public static UpdateMessage resync(int sequenceNumber, int peerID) {
+        return new UpdateMessage(sequenceNumber, peerID, null, 0);
+    }
+
+    /**
+     * @return Whether the message only tells that updates have been dropped.
+     */
+    public boolean isResync() {
+        return product == null;
+    }
+
+    // Java serialization (RMI) sends the compact encoding of UpdateMessageCodec instead of the record fields.
+    @Serial
+    private Object writeReplace() {
+        return new UpdateMessageCodec.Externalized(this);
+    }
+}
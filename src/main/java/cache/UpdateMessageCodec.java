@@ -0,0 +1,161 @@
+package cache;
+
+import product.Product;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serial;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of update messages, used by the transports instead of Java serialization.
+ * A message takes SIZE bytes: sequence number (4), peer ID (4), product ordinal (1) and amount (4).
+ * If the high bit of the product byte is set, the number of dependencies (2) and the dependencies (4 each) follow.
+ * A batch is the number of messages (4) followed by the messages.
+ */
+public final class UpdateMessageCodec {
+
+    public static final int SIZE = 13;
+    private static final int DEPENDENCIES_FLAG = 0x80;
+    private static final int NO_PRODUCT = 0x7F;
+    private static final int PRODUCT_OFFSET = 8; // position of the product byte in an encoded message
+
+    private static final Product[] PRODUCTS = Product.values();
+
+    private UpdateMessageCodec() { }
+
+    /**
+     * @param updateMessage The message.
+     * @return Number of bytes of the encoded message.
+     */
+    public static int sizeOf(UpdateMessage updateMessage) {
+        int[] dependencies = updateMessage.dependencies();
+        return dependencies == null ? SIZE : SIZE + 2 + 4 * dependencies.length;
+    }
+
+    /**
+     * @param updateMessages The messages.
+     * @return Number of bytes of the encoded batch.
+     */
+    public static int sizeOf(List<UpdateMessage> updateMessages) {
+        int size = 4;
+        for (UpdateMessage updateMessage : updateMessages) {
+            size += sizeOf(updateMessage);
+        }
+        return size;
+    }
+
+    /**
+     * Writes a message at the position of the buffer.
+     * @param updateMessage The message.
+     * @param buffer The buffer, needs sizeOf(updateMessage) bytes of space.
+     */
+    public static void encode(UpdateMessage updateMessage, ByteBuffer buffer) {
+        int[] dependencies = updateMessage.dependencies();
+        int product = updateMessage.product() == null ? NO_PRODUCT : updateMessage.product().ordinal();
+        buffer.putInt(updateMessage.sequenceNumber())
+                .putInt(updateMessage.peerID())
+                .put((byte) (dependencies == null ? product : product | DEPENDENCIES_FLAG))
+                .putInt(updateMessage.amount());
+        if (dependencies != null) {
+            buffer.putShort((short) dependencies.length);
+            for (int dependency : dependencies) {
+                buffer.putInt(dependency);
+            }
+        }
+    }
+
+    /**
+     * Reads a message at the position of the buffer.
+     * @param buffer The buffer.
+     * @return The message.
+     */
+    public static UpdateMessage decode(ByteBuffer buffer) {
+        int sequenceNumber = buffer.getInt();
+        int peerID = buffer.getInt();
+        int product = buffer.get() & 0xFF;
+        int amount = buffer.getInt();
+        int[] dependencies = null;
+        if ((product & DEPENDENCIES_FLAG) != 0) {
+            dependencies = new int[buffer.getShort() & 0xFFFF];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = buffer.getInt();
+            }
+            product &= ~DEPENDENCIES_FLAG;
+        }
+        return new UpdateMessage(sequenceNumber, peerID, product == NO_PRODUCT ? null : PRODUCTS[product], amount, dependencies);
+    }
+
+    /**
+     * Writes a batch of messages at the position of the buffer.
+     * @param updateMessages The messages.
+     * @param buffer The buffer, needs sizeOf(updateMessages) bytes of space.
+     */
+    public static void encode(List<UpdateMessage> updateMessages, ByteBuffer buffer) {
+        buffer.putInt(updateMessages.size());
+        for (UpdateMessage updateMessage : updateMessages) {
+            encode(updateMessage, buffer);
+        }
+    }
+
+    /**
+     * Reads a batch of messages at the position of the buffer.
+     * @param buffer The buffer.
+     * @return The messages.
+     */
+    public static List<UpdateMessage> decodeAll(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<UpdateMessage> updateMessages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            updateMessages.add(decode(buffer));
+        }
+        return updateMessages;
+    }
+
+    /**
+     * Serialized form of an update message. Java serialization writes the bytes of encode instead of the record fields.
+     */
+    static final class Externalized implements Externalizable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private UpdateMessage updateMessage;
+
+        public Externalized() { }
+
+        Externalized(UpdateMessage updateMessage) {
+            this.updateMessage = updateMessage;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(sizeOf(updateMessage));
+            encode(updateMessage, buffer);
+            out.write(buffer.array());
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            // the product byte tells whether dependencies follow the fixed part
+            byte[] fixed = new byte[SIZE];
+            in.readFully(fixed);
+            ByteBuffer buffer = ByteBuffer.wrap(fixed);
+            if ((fixed[PRODUCT_OFFSET] & DEPENDENCIES_FLAG) != 0) {
+                int count = in.readUnsignedShort();
+                buffer = ByteBuffer.allocate(SIZE + 2 + 4 * count).put(fixed).putShort((short) count);
+                in.readFully(buffer.array(), buffer.position(), 4 * count);
+                buffer.rewind();
+            }
+            updateMessage = decode(buffer);
+        }
+
+        @Serial
+        private Object readResolve() {
+            return updateMessage;
+        }
+    }
+}
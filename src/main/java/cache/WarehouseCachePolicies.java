@@ -0,0 +1,67 @@
+package cache;
+
+import warehouse.BatchingWarehouse;
+import warehouse.IWarehouse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of the available cache policies. The policy of a run is chosen by name at launch.
+ */
+public class WarehouseCachePolicies {
+
+    public static final String POLICY_PROPERTY = "cache.policy";
+    public static final String DEFAULT_POLICY = "fifo";
+
+    private static final Map<String, Factory> POLICIES = new LinkedHashMap<>();
+
+    static {
+        register("none", (warehouse, peerID) -> new NoWarehouseCache(warehouse));
+        register("fifo", (warehouse, peerID) -> new FIFOWarehouseCache(warehouse));
+        register("leasing", LeasingWarehouseCache::new);
+        register("ttl", (warehouse, peerID) -> new TTLWarehouseCache(warehouse));
+        register("write-through", (warehouse, peerID) -> new WriteThroughWarehouseCache(warehouse));
+        register("causal", (warehouse, peerID) -> new CausalWarehouseCache(warehouse));
+    }
+
+    /**
+     * Adds a cache policy to the registry or replaces an existing one.
+     * @param name Name of the policy.
+     * @param factory Creates caches of the policy.
+     */
+    public static synchronized void register(String name, Factory factory) {
+        POLICIES.put(name, factory);
+    }
+
+    /**
+     * Creates a cache of a registered policy. Buys and sells of concurrent requests are coalesced before
+     * they reach the warehouse.
+     * @param name Name of the policy.
+     * @param warehouse The warehouse to be cached.
+     * @param peerID ID of the peer that owns the cache.
+     * @return The new warehouse cache.
+     */
+    public static synchronized IWarehouseCache create(String name, IWarehouse warehouse, int peerID) {
+        Factory factory = POLICIES.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown cache policy " + name + ". Available policies: " + getNames() + ".");
+        }
+        return factory.create(new BatchingWarehouse(warehouse), peerID);
+    }
+
+    /**
+     * @return Names of all registered policies.
+     */
+    public static synchronized Set<String> getNames() {
+        return Set.copyOf(POLICIES.keySet());
+    }
+
+    /**
+     * Creates caches of a policy.
+     */
+    public interface Factory {
+        IWarehouseCache create(IWarehouse warehouse, int peerID);
+    }
+}
@@ -0,0 +1,89 @@
+package cache;
+
+import peer.ReplyStatus;
+import product.Product;
+import warehouse.IWarehouse;
+
+import java.rmi.RemoteException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implements a write-through cache with invalidations. Every write goes to the warehouse, and cache updates
+ * of all traders are treated as invalidation broadcasts: the entry of the changed product is dropped and read
+ * again from the warehouse on the next access. Reads never rely on deltas, so a lost update can't leave a
+ * wrong amount behind, at the cost of more lookups than with FIFO consistency. A value that was read while an
+ * invalidation arrived is returned but not cached, since it may be older than the invalidation.
+ */
+public class WriteThroughWarehouseCache implements IWarehouseCache {
+
+    private final IWarehouse warehouse;
+    private final Map<Product, Integer> inventoryCache;
+    private final Map<Integer, Integer> peerIDToSequenceNumber;
+    private long invalidations; // number of invalidations so far, guarded by this
+
+    public WriteThroughWarehouseCache(IWarehouse warehouse) {
+        this.warehouse = warehouse;
+        this.inventoryCache = new EnumMap<>(Product.class);
+        this.peerIDToSequenceNumber = new HashMap<>();
+    }
+
+    @Override
+    public int lookup(Product product) throws RemoteException {
+        long invalidationsBefore;
+        synchronized (this) {
+            Integer amount = inventoryCache.get(product);
+            if (amount != null) {
+                return amount;
+            }
+            invalidationsBefore = invalidations;
+        }
+
+        // entry has been invalidated, read through.
+        int amount = warehouse.lookup(product);
+        synchronized (this) {
+            if (invalidations == invalidationsBefore) {
+                inventoryCache.putIfAbsent(product, amount);
+            }
+        }
+        return amount;
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        // check cache if in stock or not.
+        if (lookup(updateMessage.product()) < updateMessage.amount()) {
+            return ReplyStatus.NOT_IN_STOCK;
+        }
+        return warehouse.buy(updateMessage);
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        return warehouse.sell(updateMessage);
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        return warehouse.batch(updateMessages);
+    }
+
+    @Override
+    public synchronized void updateCache(UpdateMessage cacheUpdateMessage) {
+        // invalidate the changed product, or every product if updates have been dropped
+        if (cacheUpdateMessage.isResync()) {
+            inventoryCache.clear();
+        } else {
+            inventoryCache.remove(cacheUpdateMessage.product());
+        }
+        invalidations++;
+        peerIDToSequenceNumber.merge(cacheUpdateMessage.peerID(), cacheUpdateMessage.sequenceNumber(), Math::max);
+    }
+
+    @Override
+    public synchronized int getNextSequenceNumber(int peerID) {
+        return peerIDToSequenceNumber.getOrDefault(peerID, 0) + 1;
+    }
+}
@@ -0,0 +1,163 @@
+package failure;
+
+import utils.Scheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phi accrual failure detector (Hayashibara et al.). Instead of a fixed timeout, it keeps the recent intervals
+ * between the heartbeats of every monitored peer and computes phi, the suspicion that the peer has crashed given how
+ * long its last heartbeat is ago. A phi of 1 means the peer is wrong with 10% probability, 2 with 1%, 3 with 0.1% and
+ * so on. The threshold is set with the system property failure.threshold (default 8). Occasional pauses of the
+ * sender, e.g. for garbage collection, are tolerated up to failure.pause milliseconds (default 200).
+ * Heartbeats that arrive less than MIN_INTERVAL_FRACTION of the expected interval after the previous one, e.g. a burst
+ * of piggybacked heartbeats, only reset the time of the last heartbeat. Adding their intervals would make the window
+ * believe in much shorter intervals, and the next ordinary gap would look like a crash.
+ */
+public class PhiAccrualFailureDetector {
+
+    public static final double THRESHOLD = Double.parseDouble(System.getProperty("failure.threshold", "8"));
+    public static final long ACCEPTABLE_PAUSE = Long.getLong("failure.pause", 200); // in milliseconds
+    public static final int WINDOW_SIZE = 100; // number of intervals to remember per peer
+    public static final double MIN_STD_DEVIATION = TimeUnit.MILLISECONDS.toNanos(20);
+    public static final double MIN_INTERVAL_FRACTION = 0.5; // shorter intervals are not added to the window
+
+    private final long expectedInterval; // in nanoseconds
+    private final double threshold;
+    private final long acceptablePause; // in nanoseconds
+    private final Map<Integer, History> histories;
+
+    /**
+     * @param expectedInterval Interval between two heartbeats in milliseconds, used until the first intervals are known.
+     */
+    public PhiAccrualFailureDetector(long expectedInterval) {
+        this(expectedInterval, THRESHOLD, ACCEPTABLE_PAUSE);
+    }
+
+    /**
+     * @param expectedInterval Interval between two heartbeats in milliseconds, used until the first intervals are known.
+     * @param threshold Phi above which a peer is suspected.
+     * @param acceptablePause Pause of a peer in milliseconds that doesn't count as a crash.
+     */
+    public PhiAccrualFailureDetector(long expectedInterval, double threshold, long acceptablePause) {
+        this.expectedInterval = TimeUnit.MILLISECONDS.toNanos(expectedInterval);
+        this.threshold = threshold;
+        this.acceptablePause = TimeUnit.MILLISECONDS.toNanos(acceptablePause);
+        this.histories = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records a heartbeat of a peer. The first heartbeat starts monitoring the peer.
+     * @param peerID ID of the peer.
+     */
+    public void heartbeat(int peerID) {
+        heartbeat(peerID, Scheduler.nanoTime());
+    }
+
+    /**
+     * Records a heartbeat of a peer. The first heartbeat starts monitoring the peer.
+     * @param peerID ID of the peer.
+     * @param now Time of the heartbeat from Scheduler.nanoTime().
+     */
+    public void heartbeat(int peerID, long now) {
+        histories.computeIfAbsent(peerID, id -> new History(now)).add(now);
+    }
+
+    /**
+     * @param peerID ID of the peer.
+     * @param now Current time from Scheduler.nanoTime().
+     * @return Suspicion that the peer has crashed, 0 if the peer isn't monitored.
+     */
+    public double phi(int peerID, long now) {
+        History history = histories.get(peerID);
+        return history != null ? history.phi(now) : 0;
+    }
+
+    /**
+     * @param peerID ID of the peer.
+     * @return Whether the peer is not suspected to have crashed.
+     */
+    public boolean isAvailable(int peerID) {
+        return isAvailable(peerID, Scheduler.nanoTime());
+    }
+
+    /**
+     * @param peerID ID of the peer.
+     * @param now Current time from Scheduler.nanoTime().
+     * @return Whether the peer is not suspected to have crashed.
+     */
+    public boolean isAvailable(int peerID, long now) {
+        return phi(peerID, now) < threshold;
+    }
+
+    /**
+     * Stops monitoring a peer.
+     * @param peerID ID of the peer.
+     */
+    public void remove(int peerID) {
+        histories.remove(peerID);
+    }
+
+    /**
+     * @param peerID ID of the peer.
+     * @return Whether the peer is monitored.
+     */
+    public boolean isMonitored(int peerID) {
+        return histories.containsKey(peerID);
+    }
+
+    // intervals between the heartbeats of a single peer
+    private class History {
+        private final long[] intervals;
+        private int size;
+        private int next;
+        private double sum;
+        private double squaredSum;
+        private long lastHeartbeat;
+
+        History(long now) {
+            this.intervals = new long[WINDOW_SIZE];
+            this.lastHeartbeat = now;
+            // start with the expected interval and some deviation, until real intervals come in
+            addInterval(expectedInterval - expectedInterval / 4);
+            addInterval(expectedInterval + expectedInterval / 4);
+        }
+
+        synchronized void add(long now) {
+            if (now > lastHeartbeat) {
+                if (now - lastHeartbeat >= expectedInterval * MIN_INTERVAL_FRACTION) {
+                    addInterval(now - lastHeartbeat);
+                }
+                lastHeartbeat = now;
+            }
+        }
+
+        private void addInterval(long interval) {
+            if (size == intervals.length) {
+                sum -= intervals[next];
+                squaredSum -= (double) intervals[next] * intervals[next];
+            } else {
+                size++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % intervals.length;
+            sum += interval;
+            squaredSum += (double) interval * interval;
+        }
+
+        synchronized double phi(long now) {
+            double mean = sum / size + acceptablePause;
+            double stdDeviation = Math.max(MIN_STD_DEVIATION, Math.sqrt(Math.max(0, squaredSum / size - (sum / size) * (sum / size))));
+            double y = (now - lastHeartbeat - mean) / stdDeviation;
+
+            // logistic approximation of the cumulative normal distribution
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (now - lastHeartbeat > mean) {
+                return -Math.log10(e / (1 + e));
+            }
+            return -Math.log10(1 - 1 / (1 + e));
+        }
+    }
+}
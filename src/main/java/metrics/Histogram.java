@@ -0,0 +1,189 @@
+package metrics;
+
+import utils.Scheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with log-linear buckets like HdrHistogram. Every power of two is split into 32 buckets, so a
+ * percentile is at most about 3% off the recorded value. Recording is lock-free and doesn't allocate.
+ * Values are in nanoseconds, unless the histogram is created for plain values like batch sizes.
+ */
+public class Histogram {
+
+    public static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // buckets per power of two
+    public static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+    private final boolean nanoseconds; // whether toString prints the values as microseconds
+
+    public Histogram() {
+        this(true);
+    }
+
+    /**
+     * @param nanoseconds Whether the values are in nanoseconds, false for plain values.
+     */
+    public Histogram(boolean nanoseconds) {
+        this.nanoseconds = nanoseconds;
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     * @param value The value in nanoseconds.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(getBucket(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Records a value and corrects for coordinated omission: a request that takes longer than the interval between
+     * requests delays the requests after it, so their latencies are recorded as well, one interval shorter each.
+     * @param value The value in nanoseconds.
+     * @param expectedInterval Time between the requests in nanoseconds, 0 to record only the value.
+     */
+    public void recordWithExpectedInterval(long value, long expectedInterval) {
+        record(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missedValue = value - expectedInterval; missedValue >= expectedInterval; missedValue -= expectedInterval) {
+            record(missedValue);
+        }
+    }
+
+    /**
+     * Records the time since a start time.
+     * @param startTime Start time from Scheduler.nanoTime().
+     */
+    public void recordSince(long startTime) {
+        record(Scheduler.nanoTime() - startTime);
+    }
+
+    /**
+     * Adds all values of another histogram to this one.
+     * @param other The other histogram.
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = other.buckets.get(i);
+            if (bucketCount > 0) {
+                buckets.addAndGet(i, bucketCount);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * @return Number of recorded values.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return Average of the recorded values in nanoseconds, 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return Highest recorded value in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100.
+     * @return Highest value of the bucket the percentile falls into (but at most the highest recorded value),
+     * 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        // rank of the value, at least the first one
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketEnd(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return Count, mean, p50, p90, p99, p99.9 and max, in microseconds for values in nanoseconds.
+     */
+    @Override
+    public String toString() {
+        if (!nanoseconds) {
+            return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d",
+                    getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(90),
+                    getValueAtPercentile(99), getValueAtPercentile(99.9), getMax());
+        }
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                getCount(), toMicros(getMean()), toMicros(getValueAtPercentile(50)), toMicros(getValueAtPercentile(90)),
+                toMicros(getValueAtPercentile(99)), toMicros(getValueAtPercentile(99.9)), toMicros(getMax()));
+    }
+
+    /**
+     * @param value A value, not negative.
+     * @return Index of the bucket of the value.
+     */
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value; // small values have a bucket of their own
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @param bucket Index of a bucket.
+     * @return Highest value of the bucket.
+     */
+    static long getBucketEnd(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long start = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return start + (1L << shift) - 1;
+    }
+
+    private static double toMicros(double nanos) {
+        return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
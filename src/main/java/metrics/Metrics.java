@@ -0,0 +1,116 @@
+package metrics;
+
+import utils.Logger;
+import utils.Messages;
+import utils.Scheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a process: named counters and latency histograms. Callers look them up once and keep the reference,
+ * so the hot path only increments a striped LongAdder or records into a histogram.
+ * A snapshot of all metrics is written periodically to a file, every -Dmetrics.interval milliseconds (default 5000).
+ */
+public final class Metrics {
+
+    public static final long REPORT_INTERVAL = Long.getLong("metrics.interval", 5000); // in milliseconds
+    public static final String METRICS_FILE_SUFFIX = "_metrics.txt";
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private Metrics() { }
+
+    /**
+     * @param name Name of the counter.
+     * @return The counter, created if it doesn't exist yet.
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Creates a counter for every constant of an enum, e.g. to count reply statuses.
+     * @param prefix Prefix of the counter names, the name of the constant is appended.
+     * @param type The enum.
+     * @return The counters, indexed by the ordinal of the constants.
+     */
+    public static <E extends Enum<E>> LongAdder[] counters(String prefix, Class<E> type) {
+        E[] constants = type.getEnumConstants();
+        LongAdder[] counters = new LongAdder[constants.length];
+        for (E constant : constants) {
+            counters[constant.ordinal()] = counter(prefix + "." + constant.name());
+        }
+        return counters;
+    }
+
+    /**
+     * @param name Name of the histogram.
+     * @return The histogram, created if it doesn't exist yet.
+     */
+    public static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * @param name Name of the histogram.
+     * @return The histogram of plain values like batch sizes, created if it doesn't exist yet.
+     */
+    public static Histogram distribution(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> new Histogram(false));
+    }
+
+    /**
+     * @return All counters and histograms of the process, one per line and sorted by name.
+     */
+    public static String snapshot() {
+        StringBuilder snapshot = new StringBuilder("# metrics at " + LocalDateTime.now() + "\n");
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(COUNTERS).entrySet()) {
+            snapshot.append(counter.getKey()).append(' ').append(counter.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> histogram : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            snapshot.append(histogram.getKey()).append(' ').append(histogram.getValue()).append('\n');
+        }
+        return snapshot.toString();
+    }
+
+    /**
+     * Writes a snapshot to a file. The snapshot replaces the file at once, so readers never see half of it.
+     * @param fileName Name of the file.
+     */
+    public static void report(String fileName) throws IOException {
+        Path file = Paths.get(fileName);
+        Path tempFile = Paths.get(fileName + ".tmp");
+        Files.writeString(tempFile, snapshot(), StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a snapshot to a file every REPORT_INTERVAL milliseconds.
+     * @param name Name of the process, the file is called name + METRICS_FILE_SUFFIX. Failed reports are logged to
+     *             name + "_log.txt", the log file of the process.
+     * @return Future to stop the reports.
+     */
+    public static ScheduledFuture<?> startReporting(String name) {
+        String fileName = name + METRICS_FILE_SUFFIX;
+        return Scheduler.scheduleAtFixedRate(() -> {
+            try {
+                report(fileName);
+            } catch (IOException e) {
+                Logger.log(Logger.Level.WARN, Messages.getMetricsReportFailedMessage(fileName, e), name + "_log.txt");
+            }
+        }, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+}
@@ -2,52 +2,99 @@ package peer;
 
 import cache.UpdateMessage;
 import cache.IWarehouseCache;
+import failure.PhiAccrualFailureDetector;
+import metrics.Histogram;
+import metrics.Metrics;
+import product.Product;
+import transport.Transport;
+import utils.Event;
 import utils.Logger;
 import utils.Messages;
+import utils.Scheduler;
+import workload.Workload;
 
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class APeer extends UnicastRemoteObject implements IPeer {
 
     public static final int REGISTRY_PORT = 1099;
-    private static final int HEARTBEAT_INTERVAL = 5000; // in milliseconds
-    private static final int HEARTBEAT_TIMEOUT = 10500; // in milliseconds
+    public static final int HEARTBEAT_INTERVAL = 100; // in milliseconds
+    public static final String RING_ELECTION = "ring";
+    public static final String TREE_ELECTION = "tree";
+    public static final String ELECTION_MODE = System.getProperty("election.mode", TREE_ELECTION);
+    public static final int TREE_FANOUT = 2; // children of a peer in the election tree
+    public static final Workload WORKLOAD = Workload.fromProperties(); // when buyers and sellers place orders
 
     protected int peerID;
     public int[] traderIDs;
     public IPeer[] peers;
-    public int traderPosition;
+    protected ConsistentHashRing traderRing; // owner of every product
+    protected final TraderSelector traderSelector; // picks the trader of every order
     protected IWarehouseCache warehouseCache;
-    private boolean receivedHeartbeatResponse;
+    private final boolean cacheReportsBuys; // whether the cache sends the stock changes of its buys itself
+    private final Object cacheUpdateLock; // orders sequence numbers of outgoing cache updates.
+    private final CacheUpdateBroadcaster cacheUpdateBroadcaster;
+    private final String peerLogFile; // built once, it is used by every log call.
+    private final PhiAccrualFailureDetector failureDetector; // suspects crashed traders
+    private ScheduledFuture<?> heartbeatTask;
+    private ScheduledFuture<?> failureCheckTask;
     private boolean crashed;
 
+    // metrics, named after the peer so traders in the same JVM are told apart
+    private final Histogram buyLatency;
+    private final Histogram sellLatency;
+    private final Histogram batchLatency;
+    private final Histogram updateCacheLatency;
+    private final LongAdder[] replyStatusCounts; // indexed by the ordinal of the reply status
+
     public APeer(int peerID, IWarehouseCache warehouseCache, int peersAmt) throws RemoteException {
         this.peerID = peerID;
+        this.peerLogFile = "peer" + peerID + "_log.txt";
         this.warehouseCache = warehouseCache;
-        this.traderPosition = 0;
+        this.cacheReportsBuys = warehouseCache.setStockListener(this::sendCacheUpdate);
         peers = new IPeer[peersAmt];
-        receivedHeartbeatResponse = true;
+        failureDetector = new PhiAccrualFailureDetector(HEARTBEAT_INTERVAL);
         crashed = false;
+        cacheUpdateLock = new Object();
+        cacheUpdateBroadcaster = new CacheUpdateBroadcaster();
+        traderSelector = new TraderSelector();
+        buyLatency = Metrics.histogram("peer" + peerID + ".buy");
+        sellLatency = Metrics.histogram("peer" + peerID + ".sell");
+        batchLatency = Metrics.histogram("peer" + peerID + ".batch");
+        updateCacheLatency = Metrics.histogram("peer" + peerID + ".updateCache");
+        replyStatusCounts = Metrics.counters("peer" + peerID + ".reply", ReplyStatus.class);
     }
 
     @Override
     public void start() throws RemoteException {
-        // get all other peers from the registry
-        Registry registry = LocateRegistry.getRegistry("127.0.0.1", REGISTRY_PORT);
+        // get all other peers, directly if they are hosted in this JVM, else from the directory in one call
+        IPeer[] remotePeers = null;
         for (int i = 0; i < this.peers.length; i++) {
-            try {
-                peers[i] = (IPeer) registry.lookup("" + i);
-            } catch (NotBoundException e) {
-                throw new RuntimeException(e);
+            IPeer localPeer = PeerHost.getLocalPeer(i);
+            if (localPeer != null) {
+                peers[i] = localPeer;
+                continue;
+            }
+            if (remotePeers == null) {
+                try {
+                    remotePeers = Directory.findPeers(LocateRegistry.getRegistry("127.0.0.1", REGISTRY_PORT), peers.length);
+                } catch (NotBoundException e) {
+                    throw new RuntimeException(e);
+                }
             }
+            peers[i] = Transport.get().connectPeer(i, remotePeers[i]);
         }
     }
 
@@ -86,7 +133,7 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
                 peers[nextPeer].election(newTags, n);
                 break;
             } catch (RemoteException | NullPointerException e) {
-                Logger.log(Messages.getPeerDoesNotRespondMessage(nextPeer), getPeerLogFile());
+                Logger.event(Event.PEER_DOES_NOT_RESPOND, peerID, nextPeer, null, 0, getPeerLogFile());
             }
         }
     }
@@ -100,9 +147,7 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         }
 
         // forward coordinator message to next peer in the tags array.
-        Logger.log(Messages.getPeerUpdatesCoordinatorMessage(this.peerID, traderIDs), getPeerLogFile());
-        this.traderIDs = traderIDs; // update coordinator
-        this.traderPosition = (peerID / 2) % traderIDs.length; // update trader position
+        setTraders(traderIDs);
         int tagIndex = getPeerTagIndex(tags);
         if (tagIndex != -1 && tagIndex < tags.length-1) {
             peers[tags[tagIndex + 1]].coordinator(traderIDs, tags); // forward message
@@ -110,41 +155,101 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
     }
 
     @Override
-    public synchronized ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+    public final void elect(int n) throws RemoteException {
+
+        // crash simulation
+        if (crashed) {
+            throw new RemoteException();
+        }
+
+        if (ELECTION_MODE.equals(RING_ELECTION)) {
+            election(new int[] {}, n);
+            return;
+        }
+
+        // this peer is the root of the tree, collect the highest IDs and send them down the tree again
+        int[] traderIDs = treeElection(peerID, 0, n);
+        if (n > traderIDs.length) {
+            throw new IllegalArgumentException("Number of traders is greater than the number of peers.");
+        }
+        Logger.log(Messages.getElectionDoneMessage(traderIDs), getPeerLogFile());
+        treeCoordinator(peerID, 0, traderIDs);
+    }
+
+    @Override
+    public final int[] treeElection(int root, int position, int n) throws RemoteException {
 
         // crash simulation
         if (crashed) {
             throw new RemoteException();
         }
 
+        // merge this peer with the highest IDs of the subtrees
+        List<int[]> subtreeIDs = callChildren(root, position, (peer, childPosition) -> peer.treeElection(root, childPosition, n));
+        int[] candidates = new int[] { peerID };
+        for (int[] ids : subtreeIDs) {
+            int[] merged = Arrays.copyOf(candidates, candidates.length + ids.length);
+            System.arraycopy(ids, 0, merged, candidates.length, ids.length);
+            candidates = merged;
+        }
+        Arrays.sort(candidates);
+        return Arrays.copyOfRange(candidates, Math.max(0, candidates.length - n), candidates.length);
+    }
+
+    @Override
+    public final void treeCoordinator(int root, int position, int[] traderIDs) throws RemoteException {
+
+        // crash simulation
+        if (crashed) {
+            throw new RemoteException();
+        }
+
+        setTraders(traderIDs);
+        callChildren(root, position, (peer, childPosition) -> {
+            peer.treeCoordinator(root, childPosition, traderIDs);
+            return null;
+        });
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+
+        // crash simulation
+        if (crashed) {
+            throw new RemoteException();
+        }
+
+        long startTime = Scheduler.nanoTime();
+
         // check if trader
         if (!this.isTrader()) {
-            return ReplyStatus.NOT_A_TRADER;
+            return record(ReplyStatus.NOT_A_TRADER, buyLatency, startTime);
         }
 
         // buy from warehouse cache
         ReplyStatus replyStatus = this.warehouseCache.buy(updateMessage);
 
         // return result and update all other caches
-        if (replyStatus == ReplyStatus.SUCCESSFUL) {
-            int sequenceNumber = this.warehouseCache.getNextSequenceNumber(this.peerID);
-            updateAllTraderCaches(new UpdateMessage(sequenceNumber, this.peerID, updateMessage.product(), -updateMessage.amount()));
+        if (replyStatus == ReplyStatus.SUCCESSFUL && !cacheReportsBuys) {
+            sendCacheUpdate(updateMessage.product(), -updateMessage.amount());
         }
 
-        return replyStatus;
+        return record(replyStatus, buyLatency, startTime);
     }
 
     @Override
-    public synchronized ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
 
         // crash simulation
         if (crashed) {
             throw new RemoteException();
         }
 
+        long startTime = Scheduler.nanoTime();
+
         // check if trader
         if (!this.isTrader()) {
-            return ReplyStatus.NOT_A_TRADER;
+            return record(ReplyStatus.NOT_A_TRADER, sellLatency, startTime);
         }
 
         // sell to warehouse cache
@@ -152,11 +257,42 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
 
         // return result and update all other caches
         if (replyStatus == ReplyStatus.SUCCESSFUL) {
-            int sequenceNumber = this.warehouseCache.getNextSequenceNumber(this.peerID);
-            updateAllTraderCaches(new UpdateMessage(sequenceNumber, this.peerID, updateMessage.product(), updateMessage.amount()));
+            sendCacheUpdate(updateMessage.product(), updateMessage.amount());
         }
 
-        return replyStatus;
+        return record(replyStatus, sellLatency, startTime);
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+
+        // crash simulation
+        if (crashed) {
+            throw new RemoteException();
+        }
+
+        long startTime = Scheduler.nanoTime();
+
+        // check if trader
+        if (!this.isTrader()) {
+            ReplyStatus[] replyStatuses = new ReplyStatus[updateMessages.size()];
+            Arrays.fill(replyStatuses, ReplyStatus.NOT_A_TRADER);
+            return replyStatuses;
+        }
+
+        // buy from and sell to warehouse cache
+        ReplyStatus[] replyStatuses = this.warehouseCache.batch(updateMessages);
+
+        // update all other caches for every successful message
+        for (int i = 0; i < replyStatuses.length; i++) {
+            if (replyStatuses[i] == ReplyStatus.SUCCESSFUL) {
+                sendCacheUpdate(updateMessages.get(i).product(), updateMessages.get(i).amount());
+            }
+            replyStatusCounts[replyStatuses[i].ordinal()].increment();
+        }
+
+        batchLatency.recordSince(startTime);
+        return replyStatuses;
     }
 
     @Override
@@ -167,44 +303,53 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
             throw new RemoteException();
         }
 
+        long startTime = Scheduler.nanoTime();
+        recordHeartbeat(cacheUpdateMessage.peerID()); // piggybacked heartbeat
         warehouseCache.updateCache(cacheUpdateMessage);
+        updateCacheLatency.recordSince(startTime);
     }
 
     @Override
-    public int getPeerID() throws RemoteException {
+    public void updateCaches(List<UpdateMessage> cacheUpdateMessages) throws RemoteException {
 
         // crash simulation
         if (crashed) {
             throw new RemoteException();
         }
 
-        return this.peerID;
+        long startTime = Scheduler.nanoTime();
+        // piggybacked heartbeat, a batch arrives at once and counts once per sender
+        Set<Integer> senders = new HashSet<>();
+        for (UpdateMessage cacheUpdateMessage : cacheUpdateMessages) {
+            if (senders.add(cacheUpdateMessage.peerID())) {
+                recordHeartbeat(cacheUpdateMessage.peerID());
+            }
+            warehouseCache.updateCache(cacheUpdateMessage);
+        }
+        updateCacheLatency.recordSince(startTime);
     }
 
-    // Sends heartbeat ping for fault tolerance
     @Override
-    public void sendHeartbeat() throws RemoteException {
+    public int getPeerID() throws RemoteException {
 
         // crash simulation
         if (crashed) {
             throw new RemoteException();
         }
 
-        Logger.log(Messages.getSendHeartbeatMessage(this.peerID, this.getOtherTraderID()), this.getPeerLogFile());
-        this.peers[getOtherTraderID()].respondToHeartbeat();
+        return this.peerID;
     }
 
-    // Sends response to heartbeat message
+    // Receives a heartbeat of another trader
     @Override
-    public void respondToHeartbeat() throws RemoteException {
+    public void heartbeat(int senderID) throws RemoteException {
 
         // crash simulation
         if (crashed) {
             throw new RemoteException();
         }
 
-        Logger.log(Messages.getHeartbeatResponseMessage(this.peerID, this.getOtherTraderID()), this.getPeerLogFile());
-        this.receivedHeartbeatResponse = true;
+        recordHeartbeat(senderID);
     }
 
     // Starts heartbeat in traders
@@ -221,63 +366,92 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
             return;
         }
 
-        ScheduledExecutorService heartbeatExecutor = Executors.newScheduledThreadPool(1);
-        ScheduledExecutorService heartbeatTimeoutExecutor = Executors.newScheduledThreadPool(1);
+        // every trader monitors all other traders
+        for (int traderID : this.traderIDs) {
+            if (traderID != this.peerID) {
+                failureDetector.heartbeat(traderID);
+            }
+        }
 
-        heartbeatExecutor.scheduleAtFixedRate(() -> {
+        heartbeatTask = Scheduler.scheduleAtFixedRate(() -> {
 
             // crash simulation
             if (crashed) {
-                heartbeatExecutor.shutdown();
-                heartbeatTimeoutExecutor.shutdown();
+                stopHeartbeat();
                 return;
             }
 
-            try {
-                this.peers[getOtherTraderID()].sendHeartbeat();
-            } catch (RemoteException e) {
-                throw new RuntimeException(e);
+            // cache updates count as heartbeats, only send one to traders that didn't get an update recently
+            long since = Scheduler.nanoTime() - TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_INTERVAL);
+            for (int traderID : this.traderIDs) {
+                if (traderID == this.peerID || !traderRing.contains(traderID) || cacheUpdateBroadcaster.hasDeliveredSince(traderID, since)) {
+                    continue;
+                }
+                IPeer trader = this.peers[traderID];
+                Scheduler.execute(() -> {
+                    try {
+                        trader.heartbeat(this.peerID);
+                    } catch (RemoteException ignored) {} // the failure detector notices the missing heartbeats
+                });
             }
         }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
 
-        heartbeatTimeoutExecutor.scheduleAtFixedRate(() -> {
+        failureCheckTask = Scheduler.scheduleAtFixedRate(() -> {
 
             // crash simulation
             if (crashed) {
-                heartbeatExecutor.shutdown();
-                heartbeatTimeoutExecutor.shutdown();
+                stopHeartbeat();
                 return;
             }
 
-            if (this.receivedHeartbeatResponse) {
-                // do nothing because other is alive
-                this.receivedHeartbeatResponse = false;
-            } else {
-                // other is not alive, send change trader message to all peers.
-
-                Logger.log(Messages.getHeartbeatTimeoutMessage(this.peerID, getOtherTraderID()), getPeerLogFile());
-                sendUpdateTraderMessage();
-                heartbeatExecutor.shutdown();
-                heartbeatTimeoutExecutor.shutdown();
+            for (int traderID : this.traderIDs) {
+                if (failureDetector.isMonitored(traderID) && !failureDetector.isAvailable(traderID)) {
+                    // other is not alive, send remove trader message to all peers.
+                    Logger.event(Event.HEARTBEAT_TIMEOUT, this.peerID, traderID, null, 0, getPeerLogFile());
+                    failureDetector.remove(traderID);
+                    sendRemoveTraderMessage(traderID);
+                }
             }
-        }, HEARTBEAT_TIMEOUT, HEARTBEAT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    // Stops sending and checking heartbeats
+    private void stopHeartbeat() {
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+        }
+        if (failureCheckTask != null) {
+            failureCheckTask.cancel(false);
+        }
+    }
+
+    // Records that a trader is alive, as long as it is monitored
+    private void recordHeartbeat(int traderID) {
+        if (failureDetector.isMonitored(traderID)) {
+            failureDetector.heartbeat(traderID);
+        }
     }
 
-    // Updates trader in case of crash
+    // Counts the reply status and records the latency of a request
+    private ReplyStatus record(ReplyStatus replyStatus, Histogram latency, long startTime) {
+        latency.recordSince(startTime);
+        replyStatusCounts[replyStatus.ordinal()].increment();
+        return replyStatus;
+    }
+
+    // Removes a crashed trader, its products move to the next traders on the ring
     @Override
-    public void updateTrader(int traderID) throws RemoteException {
+    public void removeTrader(int traderID) throws RemoteException {
 
         // crash simulation
         if (crashed) {
             throw new RemoteException();
         }
 
-        for (int i = 0; i < this.traderIDs.length; i++) {
-            if (this.traderIDs[i] == traderID) {
-                Logger.log(Messages.getTraderUpdatedMessage(this.peerID, traderID), getPeerLogFile());
-                this.traderPosition = i;
-                break;
-            }
+        failureDetector.remove(traderID);
+        if (traderRing.contains(traderID)) {
+            Logger.event(Event.TRADER_REMOVED, this.peerID, traderID, null, 0, getPeerLogFile());
+            traderRing.remove(traderID);
         }
     }
 
@@ -304,6 +478,51 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         return newSearchPath;
     }
 
+    // Updates the coordinators
+    private void setTraders(int[] traderIDs) {
+        Logger.log(Messages.getPeerUpdatesCoordinatorMessage(this.peerID, traderIDs), getPeerLogFile());
+        this.traderIDs = traderIDs; // update coordinator
+        this.traderRing = new ConsistentHashRing(traderIDs); // split the products among the traders
+    }
+
+    /**
+     * Calls the children of a position in the election tree in parallel. Peer IDs are counted from the root, so the
+     * peer at position p has the ID (root + p) % number of peers and its children are at TREE_FANOUT * p + 1 ...
+     * TREE_FANOUT * p + TREE_FANOUT. If a child does not respond, its children are called instead.
+     * @param root ID of the root of the tree.
+     * @param position Position of the parent in the tree.
+     * @param call Call to make on every child.
+     * @return Results of the children that responded.
+     */
+    private <T> List<T> callChildren(int root, int position, TreeCall<T> call) {
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>();
+        for (int child = TREE_FANOUT * position + 1; child <= TREE_FANOUT * position + TREE_FANOUT && child < peers.length; child++) {
+            int childPosition = child;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                int childID = (root + childPosition) % peers.length;
+                try {
+                    T result = call.call(peers[childID], childPosition);
+                    return result != null ? List.of(result) : List.of();
+                } catch (RemoteException | NullPointerException e) {
+                    // skip the child that does not respond, its children take its place
+                    Logger.event(Event.PEER_DOES_NOT_RESPOND, peerID, childID, null, 0, getPeerLogFile());
+                    return callChildren(root, childPosition, call);
+                }
+            }, Scheduler.getWorkers()));
+        }
+
+        List<T> results = new ArrayList<>();
+        for (CompletableFuture<List<T>> future : futures) {
+            results.addAll(future.join());
+        }
+        return results;
+    }
+
+    // Remote call to a child in the election tree
+    private interface TreeCall<T> {
+        T call(IPeer peer, int position) throws RemoteException;
+    }
+
     /**
      * Retrieves index of this peer id in tags array.
      * @param tags Tags array containing all peer indices.
@@ -320,12 +539,17 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
 
     // Gets the log file of a peer
     protected String getPeerLogFile() {
-        return "peer" + peerID + "_log.txt";
+        return peerLogFile;
     }
 
-    // Gets single trader
-    protected IPeer getCurrentTrader() {
-        return this.peers[this.traderIDs[traderPosition]];
+    // Gets the trader that owns the product
+    protected IPeer getTrader(Product product) {
+        return this.peers[traderRing.getOwner(product)];
+    }
+
+    // Gets the IDs of the traders that may take an order of the product, the owner first
+    protected int[] getTraderCandidates(Product product) {
+        return traderRing.getOwners(product, TraderSelector.CHOICES);
     }
 
     // Initializes peers
@@ -333,16 +557,29 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         this.peers = peers;
     }
 
-    // Updates the cache for all traders
-    public void updateAllTraderCaches(UpdateMessage cacheUpdateMessage) {
+    // Numbers a change of the inventory and sends it to all traders
+    private void sendCacheUpdate(Product product, int amount) throws RemoteException {
+        synchronized (cacheUpdateLock) {
+            updateAllTraderCaches(this.warehouseCache.createCacheUpdate(this.peerID, product, amount));
+        }
+    }
+
+    // Updates the own cache right away and queues the update for all other traders
+    public void updateAllTraderCaches(UpdateMessage cacheUpdateMessage) throws RemoteException {
         for (int traderID : this.traderIDs) {
-            IPeer peer = this.peers[traderID];
-            try {
-                peer.updateCache(cacheUpdateMessage);
-            } catch (RemoteException ignored) {}
+            if (traderID == this.peerID) {
+                warehouseCache.updateCache(cacheUpdateMessage);
+            } else if (traderRing.contains(traderID)) { // skip crashed traders
+                cacheUpdateBroadcaster.send(traderID, this.peers[traderID], cacheUpdateMessage);
+            }
         }
     }
 
+    // Waits until the cache updates of this peer have reached the other traders
+    public boolean flushCacheUpdates(long timeout) throws InterruptedException {
+        return cacheUpdateBroadcaster.flush(timeout);
+    }
+
     // Checks if peer is trader
     public boolean isTrader() {
         boolean trader = false;
@@ -355,25 +592,11 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         return trader;
     }
 
-    // Gets other trader ID
-    private int getOtherTraderID() {
-        // There should be two traders
-        if (this.traderIDs.length < 2) {
-            throw new IllegalStateException("This is the only trader.");
-        }
-        return this.peerID == this.traderIDs[0] ? this.traderIDs[1] : this.traderIDs[0];
-    }
-
-    // Sends message to all peers about trader update
-    private void sendUpdateTraderMessage() {
-        // Loop through all peers
+    // Sends message to all peers, including this one, that a trader crashed
+    private void sendRemoveTraderMessage(int traderID) {
         for (IPeer peer : peers) {
             try {
-                // Don't send message to self
-                if (peer.getPeerID() == this.peerID) {
-                    continue;
-                }
-                peer.updateTrader(this.peerID);
+                peer.removeTrader(traderID);
             } catch (RemoteException ignored) {}
         }
     }
@@ -2,103 +2,130 @@ package peer;
 
 import cache.IWarehouseCache;
 import cache.UpdateMessage;
+import metrics.Metrics;
 import product.Product;
+import transport.Transport;
+import utils.Event;
 import utils.Logger;
-import utils.Messages;
+import utils.Scheduler;
+import warehouse.FailoverWarehouse;
 import warehouse.IWarehouse;
-import warehouse.Warehouse;
+import workload.LoadGenerator;
 
+import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class Buyer extends APeer{
 
-    public static void main(String[] args) throws RemoteException, NotBoundException {
+    public static void main(String[] args) throws IOException, NotBoundException {
         int peerID = Integer.parseInt(args[0]);
         int peersAmt = Integer.parseInt(args[1]);
 
         Registry registry = LocateRegistry.getRegistry("127.0.0.1", REGISTRY_PORT);
-        IWarehouse warehouse = (IWarehouse) registry.lookup(Warehouse.WAREHOUSE_NAME);
-        registry.rebind("" + peerID, new Buyer(peerID, IWarehouseCache.getNewWarehouseCache(warehouse), peersAmt));
+        IWarehouse warehouse = FailoverWarehouse.connect(Directory.findWarehouse(registry));
+        Buyer peer = new Buyer(peerID, IWarehouseCache.getNewWarehouseCache(warehouse, peerID), peersAmt);
+        Transport.get().exportPeer(peerID, peer);
+        registry.rebind("" + peerID, peer);
+        Directory.announce(registry, peerID, peer);
+        Metrics.startReporting("peer" + peerID);
     }
 
     // CLASS
 
     public static final int BUY_PERIOD = 5000;
 
+    private LoadGenerator loadGenerator;
+    private final OrderWindow orders;
     public Product product;
     public int amount;
-    public boolean bought;
-    public int buySequenceNumber;
 
     public Buyer(int peerID, IWarehouseCache warehouseCache, int peersAmt) throws RemoteException {
         super(peerID, warehouseCache, peersAmt);
-        bought = false;
         pickNewProduct();
-        buySequenceNumber = 1;
+        orders = new OrderWindow(OrderWindow.SIZE);
     }
 
     @Override
     public void start() throws RemoteException {
         super.start();
         Logger.log("Peer " + peerID + " (Buyer) started.", getPeerLogFile());
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
-        executor.scheduleAtFixedRate(() -> {
+        loadGenerator = new LoadGenerator(WORKLOAD, BUY_PERIOD, () -> {
             try {
                 // only buy something if not coordinator
                 if (this.isTrader()) {
-                    return;
-                }
-
-                // pick new product when bought
-                if (this.bought) {
-                    pickNewProduct();
-                    this.bought = false;
+                    return false;
                 }
                 initiateBuy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        }, BUY_PERIOD, BUY_PERIOD, TimeUnit.MILLISECONDS);
+            return true;
+        }, Metrics.histogram("peer" + peerID + ".order"));
+        loadGenerator.start();
     }
 
-    public void initiateBuy() {
+    // up to a window of buys run at once, waits while the window is full
+    public void initiateBuy() throws InterruptedException {
+        UpdateMessage updateMessage = orders.acquire(this::newOrder);
+        ReplyStatus status = null;
         try {
+            // pick the less loaded of the traders that may take the product
+            int[] traderIDs = getTraderCandidates(updateMessage.product());
+            int traderID = traderSelector.choose(traderIDs);
             // attempt to buy product
-            Logger.log(Messages.getBuyAttemptMessage(this.peerID, this.getCurrentTrader().getPeerID(), this.product, this.amount), getPeerLogFile());
-            ReplyStatus status = getCurrentTrader().buy(new UpdateMessage(this.buySequenceNumber, this.peerID, this.product, this.amount));
+            Logger.event(Event.BUY_ATTEMPT, this.peerID, traderID, updateMessage.product(), updateMessage.amount(), getPeerLogFile());
+            TraderSelector.Reply reply = traderSelector.send(traderID, traderIDs, this.peers, trader -> trader.buy(updateMessage));
+            status = reply.status();
 
             switch (status) {
                 case SUCCESSFUL -> {
-                    // reset retries to pick a new product
-                    this.bought = true;
-                    this.buySequenceNumber++;
-                    Logger.log(Messages.getBuySuccessfulMessage(this.peerID, getCurrentTrader().getPeerID(), this.product, this.amount), getPeerLogFile());
+                    // pick a new product after a buy
+                    pickNewProduct();
+                    Logger.event(Event.BUY_SUCCESSFUL, this.peerID, reply.traderID(), updateMessage.product(), updateMessage.amount(), getPeerLogFile());
                 }
                 case NOT_IN_STOCK -> // item not in stock
-                        Logger.log(Messages.getOutOfStockMessage(this.peerID, getCurrentTrader().getPeerID(), this.product, this.amount), getPeerLogFile());
+                        Logger.event(Event.OUT_OF_STOCK, this.peerID, reply.traderID(), updateMessage.product(), updateMessage.amount(), getPeerLogFile());
                 case LOW_SEQUENCE_NUMBER -> { // sequence number too low. Warehouse already updated.
-                    this.bought = true;
-                    this.buySequenceNumber++;
-                    Logger.log(Messages.getBuyLowSequenceNumberMessage(this.peerID, getCurrentTrader().getPeerID(), this.product, this.amount), getPeerLogFile());
+                    pickNewProduct();
+                    Logger.event(Event.BUY_LOW_SEQUENCE_NUMBER, this.peerID, reply.traderID(), updateMessage.product(), updateMessage.amount(), getPeerLogFile());
                 }
                 case NOT_A_TRADER -> // recipient is not a trader, do logging
-                        Logger.log(Messages.getNotATraderMessage(this.peerID, getCurrentTrader().getPeerID()), getPeerLogFile());
+                        Logger.event(Event.NOT_A_TRADER, this.peerID, reply.traderID(), null, 0, getPeerLogFile());
                 case ERROR_DURING_WRITE -> // error during write to file, do logging
-                        Logger.log(Messages.getBuyErrorMessage(this.peerID, getCurrentTrader().getPeerID(), this.product, this.amount), getPeerLogFile());
+                        Logger.event(Event.BUY_ERROR, this.peerID, reply.traderID(), updateMessage.product(), updateMessage.amount(), getPeerLogFile());
             }
-        } catch (RemoteException ignored) {}
+        } catch (RemoteException ignored) {
+        } finally {
+            if (status == null) {
+                // no reply, the buy may have been applied, so it is sent again with the same sequence number
+                orders.retry(updateMessage);
+            } else {
+                orders.complete(updateMessage, status == ReplyStatus.SUCCESSFUL || status == ReplyStatus.LOW_SEQUENCE_NUMBER);
+            }
+        }
+    }
+
+    /**
+     * @return The buys in flight and the number of applied buys.
+     */
+    public OrderWindow getOrders() {
+        return orders;
+    }
+
+    // new buy of the current product
+    private synchronized UpdateMessage newOrder(int sequenceNumber) {
+        return new UpdateMessage(sequenceNumber, this.peerID, this.product, this.amount);
     }
 
     // Pick new product to buy
-    public void pickNewProduct() {
-        this.product = Product.pickRandomProduct();
-        this.amount = (int) (Math.random() * 5) + 1;
+    public synchronized void pickNewProduct() {
+        this.product = WORKLOAD.pickProduct();
+        this.amount = Scheduler.getRandom().nextInt(5) + 1;
     }
 }
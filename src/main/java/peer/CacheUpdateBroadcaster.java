@@ -0,0 +1,180 @@
+package peer;
+
+import cache.UpdateMessage;
+import metrics.Metrics;
+import utils.Scheduler;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends cache updates to other traders off the request path. Every destination has its own queue,
+ * destinations are served in parallel, and all updates that queued up for a destination are delivered
+ * with a single call. At most one delivery per destination is running, which keeps the updates in order.
+ * A queue holds at most QUEUE_CAPACITY updates. If a destination falls behind or a delivery fails, its
+ * updates are dropped and the next update is preceded by a resync, so the receiver looks the stock up again.
+ */
+public class CacheUpdateBroadcaster {
+
+    public static final String QUEUE_CAPACITY_PROPERTY = "broadcast.queue";
+    public static final int QUEUE_CAPACITY = Integer.getInteger(QUEUE_CAPACITY_PROPERTY, 1024);
+    private static final LongAdder DROPPED = Metrics.counter("broadcast.dropped");
+
+    private final Map<Integer, Destination> destinations;
+    private int pendingMessages;
+
+    public CacheUpdateBroadcaster() {
+        this.destinations = new ConcurrentHashMap<>();
+        this.pendingMessages = 0;
+    }
+
+    /**
+     * Queues a cache update for a peer and returns immediately.
+     * @param peerID ID of the receiving peer.
+     * @param peer The receiving peer.
+     * @param cacheUpdateMessage The update to deliver.
+     */
+    public void send(int peerID, IPeer peer, UpdateMessage cacheUpdateMessage) {
+        Destination destination = destinations.computeIfAbsent(peerID, id -> new Destination());
+        destination.peer = peer;
+        synchronized (destination) {
+            if (destination.size.get() >= QUEUE_CAPACITY) {
+                // the destination fell behind, drop its backlog
+                int dropped = 0;
+                while (destination.queue.poll() != null) {
+                    destination.size.decrementAndGet();
+                    dropped++;
+                }
+                DROPPED.add(dropped);
+                release(dropped);
+                destination.resync = true;
+            }
+            if (destination.resync) {
+                // the receiver skips the dropped updates instead of waiting for them
+                enqueue(destination, UpdateMessage.resync(cacheUpdateMessage.sequenceNumber() - 1, cacheUpdateMessage.peerID()));
+                destination.resync = false;
+            }
+            enqueue(destination, cacheUpdateMessage);
+        }
+        if (destination.scheduled.compareAndSet(false, true)) {
+            Scheduler.execute(() -> deliver(destination));
+        }
+    }
+
+    /**
+     * Waits until every queued update has been delivered or dropped.
+     * @param timeout Maximum time to wait in milliseconds.
+     * @return Whether all updates have been handled in time.
+     */
+    public synchronized boolean flush(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (pendingMessages > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Cache updates double as heartbeats, so a trader doesn't need to send a heartbeat to a peer it just updated.
+     * @param peerID ID of the receiving peer.
+     * @param time Time from Scheduler.nanoTime().
+     * @return Whether updates have been delivered to the peer since the given time.
+     */
+    public boolean hasDeliveredSince(int peerID, long time) {
+        Destination destination = destinations.get(peerID);
+        return destination != null && destination.delivered && destination.lastDelivery - time >= 0;
+    }
+
+    /**
+     * Delivers the queued updates of a destination until its queue is empty.
+     * Updates that can't be delivered are dropped, just like a failed direct call.
+     * @param destination The destination to serve.
+     */
+    private void deliver(Destination destination) {
+        while (true) {
+            List<UpdateMessage> cacheUpdateMessages = new ArrayList<>();
+            synchronized (destination) {
+                for (UpdateMessage message = destination.queue.poll(); message != null; message = destination.queue.poll()) {
+                    destination.size.decrementAndGet();
+                    cacheUpdateMessages.add(message);
+                }
+            }
+
+            if (cacheUpdateMessages.isEmpty()) {
+                destination.scheduled.set(false);
+                // another update might have been queued before the flag was cleared.
+                if (destination.queue.isEmpty() || !destination.scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                destination.peer.updateCaches(cacheUpdateMessages);
+                destination.lastDelivery = Scheduler.nanoTime();
+                destination.delivered = true;
+            } catch (RemoteException | RuntimeException e) {
+                DROPPED.add(cacheUpdateMessages.size());
+                synchronized (destination) {
+                    // updates queued during the call go next, the resync has to be in front of them
+                    UpdateMessage next = destination.queue.peek();
+                    if (next == null) {
+                        destination.resync = true;
+                    } else if (!next.isResync()) {
+                        enqueueFirst(destination, UpdateMessage.resync(next.sequenceNumber() - 1, next.peerID()));
+                    }
+                }
+            } finally {
+                release(cacheUpdateMessages.size());
+            }
+        }
+    }
+
+    // queues an update, the caller holds the lock of the destination
+    private void enqueue(Destination destination, UpdateMessage cacheUpdateMessage) {
+        synchronized (this) {
+            pendingMessages++;
+        }
+        destination.queue.add(cacheUpdateMessage);
+        destination.size.incrementAndGet();
+    }
+
+    // queues an update in front of the others, the caller holds the lock of the destination
+    private void enqueueFirst(Destination destination, UpdateMessage cacheUpdateMessage) {
+        synchronized (this) {
+            pendingMessages++;
+        }
+        destination.queue.addFirst(cacheUpdateMessage);
+        destination.size.incrementAndGet();
+    }
+
+    // the given number of updates are no longer pending
+    private synchronized void release(int messages) {
+        pendingMessages -= messages;
+        notifyAll();
+    }
+
+    /**
+     * Queue and delivery state of a single receiving peer.
+     */
+    private static class Destination {
+        private final ConcurrentLinkedDeque<UpdateMessage> queue = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private boolean resync; // updates have been dropped since the last one queued, guarded by the destination
+        private volatile IPeer peer;
+        private volatile long lastDelivery; // from Scheduler.nanoTime()
+        private volatile boolean delivered;
+    }
+}
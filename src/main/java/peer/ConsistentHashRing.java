@@ -0,0 +1,109 @@
+package peer;
+
+import product.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring that assigns every product to a trader. Every trader is placed on the ring many times
+ * (virtual nodes), a product belongs to the first trader after its own position. When a trader is removed, only its
+ * products move to the next traders on the ring, all other products keep their trader.
+ */
+public class ConsistentHashRing {
+
+    public static final int VIRTUAL_NODES = 64; // positions of every trader on the ring
+
+    private final TreeMap<Integer, Integer> ring; // position -> trader ID
+
+    /**
+     * @param traderIDs IDs of the traders.
+     */
+    public ConsistentHashRing(int[] traderIDs) {
+        this.ring = new TreeMap<>();
+        for (int traderID : traderIDs) {
+            add(traderID);
+        }
+    }
+
+    /**
+     * Places a trader on the ring.
+     * @param traderID ID of the trader.
+     */
+    public synchronized void add(int traderID) {
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            ring.put(hash(traderID * VIRTUAL_NODES + i), traderID);
+        }
+    }
+
+    /**
+     * Removes a trader from the ring. Its products move to the next traders on the ring.
+     * @param traderID ID of the trader.
+     */
+    public synchronized void remove(int traderID) {
+        ring.values().removeIf(id -> id == traderID);
+    }
+
+    /**
+     * @param product The product.
+     * @return ID of the trader that owns the product.
+     * @throws IllegalStateException If there are no traders.
+     */
+    public synchronized int getOwner(Product product) {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("There are no traders.");
+        }
+        Map.Entry<Integer, Integer> owner = ring.ceilingEntry(getPosition(product));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue(); // wrap around
+    }
+
+    /**
+     * @param product The product.
+     * @param amount Maximum number of traders.
+     * @return IDs of the owner of the product and the next distinct traders on the ring, in ring order.
+     */
+    public synchronized int[] getOwners(Product product, int amount) {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("There are no traders.");
+        }
+        List<Integer> owners = new ArrayList<>();
+        int position = getPosition(product);
+        for (Integer traderID : ring.tailMap(position).values()) {
+            addOwner(owners, traderID, amount);
+        }
+        for (Integer traderID : ring.headMap(position).values()) { // wrap around
+            addOwner(owners, traderID, amount);
+        }
+        return owners.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param traderID ID of the trader.
+     * @return Whether the trader is on the ring.
+     */
+    public synchronized boolean contains(int traderID) {
+        return ring.containsValue(traderID);
+    }
+
+    private static int getPosition(Product product) {
+        return hash((product.ordinal() + 1) << 24);
+    }
+
+    private static void addOwner(List<Integer> owners, int traderID, int amount) {
+        if (owners.size() < amount && !owners.contains(traderID)) {
+            owners.add(traderID);
+        }
+    }
+
+    // spreads neighboring keys over the whole ring (finalizer of MurmurHash3)
+    private static int hash(int key) {
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        key *= 0xc2b2ae35;
+        key ^= key >>> 16;
+        return key;
+    }
+}
@@ -0,0 +1,144 @@
+package peer;
+
+import warehouse.IWarehouse;
+import warehouse.Warehouse;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Directory of a run. The launcher creates it and binds it to the registry before it starts any process.
+ * Without a directory (e.g. when a peer is started by hand) the static helpers fall back to registry lookups.
+ */
+public class Directory extends UnicastRemoteObject implements IDirectory {
+
+    public static final String DIRECTORY_NAME = "directory";
+    public static final long STARTUP_TIMEOUT = Long.getLong("startup.timeout", 30000); // in milliseconds
+
+    /**
+     * @param registry The registry.
+     * @return The directory bound to the registry, or null if there is none.
+     */
+    public static IDirectory find(Registry registry) throws RemoteException {
+        try {
+            return (IDirectory) registry.lookup(DIRECTORY_NAME);
+        } catch (NotBoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Announces a peer to the directory of the registry, if there is one.
+     * @param registry The registry.
+     * @param peerID ID of the peer.
+     * @param peer The peer.
+     */
+    public static void announce(Registry registry, int peerID, IPeer peer) throws RemoteException {
+        IDirectory directory = find(registry);
+        if (directory != null) {
+            directory.announcePeer(peerID, peer);
+        }
+    }
+
+    /**
+     * Announces the warehouse to the directory of the registry, if there is one.
+     * @param registry The registry.
+     * @param warehouse The warehouse.
+     */
+    public static void announce(Registry registry, IWarehouse warehouse) throws RemoteException {
+        IDirectory directory = find(registry);
+        if (directory != null) {
+            directory.announceWarehouse(warehouse);
+        }
+    }
+
+    /**
+     * Waits for the warehouse.
+     * @param registry The registry.
+     * @return The warehouse.
+     */
+    public static IWarehouse findWarehouse(Registry registry) throws RemoteException, NotBoundException {
+        IDirectory directory = find(registry);
+        return directory != null ? directory.getWarehouse(STARTUP_TIMEOUT) : (IWarehouse) registry.lookup(Warehouse.WAREHOUSE_NAME);
+    }
+
+    /**
+     * Gets all peers with a single call.
+     * @param registry The registry.
+     * @param peersAmt Number of peers.
+     * @return The peers, indexed by peer ID.
+     */
+    public static IPeer[] findPeers(Registry registry, int peersAmt) throws RemoteException, NotBoundException {
+        IDirectory directory = find(registry);
+        if (directory != null) {
+            return directory.getPeers();
+        }
+        IPeer[] peers = new IPeer[peersAmt];
+        for (int i = 0; i < peersAmt; i++) {
+            peers[i] = (IPeer) registry.lookup("" + i);
+        }
+        return peers;
+    }
+
+    // CLASS
+
+    private final IPeer[] peers;
+    private final CountDownLatch peersAnnounced;
+    private final CountDownLatch warehouseAnnounced;
+    private volatile IWarehouse warehouse;
+
+    public Directory(int peersAmt) throws RemoteException {
+        this.peers = new IPeer[peersAmt];
+        this.peersAnnounced = new CountDownLatch(peersAmt);
+        this.warehouseAnnounced = new CountDownLatch(1);
+    }
+
+    @Override
+    public void announcePeer(int peerID, IPeer peer) {
+        synchronized (peers) {
+            if (peers[peerID] == null) {
+                peersAnnounced.countDown();
+            }
+            peers[peerID] = peer;
+        }
+    }
+
+    @Override
+    public void announceWarehouse(IWarehouse warehouse) {
+        this.warehouse = warehouse;
+        warehouseAnnounced.countDown();
+    }
+
+    @Override
+    public IPeer[] getPeers() {
+        synchronized (peers) {
+            return peers.clone();
+        }
+    }
+
+    @Override
+    public IWarehouse getWarehouse(long timeout) throws RemoteException {
+        try {
+            if (!warehouseAnnounced.await(timeout, TimeUnit.MILLISECONDS)) {
+                throw new RemoteException("Warehouse did not start within " + timeout + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the warehouse.", e);
+        }
+        return warehouse;
+    }
+
+    /**
+     * Waits until all peers have been announced.
+     * @param timeout Maximum time to wait in milliseconds.
+     * @return Whether all peers have been announced in time.
+     */
+    public boolean awaitPeers(long timeout) throws InterruptedException {
+        return peersAnnounced.await(timeout, TimeUnit.MILLISECONDS);
+    }
+}
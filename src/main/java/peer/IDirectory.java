@@ -0,0 +1,39 @@
+package peer;
+
+import warehouse.IWarehouse;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Directory of the peers and the warehouse of a run, hosted by the launcher.
+ * Peers and warehouse announce themselves when they are ready, so nobody has to guess how long startup takes.
+ */
+public interface IDirectory extends Remote {
+
+    /**
+     * Announces that a peer is ready.
+     * @param peerID ID of the peer.
+     * @param peer The peer.
+     */
+    void announcePeer(int peerID, IPeer peer) throws RemoteException;
+
+    /**
+     * Announces that the warehouse is ready.
+     * @param warehouse The warehouse.
+     */
+    void announceWarehouse(IWarehouse warehouse) throws RemoteException;
+
+    /**
+     * @return All peers that have been announced, indexed by peer ID. Peers that have not been announced yet are null.
+     */
+    IPeer[] getPeers() throws RemoteException;
+
+    /**
+     * Waits until the warehouse has been announced.
+     * @param timeout Maximum time to wait in milliseconds.
+     * @return The warehouse.
+     * @throws RemoteException If the warehouse has not been announced in time.
+     */
+    IWarehouse getWarehouse(long timeout) throws RemoteException;
+}
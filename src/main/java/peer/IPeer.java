@@ -5,6 +5,7 @@ import product.Product;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 public interface IPeer extends Remote {
 
@@ -24,6 +25,31 @@ public interface IPeer extends Remote {
      */
     void coordinator(int[] traderIDs, int[] tags) throws RemoteException;
 
+    /**
+     * Starts an election with this peer as initiator. Uses the tree election, or the ring election if the system
+     * property election.mode is ring.
+     * @param n Number of traders to elect.
+     */
+    void elect(int n) throws RemoteException;
+
+    /**
+     * Collects the highest IDs of a subtree of the election tree. The children of a peer are asked in parallel,
+     * so the election takes a logarithmic number of rounds.
+     * @param root ID of the peer that started the election, the root of the tree.
+     * @param position Position of this peer in the tree.
+     * @param n Number of traders to elect.
+     * @return Up to n highest IDs of the alive peers in the subtree, ascending.
+     */
+    int[] treeElection(int root, int position, int n) throws RemoteException;
+
+    /**
+     * Tells the new coordinators to this peer and, in parallel, to its subtree of the election tree.
+     * @param root ID of the peer that started the election, the root of the tree.
+     * @param position Position of this peer in the tree.
+     * @param traderIDs The id of the new coordinators.
+     */
+    void treeCoordinator(int root, int position, int[] traderIDs) throws RemoteException;
+
     // communication
 
     /**
@@ -43,6 +69,13 @@ public interface IPeer extends Remote {
      */
     ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException;
 
+    /**
+     * Make several buy and sell requests to the warehouse at once.
+     * @param updateMessages Messages to send to the trader. Negative amounts are buys, positive amounts are sells.
+     * @return The reply status of every message, in the same order.
+     */
+    ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException;
+
     // caching
 
     /**
@@ -51,6 +84,12 @@ public interface IPeer extends Remote {
      */
     void updateCache(UpdateMessage cacheUpdateMessage) throws RemoteException;
 
+    /**
+     * Update cache of the peer with several updates at once.
+     * @param cacheUpdateMessages The update messages, in the order they should be applied.
+     */
+    void updateCaches(List<UpdateMessage> cacheUpdateMessages) throws RemoteException;
+
     // getters
 
     /**
@@ -61,14 +100,10 @@ public interface IPeer extends Remote {
     // heartbeat for fault tolerance
 
     /**
-     * Sends a heartbeat message to check if the peer is alive.
-     */
-    void sendHeartbeat() throws RemoteException;
-
-    /**
-     * Respond to a heartbeat message to indicate that the peer is alive.
+     * Receives a heartbeat of another trader to indicate that it is alive.
+     * @param senderID ID of the trader that sent the heartbeat.
      */
-    void respondToHeartbeat() throws RemoteException;
+    void heartbeat(int senderID) throws RemoteException;
 
     /**
      * Starts the heartbeat mechanism.
@@ -76,10 +111,10 @@ public interface IPeer extends Remote {
     void startHeartbeat() throws RemoteException;
 
     /**
-     * Update the trader of the peer.
-     * @param traderID ID of the new trader.
+     * Removes a crashed trader. Only the products of this trader move to the other traders.
+     * @param traderID ID of the crashed trader.
      */
-    void updateTrader(int traderID) throws RemoteException;
+    void removeTrader(int traderID) throws RemoteException;
 
     /**
      * Simulate crash of the peer.
@@ -0,0 +1,106 @@
+package peer;
+
+import cache.UpdateMessage;
+import warehouse.SequenceNumbers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+/**
+ * Sequence numbers of the orders a peer has in flight. The warehouse keeps a window of applied sequence numbers per
+ * peer, so a peer may send up to SIZE orders at once and they may arrive in any order. An order whose call failed may
+ * or may not have been applied, so it is sent again with the same sequence number before any new order. New sequence
+ * numbers stay within the window of the warehouse, counted from the oldest order that isn't done yet.
+ */
+public class OrderWindow {
+
+    public static final String SIZE_PROPERTY = "order.window";
+    public static final int SIZE = Math.min(Integer.getInteger(SIZE_PROPERTY, 8), SequenceNumbers.WINDOW);
+
+    private final int size;
+    private final TreeSet<Integer> pending; // sequence numbers that are in flight or wait to be sent again
+    private final Deque<UpdateMessage> retries; // orders whose call failed
+    private int inFlight;
+    private int nextSequenceNumber;
+    private int appliedOrders;
+
+    /**
+     * @param size Maximum number of orders in flight, at most SequenceNumbers.WINDOW.
+     */
+    public OrderWindow(int size) {
+        if (size < 1 || size > SequenceNumbers.WINDOW) {
+            throw new IllegalArgumentException("Order window must be between 1 and " + SequenceNumbers.WINDOW + ".");
+        }
+        this.size = size;
+        this.pending = new TreeSet<>();
+        this.retries = new ArrayDeque<>();
+        this.nextSequenceNumber = 1;
+    }
+
+    /**
+     * Waits until another order may be sent. Call complete or retry with the order when it is done.
+     * @param newOrder Creates a new order with the given sequence number.
+     * @return A failed order to send again, or a new order.
+     */
+    public synchronized UpdateMessage acquire(IntFunction<UpdateMessage> newOrder) throws InterruptedException {
+        while (inFlight >= size || (retries.isEmpty() && !pending.isEmpty()
+                && nextSequenceNumber - pending.first() >= SequenceNumbers.WINDOW)) {
+            wait();
+        }
+        inFlight++;
+        if (!retries.isEmpty()) {
+            return retries.poll();
+        }
+        int sequenceNumber = nextSequenceNumber++;
+        pending.add(sequenceNumber);
+        return newOrder.apply(sequenceNumber);
+    }
+
+    /**
+     * Ends an order with a reply from the warehouse. Orders that were not applied are not sent again, their
+     * sequence numbers are skipped.
+     * @param order The order from acquire.
+     * @param applied Whether the warehouse applied the order.
+     */
+    public synchronized void complete(UpdateMessage order, boolean applied) {
+        inFlight--;
+        pending.remove(order.sequenceNumber());
+        if (applied) {
+            appliedOrders++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Ends an order without a reply, it is sent again by the next call of acquire.
+     * @param order The order from acquire.
+     */
+    public synchronized void retry(UpdateMessage order) {
+        inFlight--;
+        retries.add(order);
+        notifyAll();
+    }
+
+    /**
+     * @return Sequence number of the next new order.
+     */
+    public synchronized int getNextSequenceNumber() {
+        return nextSequenceNumber;
+    }
+
+    /**
+     * @return Number of orders the warehouse applied.
+     */
+    public synchronized int getAppliedOrders() {
+        return appliedOrders;
+    }
+
+    /**
+     * @return Number of orders that are sent right now.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,123 @@
+package peer;
+
+import cache.IWarehouseCache;
+import metrics.Metrics;
+import transport.Transport;
+import warehouse.FailoverWarehouse;
+import warehouse.IWarehouse;
+import warehouse.Warehouse;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hosts several peers, and optionally the warehouse, in one JVM. Peers of the same host call each other and the
+ * warehouse through direct references instead of RMI. Peers of other hosts are still reached through the registry.
+ * Usage: java peer.PeerHost <number_of_peers> [warehouse] <peer_id>:<B|S> ...
+ */
+public class PeerHost {
+
+    public static final String WAREHOUSE_ARGUMENT = "warehouse";
+    public static final String BUYER_TYPE = "B";
+    public static final String SELLER_TYPE = "S";
+
+    private static final Map<Integer, IPeer> localPeers = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws IOException, NotBoundException {
+        int peersAmt = Integer.parseInt(args[0]);
+        Registry registry = LocateRegistry.getRegistry("127.0.0.1", APeer.REGISTRY_PORT);
+
+        // host the warehouse or connect to it
+        int firstPeerArgument = 1;
+        IWarehouse warehouse;
+        if (args.length > 1 && args[1].equals(WAREHOUSE_ARGUMENT)) {
+            Warehouse localWarehouse = new Warehouse();
+            Transport.get().exportWarehouse(localWarehouse);
+            registry.rebind(Warehouse.WAREHOUSE_NAME, localWarehouse);
+            Directory.announce(registry, localWarehouse);
+            warehouse = new FailoverWarehouse(localWarehouse, localWarehouse);
+            firstPeerArgument = 2;
+        } else {
+            warehouse = FailoverWarehouse.connect(Directory.findWarehouse(registry));
+        }
+
+        for (int i = firstPeerArgument; i < args.length; i++) {
+            String[] peerArgument = args[i].split(":");
+            int peerID = Integer.parseInt(peerArgument[0]);
+            APeer peer = createPeer(peerID, peerArgument[1].equals(BUYER_TYPE), warehouse, peersAmt);
+            Transport.get().exportPeer(peerID, peer);
+            registry.rebind("" + peerID, peer);
+            Directory.announce(registry, peerID, peer);
+        }
+        // named after its first peer, a host of only the warehouse is named after that
+        Metrics.startReporting(firstPeerArgument < args.length ? "host" + args[firstPeerArgument].split(":")[0] : Warehouse.WAREHOUSE_NAME);
+    }
+
+    /**
+     * Creates a peer and makes it reachable for the other peers of this JVM.
+     * @param peerID ID of the peer.
+     * @param buyer Whether the peer is a buyer, else it is a seller.
+     * @param warehouse The warehouse.
+     * @param peersAmt Number of peers in the system.
+     * @return The peer.
+     */
+    public static APeer createPeer(int peerID, boolean buyer, IWarehouse warehouse, int peersAmt) throws RemoteException {
+        IWarehouseCache warehouseCache = IWarehouseCache.getNewWarehouseCache(warehouse, peerID);
+        APeer peer = buyer ? new Buyer(peerID, warehouseCache, peersAmt) : new Seller(peerID, warehouseCache, peersAmt);
+        addLocalPeer(peerID, peer);
+        return peer;
+    }
+
+    /**
+     * Makes a peer reachable for the other peers of this JVM, e.g. a stub of a simulated peer.
+     * @param peerID ID of the peer.
+     * @param peer The peer.
+     */
+    public static void addLocalPeer(int peerID, IPeer peer) {
+        localPeers.put(peerID, peer);
+    }
+
+    /**
+     * @param peerID ID of a peer that is not hosted in this JVM anymore.
+     */
+    public static void removeLocalPeer(int peerID) {
+        localPeers.remove(peerID);
+    }
+
+    /**
+     * Alternates buyers and sellers until one kind is used up, the rest are of the other kind.
+     * @param b Number of buyers.
+     * @param s Number of sellers.
+     * @return BUYER_TYPE or SELLER_TYPE for every peer ID.
+     */
+    public static String[] getPeerTypes(int b, int s) {
+        String[] peerTypes = new String[b + s];
+        for (int i = 0; i < peerTypes.length; i++) {
+            if (b == 0) {
+                peerTypes[i] = SELLER_TYPE;
+            } else if (s == 0) {
+                peerTypes[i] = BUYER_TYPE;
+            } else if (i % 2 == 0) {
+                b--;
+                peerTypes[i] = BUYER_TYPE;
+            } else {
+                peerTypes[i] = SELLER_TYPE;
+                s--;
+            }
+        }
+        return peerTypes;
+    }
+
+    /**
+     * @param peerID ID of the peer.
+     * @return The peer if it is hosted in this JVM, else null.
+     */
+    public static IPeer getLocalPeer(int peerID) {
+        return localPeers.get(peerID);
+    }
+}
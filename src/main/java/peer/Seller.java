@@ -2,29 +2,34 @@ package peer;
 
 import cache.IWarehouseCache;
 import cache.UpdateMessage;
+import metrics.Metrics;
 import product.Product;
+import transport.Transport;
+import utils.Event;
 import utils.Logger;
-import utils.Messages;
+import warehouse.FailoverWarehouse;
 import warehouse.IWarehouse;
-import warehouse.Warehouse;
+import workload.LoadGenerator;
 
+import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class Seller extends APeer {
 
-    public static void main(String[] args) throws RemoteException, NotBoundException {
+    public static void main(String[] args) throws IOException, NotBoundException {
         int peerID = Integer.parseInt(args[0]);
         int peersAmt = Integer.parseInt(args[1]);
 
         Registry registry = LocateRegistry.getRegistry("127.0.0.1", REGISTRY_PORT);
-        IWarehouse warehouse = (IWarehouse) registry.lookup(Warehouse.WAREHOUSE_NAME);
-        registry.rebind("" + peerID, new Seller(peerID, IWarehouseCache.getNewWarehouseCache(warehouse), peersAmt));
+        IWarehouse warehouse = FailoverWarehouse.connect(Directory.findWarehouse(registry));
+        Seller peer = new Seller(peerID, IWarehouseCache.getNewWarehouseCache(warehouse, peerID), peersAmt);
+        Transport.get().exportPeer(peerID, peer);
+        registry.rebind("" + peerID, peer);
+        Directory.announce(registry, peerID, peer);
+        Metrics.startReporting("peer" + peerID);
     }
 
     // CLASS
@@ -33,12 +38,13 @@ public class Seller extends APeer {
     public static final int GOODS_PER_PERIOD = 5; // Ng: number of goods accrued per period
     public int sellSequenceNumber;
 
+    private LoadGenerator loadGenerator;
     private Product currentProduct;
     private int inventory; // Seller's local inventory of goods
 
     public Seller(int peerID, IWarehouseCache warehouseCache, int peersAmt) throws RemoteException {
         super(peerID, warehouseCache, peersAmt);
-        this.currentProduct = Product.pickRandomProduct();
+        this.currentProduct = WORKLOAD.pickProduct();
         this.inventory = 0;
         this.sellSequenceNumber = 1;
     }
@@ -47,26 +53,31 @@ public class Seller extends APeer {
     public void start() throws RemoteException {
         super.start();
         Logger.log("Peer " + peerID + " (Seller) started.", getPeerLogFile());
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-        // Periodically accrue goods and attempt to sell them
-        executor.scheduleAtFixedRate(() -> {
+        // Accrue goods and attempt to sell them whenever the workload places an order
+        loadGenerator = new LoadGenerator(WORKLOAD, ACCRUAL_PERIOD, () -> {
             try {
                 // Skip if this seller is a trader
                 if (this.isTrader()) {
-                    return;
-                }
-
-                // Accrue goods
-                accrueGoods();
-
-                // Sell goods if inventory > 0
-                if (inventory > 0) {
-                    initiateSell();
+                    return false;
                 }
+                accrueAndSell();
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        }, ACCRUAL_PERIOD, ACCRUAL_PERIOD, TimeUnit.MILLISECONDS);
+            return true;
+        }, Metrics.histogram("peer" + peerID + ".order"));
+        loadGenerator.start();
+    }
+
+    // one sell at a time, every sell takes the whole inventory
+    private synchronized void accrueAndSell() {
+        // Accrue goods
+        accrueGoods();
+
+        // Sell goods if inventory > 0
+        if (inventory > 0) {
+            initiateSell();
+        }
     }
 
     // Add goods to inventory
@@ -76,29 +87,33 @@ public class Seller extends APeer {
 
     private void initiateSell() {
         try {
-            // Attempt to sell the entire inventory to the current trader
-            Logger.log(Messages.getSellAttemptMessage(this.peerID, this.getCurrentTrader().getPeerID(), currentProduct, inventory), getPeerLogFile());
-            ReplyStatus status = getCurrentTrader().sell(new UpdateMessage(sellSequenceNumber, peerID, currentProduct, inventory));
-            switch (status) {
+            // pick the less loaded of the traders that may take the product
+            int[] traderIDs = getTraderCandidates(currentProduct);
+            int traderID = traderSelector.choose(traderIDs);
+            // Attempt to sell the entire inventory to the picked trader
+            Logger.event(Event.SELL_ATTEMPT, this.peerID, traderID, currentProduct, inventory, getPeerLogFile());
+            UpdateMessage updateMessage = new UpdateMessage(sellSequenceNumber, peerID, currentProduct, inventory);
+            TraderSelector.Reply reply = traderSelector.send(traderID, traderIDs, this.peers, trader -> trader.sell(updateMessage));
+            switch (reply.status()) {
                 case SUCCESSFUL -> {
-                    Logger.log(Messages.getSellSuccessfulMessage(this.peerID, this.getCurrentTrader().getPeerID(), currentProduct, inventory), getPeerLogFile());
+                    Logger.event(Event.SELL_SUCCESSFUL, this.peerID, reply.traderID(), currentProduct, inventory, getPeerLogFile());
                     inventory = 0; // Reset inventory after successful sell
                     // Optionally, pick a new product after selling
-                    currentProduct = Product.pickRandomProduct();
+                    currentProduct = WORKLOAD.pickProduct();
                     this.sellSequenceNumber++;
                 }
                 case LOW_SEQUENCE_NUMBER -> { // sequence number too low. Warehouse already updated.
-                    Logger.log(Messages.getSellLowSequenceNumberMessage(this.peerID, this.getCurrentTrader().getPeerID(), currentProduct, inventory), getPeerLogFile());
+                    Logger.event(Event.SELL_LOW_SEQUENCE_NUMBER, this.peerID, reply.traderID(), currentProduct, inventory, getPeerLogFile());
                     inventory = 0; // Reset inventory after successful sell
                     // Optionally, pick a new product after selling
-                    currentProduct = Product.pickRandomProduct();
+                    currentProduct = WORKLOAD.pickProduct();
                     this.sellSequenceNumber++;
                 }
                 // Can only sell to traders
                 case NOT_A_TRADER ->
-                    Logger.log(Messages.getNotATraderMessage(this.peerID, this.getCurrentTrader().getPeerID()), getPeerLogFile());
+                    Logger.event(Event.NOT_A_TRADER, this.peerID, reply.traderID(), null, 0, getPeerLogFile());
                 case ERROR_DURING_WRITE ->
-                    Logger.log(Messages.getSellErrorMessage(this.peerID, this.getCurrentTrader().getPeerID(), currentProduct, inventory), getPeerLogFile());
+                    Logger.event(Event.SELL_ERROR, this.peerID, reply.traderID(), currentProduct, inventory, getPeerLogFile());
             }
         } catch (RemoteException ignored) {}
     }
@@ -0,0 +1,203 @@
+package peer;
+
+import metrics.Histogram;
+import metrics.Metrics;
+import utils.Scheduler;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the trader of an order on the side of the buyer or seller. Every product has two candidate traders, its
+ * owner on the consistent-hash ring and the next trader on the ring. The owner gets the order, unless its load
+ * (average latency times requests in flight) is more than REROUTE_FACTOR times the load of the other candidate.
+ * Keeping the orders of a product at its owner keeps the owner's cache warm and its leases in use, while orders
+ * spread over both candidates would split the stock of a product into two leases and double the cache misses.
+ * The price is that a somewhat busier owner still gets the order, only a clearly overloaded one is bypassed.
+ * If the picked trader doesn't answer within a few times its average latency, or fails, the same order is sent to
+ * the other candidate as well (hedged request). Both carry the same sequence number, so the warehouse applies the
+ * order only once.
+ */
+public class TraderSelector {
+
+    public static final int CHOICES = 2; // candidate traders per product
+    public static final double EWMA_WEIGHT = 0.2; // weight of a new latency sample in the average
+    public static final double REROUTE_FACTOR = 2; // bypass the owner only if its load is this many times higher
+    public static final int HEDGE_FACTOR = 3; // hedge after this many times the average latency
+    public static final long MIN_HEDGE_DELAY = 20; // in milliseconds
+    public static final long INITIAL_LATENCY = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Reply of a trader.
+     * @param traderID ID of the trader that replied.
+     * @param status Status of the reply.
+     */
+    public record Reply(int traderID, ReplyStatus status) {
+
+        /**
+         * @return Whether the order has been applied by the warehouse, now or by an earlier request.
+         */
+        public boolean isApplied() {
+            return status == ReplyStatus.SUCCESSFUL || status == ReplyStatus.LOW_SEQUENCE_NUMBER;
+        }
+    }
+
+    /**
+     * Remote call to a trader.
+     */
+    public interface TraderCall {
+        ReplyStatus call(IPeer trader) throws RemoteException;
+    }
+
+    private final Map<Integer, TraderStats> stats;
+
+    public TraderSelector() {
+        this.stats = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Picks the owner of the product, or the candidate with the lowest load if the owner is clearly overloaded.
+     * @param candidates IDs of the candidate traders, the owner of the product first.
+     * @return ID of the picked trader.
+     */
+    public int choose(int[] candidates) {
+        int best = candidates[0];
+        for (int i = 1; i < candidates.length; i++) {
+            if (getStats(candidates[i]).getLoad() < getStats(best).getLoad()) {
+                best = candidates[i];
+            }
+        }
+        if (getStats(candidates[0]).getLoad() > REROUTE_FACTOR * getStats(best).getLoad()) {
+            return best;
+        }
+        return candidates[0];
+    }
+
+    /**
+     * Sends an order to a trader and hedges it with another candidate if the trader is slow or fails.
+     * @param traderID ID of the trader picked by choose.
+     * @param candidates IDs of the candidate traders.
+     * @param peers All peers, indexed by peer ID.
+     * @param call The order.
+     * @return The first reply that applied the order, else the reply of the first trader that answered.
+     * @throws RemoteException If no trader answered.
+     */
+    public Reply send(int traderID, int[] candidates, IPeer[] peers, TraderCall call) throws RemoteException {
+        CompletableFuture<Reply> primary = callAsync(traderID, peers[traderID], call);
+        int hedgeID = -1;
+        for (int candidate : candidates) {
+            if (candidate != traderID) {
+                hedgeID = candidate;
+                break;
+            }
+        }
+        if (hedgeID == -1) {
+            return await(primary);
+        }
+
+        // wait for the picked trader, but not longer than it usually takes
+        try {
+            return primary.get(getStats(traderID).getHedgeDelay(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for trader " + traderID + ".", e);
+        } catch (ExecutionException e) {
+            return await(callAsync(hedgeID, peers[hedgeID], call)); // failed, route around it
+        } catch (TimeoutException e) {
+            return await(race(primary, callAsync(hedgeID, peers[hedgeID], call)));
+        }
+    }
+
+    /**
+     * @param traderID ID of the trader.
+     * @return Average latency of the trader in nanoseconds.
+     */
+    public double getLatency(int traderID) {
+        return getStats(traderID).latency;
+    }
+
+    // completes with the first reply that applied the order, or the reply of the first request if none did
+    private CompletableFuture<Reply> race(CompletableFuture<Reply> first, CompletableFuture<Reply> second) {
+        CompletableFuture<Reply> winner = new CompletableFuture<>();
+        for (CompletableFuture<Reply> request : List.of(first, second)) {
+            request.thenAccept(reply -> {
+                if (reply.isApplied()) {
+                    winner.complete(reply);
+                }
+            });
+        }
+        CompletableFuture.allOf(first, second).whenComplete((ignored, throwable) -> {
+            if (!first.isCompletedExceptionally()) {
+                winner.complete(first.join());
+            } else if (!second.isCompletedExceptionally()) {
+                winner.complete(second.join());
+            } else {
+                winner.completeExceptionally(throwable);
+            }
+        });
+        return winner;
+    }
+
+    private CompletableFuture<Reply> callAsync(int traderID, IPeer trader, TraderCall call) {
+        TraderStats traderStats = getStats(traderID);
+        traderStats.inFlight.incrementAndGet();
+        long start = Scheduler.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return new Reply(traderID, call.call(trader));
+            } catch (RemoteException e) {
+                throw new CompletionException(e);
+            } finally {
+                traderStats.record(Scheduler.nanoTime() - start);
+                traderStats.inFlight.decrementAndGet();
+            }
+        }, Scheduler.getWorkers());
+    }
+
+    private static Reply await(CompletableFuture<Reply> request) throws RemoteException {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RemoteException remoteException) {
+                throw remoteException;
+            }
+            throw new RemoteException("Trader request failed.", e.getCause());
+        }
+    }
+
+    private TraderStats getStats(int traderID) {
+        return stats.computeIfAbsent(traderID, TraderStats::new);
+    }
+
+    // latency and load of a single trader
+    private static class TraderStats {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Histogram latencies; // all samples, for the metrics report
+        private volatile double latency = INITIAL_LATENCY; // exponentially weighted moving average in nanoseconds
+
+        TraderStats(int traderID) {
+            latencies = Metrics.histogram("trader" + traderID + ".latency");
+        }
+
+        synchronized void record(long sample) {
+            latency = EWMA_WEIGHT * sample + (1 - EWMA_WEIGHT) * latency;
+            latencies.record(sample);
+        }
+
+        double getLoad() {
+            return latency * (inFlight.get() + 1);
+        }
+
+        long getHedgeDelay() {
+            return Math.max(MIN_HEDGE_DELAY, (long) (HEDGE_FACTOR * latency / TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package product;
 
+import utils.Scheduler;
+
 import java.util.List;
-import java.util.Random;
 
 public enum Product {
     FISH,
@@ -11,9 +12,8 @@ public enum Product {
 
     private static final List<Product> VALUES = List.of(values());
     private static final int SIZE = VALUES.size();
-    private static final Random RANDOM = new Random();
 
     public static Product pickRandomProduct() {
-        return VALUES.get(RANDOM.nextInt(SIZE));
+        return VALUES.get(Scheduler.getRandom().nextInt(SIZE));
     }
 }
\ No newline at end of file
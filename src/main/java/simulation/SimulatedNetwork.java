@@ -0,0 +1,137 @@
+package simulation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory network between the simulated peers and the warehouse, in virtual time.
+ * Calls that return a reply run right away, and the caller spends the time of a round trip. One-way messages (cache
+ * updates and heartbeats) are delivered by tasks of their own after their latency, so with jitter they overtake
+ * each other just like messages sent in parallel over real connections. Calls to crashed nodes fail like a dead
+ * connection, and messages to them are dropped.
+ */
+public class SimulatedNetwork {
+
+    public static final Set<String> ONE_WAY_METHODS = Set.of("updateCache", "updateCaches", "heartbeat");
+
+    private final VirtualScheduler scheduler;
+    private final long latency; // one way, in nanoseconds
+    private final long jitter; // highest extra latency of a message, in nanoseconds
+    private final Set<Integer> crashedNodes;
+    private long calls;
+    private long messages;
+    private long droppedMessages;
+
+    /**
+     * @param scheduler Scheduler that runs the deliveries and draws the jitter.
+     * @param latency Time a message takes from one node to another, in milliseconds.
+     * @param jitter Highest random extra time a message takes, in milliseconds.
+     */
+    public SimulatedNetwork(VirtualScheduler scheduler, double latency, double jitter) {
+        this.scheduler = scheduler;
+        this.latency = (long) (latency * TimeUnit.MILLISECONDS.toNanos(1));
+        this.jitter = (long) (jitter * TimeUnit.MILLISECONDS.toNanos(1));
+        this.crashedNodes = new HashSet<>();
+    }
+
+    /**
+     * Connects to a node of the network.
+     * @param type Remote interface of the node.
+     * @param node The node.
+     * @param nodeID ID of the node, used to crash it.
+     * @return Stub that sends all calls to the node over the network.
+     */
+    public <T> T connect(Class<T> type, T node, int nodeID) {
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return invoke(node, method, args);
+            }
+            if (ONE_WAY_METHODS.contains(method.getName())) {
+                send(node, nodeID, method, args);
+                return null;
+            }
+            return call(node, nodeID, method, args);
+        });
+        return type.cast(stub);
+    }
+
+    /**
+     * Crashes a node, it doesn't receive any calls or messages anymore.
+     * @param nodeID ID of the node.
+     */
+    public void crash(int nodeID) {
+        crashedNodes.add(nodeID);
+    }
+
+    /**
+     * @param nodeID ID of a node.
+     * @return Whether the node has crashed.
+     */
+    public boolean isCrashed(int nodeID) {
+        return crashedNodes.contains(nodeID);
+    }
+
+    /**
+     * @return Number of calls that expected a reply.
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return Number of one-way messages sent.
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return Number of one-way messages that didn't arrive because their receiver crashed.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    // runs the call and spends the time of the request and of the reply
+    private Object call(Object node, int nodeID, Method method, Object[] args) throws Throwable {
+        calls++;
+        scheduler.advance(getLatency());
+        if (isCrashed(nodeID)) {
+            throw new RemoteException("Node " + nodeID + " does not respond.");
+        }
+        Object result = invoke(node, method, args);
+        scheduler.advance(getLatency());
+        return result;
+    }
+
+    // delivers the message after its latency, failures are not reported back to the sender
+    private void send(Object node, int nodeID, Method method, Object[] args) {
+        messages++;
+        scheduler.schedule(() -> {
+            if (isCrashed(nodeID)) {
+                droppedMessages++;
+                return;
+            }
+            try {
+                invoke(node, method, args);
+            } catch (Throwable ignored) {}
+        }, getLatency(), TimeUnit.NANOSECONDS);
+    }
+
+    private long getLatency() {
+        return jitter > 0 ? latency + scheduler.getRandom().nextLong(jitter + 1) : latency;
+    }
+
+    private static Object invoke(Object node, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(node, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package simulation;
+
+import cache.IWarehouseCache;
+import metrics.Histogram;
+import metrics.Metrics;
+import peer.APeer;
+import peer.Buyer;
+import peer.IPeer;
+import peer.PeerHost;
+import peer.Seller;
+import product.Product;
+import utils.Scheduler;
+import warehouse.IWarehouse;
+import warehouse.Warehouse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs the real peers, trader caches and warehouse of a trading configuration in a single thread, over the virtual
+ * clock of a VirtualScheduler and the in-memory SimulatedNetwork. Runs with the same configuration and seed are
+ * identical, and hours of trading finish in seconds.
+ * Usage: java simulation.Simulation <number_of_buyers> <number_of_sellers> <number_of_traders> [<simulated_seconds>] [<seed>]
+ * The network is set with -Dsimulation.latency=<milliseconds> and -Dsimulation.jitter=<milliseconds>, crashes of
+ * peers with -Dsimulation.crash=<peer_id>@<seconds>,...
+ */
+public class Simulation implements AutoCloseable {
+
+    public static final double LATENCY = Double.parseDouble(System.getProperty("simulation.latency", "1")); // in milliseconds
+    public static final double JITTER = Double.parseDouble(System.getProperty("simulation.jitter", "1")); // in milliseconds
+    public static final String CRASHES = System.getProperty("simulation.crash", "");
+    public static final long DEFAULT_DURATION = 3600; // in simulated seconds
+    public static final long DEFAULT_SEED = 677;
+    public static final int WAREHOUSE_NODE_ID = -1;
+
+    public static void main(String[] args) throws IOException {
+        // the simulated peers log as much as real ones, only show warnings unless asked otherwise
+        if (System.getProperty("log.level") == null) {
+            System.setProperty("log.level", "WARN");
+        }
+        int b = Integer.parseInt(args[0]); // Number of buyers
+        int s = Integer.parseInt(args[1]); // Number of sellers
+        int t = Integer.parseInt(args[2]); // Number of traders
+        long duration = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_DURATION;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_SEED;
+
+        long startTime = System.currentTimeMillis();
+        try (Simulation simulation = new Simulation(b, s, t, seed, LATENCY, JITTER)) {
+            for (String crash : CRASHES.split(",")) {
+                if (!crash.isBlank()) {
+                    String[] parts = crash.trim().split("@");
+                    simulation.crash(Integer.parseInt(parts[0]), Long.parseLong(parts[1]), TimeUnit.SECONDS);
+                }
+            }
+            simulation.start();
+            simulation.run(duration, TimeUnit.SECONDS);
+
+            long wallTime = Math.max(1, System.currentTimeMillis() - startTime);
+            System.out.print(simulation.getSummary());
+            System.out.println("Order latency: " + simulation.getOrderLatency());
+            System.out.println("Took " + wallTime + " ms, " + (duration * 1000 / wallTime) + " times faster than real time.");
+            Metrics.report("simulation" + Metrics.METRICS_FILE_SUFFIX);
+        }
+        System.exit(0); // the exported peers keep RMI threads alive
+    }
+
+    // CLASS
+
+    private final VirtualScheduler scheduler;
+    private final SimulatedNetwork network;
+    private final Path directory; // files of the warehouse
+    private final Warehouse warehouse;
+    private final APeer[] peers;
+    private final IPeer[] peerStubs; // all calls between the peers go through these
+    private final int tradersAmt;
+
+    /**
+     * Creates the warehouse and the peers. Afterwards all time and randomness of the current thread is simulated
+     * until the simulation is closed, so the simulation must only be used by this thread.
+     * @param b Number of buyers.
+     * @param s Number of sellers.
+     * @param t Number of traders.
+     * @param seed Seed of all random decisions.
+     * @param latency Time a message takes from one node to another, in milliseconds.
+     * @param jitter Highest random extra time a message takes, in milliseconds.
+     */
+    public Simulation(int b, int s, int t, long seed, double latency, double jitter) throws IOException {
+        this.scheduler = new VirtualScheduler(seed);
+        this.network = new SimulatedNetwork(scheduler, latency, jitter);
+        this.tradersAmt = t;
+        Scheduler.install(scheduler);
+
+        this.directory = Files.createTempDirectory("simulation");
+        this.warehouse = new Warehouse(false, directory.resolve("inventory.txt").toString(), directory.resolve("inventory_log.txt").toString());
+        IWarehouse warehouseStub = network.connect(IWarehouse.class, warehouse, WAREHOUSE_NODE_ID);
+
+        int n = b + s;
+        String[] peerTypes = PeerHost.getPeerTypes(b, s);
+        this.peers = new APeer[n];
+        this.peerStubs = new IPeer[n];
+        for (int i = 0; i < n; i++) {
+            IWarehouseCache warehouseCache = IWarehouseCache.getNewWarehouseCache(warehouseStub, i);
+            peers[i] = peerTypes[i].equals(PeerHost.BUYER_TYPE) ? new Buyer(i, warehouseCache, n) : new Seller(i, warehouseCache, n);
+            peerStubs[i] = network.connect(IPeer.class, peers[i], i);
+            PeerHost.addLocalPeer(i, peerStubs[i]);
+        }
+    }
+
+    /**
+     * Starts the peers, elects the traders and starts the heartbeats, like the launcher does.
+     * Only the election goes over the network, the launcher itself is not part of the simulation.
+     */
+    public void start() throws RemoteException {
+        for (APeer peer : peers) {
+            peer.start();
+        }
+        peerStubs[0].elect(tradersAmt);
+        for (APeer peer : peers) {
+            peer.startHeartbeat();
+        }
+    }
+
+    /**
+     * Simulates trading.
+     * @param duration Time to simulate.
+     * @param unit Unit of the duration.
+     */
+    public void run(long duration, TimeUnit unit) {
+        scheduler.run(duration, unit);
+    }
+
+    /**
+     * Crashes a peer later on. It fails all calls and doesn't receive messages anymore.
+     * @param peerID ID of the peer.
+     * @param delay Time until the crash.
+     * @param unit Unit of the delay.
+     */
+    public void crash(int peerID, long delay, TimeUnit unit) {
+        scheduler.schedule(() -> {
+            network.crash(peerID);
+            try {
+                peers[peerID].crash();
+            } catch (RemoteException ignored) {} // already crashed
+        }, delay, unit);
+    }
+
+    /**
+     * @param peerID ID of a peer.
+     * @return The peer itself, not its stub.
+     */
+    public APeer getPeer(int peerID) {
+        return peers[peerID];
+    }
+
+    public VirtualScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public SimulatedNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * @return Latency of the orders of all buyers and sellers, in simulated time.
+     */
+    public Histogram getOrderLatency() {
+        Histogram orderLatency = new Histogram();
+        for (int i = 0; i < peers.length; i++) {
+            orderLatency.add(Metrics.histogram("peer" + i + ".order"));
+        }
+        return orderLatency;
+    }
+
+    /**
+     * @return Simulated time, traffic, trades and stock. Equal for runs with the same configuration and seed.
+     */
+    public String getSummary() {
+        int bought = 0;
+        int sold = 0;
+        List<Integer> crashedPeers = new ArrayList<>();
+        for (int i = 0; i < peers.length; i++) {
+            if (peers[i] instanceof Buyer buyer) {
+                bought += buyer.getOrders().getAppliedOrders();
+            } else if (peers[i] instanceof Seller seller) {
+                sold += seller.sellSequenceNumber - 1;
+            }
+            if (network.isCrashed(i)) {
+                crashedPeers.add(i);
+            }
+        }
+
+        StringBuilder stock = new StringBuilder();
+        for (Product product : Product.values()) {
+            try {
+                stock.append(' ').append(product).append('=').append(warehouse.lookup(product));
+            } catch (RemoteException e) {
+                stock.append(' ').append(product).append("=?");
+            }
+        }
+
+        return "Simulated " + TimeUnit.NANOSECONDS.toSeconds(scheduler.nanoTime()) + " s with " + peers.length + " peers.\n"
+                + "Tasks: " + scheduler.getExecutedTasks() + ", calls: " + network.getCalls() + ", messages: "
+                + network.getMessages() + " (" + network.getDroppedMessages() + " dropped)\n"
+                + "Orders: " + bought + " buys and " + sold + " sells applied\n"
+                + "Traders: " + Arrays.toString(peers[0].traderIDs) + ", crashed peers: " + crashedPeers + "\n"
+                + "Stock:" + stock + "\n";
+    }
+
+    /**
+     * Removes the peers and the warehouse and gives the threads and the clock back to the current thread.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < peers.length; i++) {
+            PeerHost.removeLocalPeer(i);
+            UnicastRemoteObject.unexportObject(peers[i], true);
+        }
+        UnicastRemoteObject.unexportObject(warehouse, true);
+        warehouse.crash(); // stops the log shipping
+        Scheduler.install(null);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
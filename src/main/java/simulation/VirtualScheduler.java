@@ -0,0 +1,232 @@
+package simulation;
+
+import utils.Scheduler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discrete-event scheduler with a virtual clock. All tasks run one after another on the thread that calls run(),
+ * ordered by their due time and, for the same time, by the order in which they were scheduled. Together with the
+ * seeded random number generator, a run with the same seed always does the same thing. The clock jumps straight
+ * to the next due task, so waiting costs no time at all.
+ */
+public class VirtualScheduler implements Scheduler.Backend {
+
+    private final PriorityQueue<Task> tasks;
+    private final Random random;
+    private final ExecutorService workers;
+    private long now; // due time of the current task, in nanoseconds
+    private long elapsed; // time the current task spent in simulated calls
+    private long sequenceNumber; // order in which the tasks were scheduled, breaks ties
+    private long executedTasks;
+
+    public VirtualScheduler(long seed) {
+        this.tasks = new PriorityQueue<>();
+        this.random = new Random(seed);
+        this.workers = new DirectExecutor();
+        this.now = 0;
+        this.elapsed = 0;
+        this.sequenceNumber = 0;
+        this.executedTasks = 0;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        add(task, 0, 0);
+    }
+
+    // requests sent to the workers run right away, so callers waiting for them never block
+    @Override
+    public ExecutorService getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(task, unit.toNanos(delay), 0);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return add(task, unit.toNanos(initialDelay), unit.toNanos(period));
+    }
+
+    @Override
+    public long nanoTime() {
+        return now + elapsed;
+    }
+
+    @Override
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Lets the current task spend time, e.g. while it waits for the reply of a simulated call.
+     * @param nanos Time to spend in nanoseconds.
+     */
+    public void advance(long nanos) {
+        elapsed += nanos;
+    }
+
+    /**
+     * Runs all tasks that are due within the given time, including the ones they schedule themselves.
+     * Calls made before, outside of any task, count as a task that ran at the current time.
+     * @param duration Time to simulate.
+     * @param unit Unit of the duration.
+     */
+    public void run(long duration, TimeUnit unit) {
+        now += elapsed;
+        elapsed = 0;
+        long end = now + unit.toNanos(duration);
+        while (!tasks.isEmpty() && tasks.peek().time <= end) {
+            Task task = tasks.poll();
+            if (task.cancelled) {
+                continue;
+            }
+            now = task.time;
+            elapsed = 0;
+            executedTasks++;
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                // like the Scheduler, a periodic task that throws is not run again
+                if (task.period == 0) {
+                    e.printStackTrace();
+                }
+                task.cancelled = true;
+            }
+            task.done = task.period == 0;
+            if (!task.cancelled && !task.done) {
+                task.time += task.period;
+                tasks.add(task);
+            }
+        }
+        now = end;
+        elapsed = 0;
+    }
+
+    /**
+     * @return Number of tasks that have been run.
+     */
+    public long getExecutedTasks() {
+        return executedTasks;
+    }
+
+    /**
+     * @return Number of tasks waiting to be run.
+     */
+    public int getPendingTasks() {
+        return tasks.size();
+    }
+
+    private Task add(Runnable runnable, long delay, long period) {
+        Task task = new Task(runnable, nanoTime() + Math.max(0, delay), period, sequenceNumber++);
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * A task waiting for its due time. Periodic tasks are put back into the queue after every run.
+     */
+    private class Task implements ScheduledFuture<Object> {
+
+        private final Runnable runnable;
+        private final long period; // 0 for tasks that run once
+        private final long sequenceNumber;
+        private long time;
+        private boolean cancelled;
+        private boolean done;
+
+        private Task(Runnable runnable, long time, long period, long sequenceNumber) {
+            this.runnable = runnable;
+            this.time = time;
+            this.period = period;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task task = (Task) other;
+            int order = Long.compare(time, task.time);
+            return order != 0 ? order : Long.compare(sequenceNumber, task.sequenceNumber);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean wasPending = !cancelled && !done;
+            cancelled = true;
+            return wasPending;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled || done;
+        }
+
+        @Override
+        public Object get() {
+            if (!done) {
+                throw new IllegalStateException("The task has not run, only run() moves the virtual clock.");
+            }
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return get();
+        }
+    }
+
+    /**
+     * Runs every task on the calling thread.
+     */
+    private static class DirectExecutor extends AbstractExecutorService {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() { }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking client side of the NIO transport. One selector thread writes the requests and reads the replies
+ * of all connections of a process, like NioServer does for the requests it serves. Every channel keeps the calls
+ * that were sent over it, so a channel that breaks fails only its own calls.
+ */
+class NioClient {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static NioClient instance; // started with the first connection
+
+    private final Selector selector;
+    private final Queue<Channel> pendingChannels; // channels the selector thread has to register or write
+
+    private NioClient() throws IOException {
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+
+        Thread thread = new Thread(this::run, "nio-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return The client of this process.
+     */
+    static synchronized NioClient get() throws IOException {
+        if (instance == null) {
+            instance = new NioClient();
+        }
+        return instance;
+    }
+
+    /**
+     * Connects to a server and hands the channel to the selector thread.
+     * @param address Address of the server.
+     * @return The new channel.
+     */
+    Channel open(InetSocketAddress address) throws IOException {
+        SocketChannel socket = SocketChannel.open(address);
+        socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        socket.configureBlocking(false);
+        Channel channel = new Channel(socket, address);
+        pendingChannels.add(channel);
+        selector.wakeup();
+        return channel;
+    }
+
+    // selector loop
+    private void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+                for (Channel channel = pendingChannels.poll(); channel != null; channel = pendingChannels.poll()) {
+                    channel.write();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    Channel channel = (Channel) key.attachment();
+                    if (key.isReadable()) {
+                        channel.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        channel.write();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("NIO client error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A connection to a server. Any thread can send requests, the socket is read and written by the selector
+     * thread only.
+     */
+    class Channel {
+        private final SocketChannel socket;
+        private final InetSocketAddress address;
+        private final Map<Integer, CompletableFuture<ByteBuffer>> pendingCalls; // calls sent over this channel
+        private final Queue<ByteBuffer> requests;
+        private SelectionKey key;
+        private ByteBuffer readBuffer;
+        private volatile boolean closed;
+
+        private Channel(SocketChannel socket, InetSocketAddress address) {
+            this.socket = socket;
+            this.address = address;
+            this.pendingCalls = new ConcurrentHashMap<>();
+            this.requests = new ConcurrentLinkedQueue<>();
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+
+        /**
+         * Queues a request.
+         * @param requestID ID of the request, written into the frame already.
+         * @param frame The complete frame.
+         * @return The reply, completed exceptionally if the channel breaks before the reply arrived.
+         */
+        CompletableFuture<ByteBuffer> send(int requestID, ByteBuffer frame) {
+            CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+            pendingCalls.put(requestID, reply);
+            // the channel might have failed its calls before this one was added
+            if (closed) {
+                pendingCalls.remove(requestID);
+                reply.completeExceptionally(new RemoteException("Connection to " + address + " broke."));
+                return reply;
+            }
+            requests.add(frame);
+            pendingChannels.add(this);
+            selector.wakeup();
+            return reply;
+        }
+
+        /**
+         * Forgets a call, e.g. after it timed out.
+         * @param requestID ID of the request.
+         */
+        void remove(int requestID) {
+            pendingCalls.remove(requestID);
+        }
+
+        /**
+         * @return Whether the channel can still be used.
+         */
+        boolean isOpen() {
+            return !closed;
+        }
+
+        // reads all complete replies and hands them to the waiting calls
+        private void read() {
+            try {
+                if (socket.read(readBuffer) < 0) {
+                    close(null);
+                    return;
+                }
+            } catch (IOException e) {
+                close(e);
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < Protocol.HEADER_SIZE - 4 || length > Protocol.MAX_FRAME_SIZE) {
+                    close(null); // corrupt stream
+                    return;
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    break;
+                }
+                readBuffer.getInt();
+                int requestID = readBuffer.getInt();
+                byte code = readBuffer.get();
+                ByteBuffer body = ByteBuffer.allocate(length - (Protocol.HEADER_SIZE - 4));
+                readBuffer.get(body.array());
+
+                CompletableFuture<ByteBuffer> reply = pendingCalls.remove(requestID);
+                if (reply == null) {
+                    continue; // the call timed out already
+                }
+                if (code == Protocol.OK) {
+                    reply.complete(body);
+                } else {
+                    reply.completeExceptionally(new RemoteException(Protocol.readError(body)));
+                }
+            }
+            readBuffer.compact();
+
+            // make room for a frame that is larger than the buffer
+            if (!readBuffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        // registers the channel if necessary and writes queued requests until the socket buffer is full
+        private void write() {
+            if (closed) {
+                return;
+            }
+            try {
+                if (key == null) {
+                    key = socket.register(selector, SelectionKey.OP_READ, this);
+                }
+                for (ByteBuffer request = requests.peek(); request != null; request = requests.peek()) {
+                    socket.write(request);
+                    if (request.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    requests.poll();
+                }
+                if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException | CancelledKeyException e) {
+                close(e instanceof IOException ioException ? ioException : null);
+            }
+        }
+
+        // closes the socket, calls still waiting will not get a reply anymore
+        private void close(IOException cause) {
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) { }
+
+            RemoteException exception = new RemoteException("Connection to " + address + " broke.", cause);
+            for (Integer requestID : pendingCalls.keySet()) {
+                CompletableFuture<ByteBuffer> reply = pendingCalls.remove(requestID);
+                if (reply != null) {
+                    reply.completeExceptionally(exception);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent client connection of the NIO transport. Any number of threads can call at the same time: each call
+ * queues its request and waits for the reply with its request ID, which the selector thread of NioClient hands over.
+ * The channel is opened on the first call and again after it broke. Failures are reported as RemoteException,
+ * like RMI does.
+ */
+class NioConnection {
+
+    public static final long TIMEOUT = Long.getLong("transport.timeout", 10000); // in milliseconds
+
+    private final InetSocketAddress address;
+    private final AtomicInteger nextRequestID;
+    private NioClient.Channel channel; // guarded by this
+
+    NioConnection(InetSocketAddress address) {
+        this.address = address;
+        this.nextRequestID = new AtomicInteger();
+    }
+
+    /**
+     * Sends a request and waits for its reply.
+     * @param opcode Which call is requested, see Protocol.
+     * @param request Buffer from Protocol.request with the encoded arguments written after the header.
+     * @return Encoded result.
+     * @throws RemoteException If the call failed on the other side, the connection broke or the reply timed out.
+     */
+    ByteBuffer call(byte opcode, ByteBuffer request) throws RemoteException {
+        int requestID = nextRequestID.incrementAndGet();
+        ByteBuffer frame = request.flip();
+        frame.putInt(0, frame.limit() - 4).putInt(4, requestID).put(8, opcode);
+        NioClient.Channel channel = null;
+        try {
+            channel = connect();
+            return channel.send(requestID, frame).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            throw new RemoteException("Connection to " + address + " failed.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException remoteException) {
+                throw remoteException;
+            }
+            throw new RemoteException("Call to " + address + " failed.", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RemoteException("Call to " + address + " timed out.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Call to " + address + " was interrupted.");
+        } finally {
+            if (channel != null) {
+                channel.remove(requestID);
+            }
+        }
+    }
+
+    // opens a channel if there is none or the last one broke
+    private synchronized NioClient.Channel connect() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = NioClient.get().open(address);
+        }
+        return channel;
+    }
+}
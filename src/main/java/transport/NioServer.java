@@ -0,0 +1,192 @@
+package transport;
+
+import utils.Scheduler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking server of the NIO transport. One selector thread reads the requests of all connections and writes
+ * the replies. The requests are executed by worker threads, so a slow request does not hold up the others on
+ * the same connection, and replies may be sent in a different order than the requests arrived.
+ */
+class NioServer {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final RequestHandler handler;
+    private final Queue<Connection> pendingWrites; // connections with replies that the selector thread has to write
+    private final int port;
+
+    NioServer(int port, RequestHandler handler) throws IOException {
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort(); // differs from port if port is 0
+
+        Thread thread = new Thread(this::run, "nio-server-" + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return Port the server listens on.
+     */
+    int getPort() {
+        return port;
+    }
+
+    // selector loop
+    private void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+                for (Connection connection = pendingWrites.poll(); connection != null; connection = pendingWrites.poll()) {
+                    connection.write();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.write();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("NIO server error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    // a client connection, read and written by the selector thread only
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Queue<ByteBuffer> replies;
+        private ByteBuffer readBuffer;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            this.replies = new ConcurrentLinkedQueue<>();
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+
+        // reads all complete frames and hands them to the workers
+        void read() {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < Protocol.HEADER_SIZE - 4 || length > Protocol.MAX_FRAME_SIZE) {
+                    close(); // corrupt stream
+                    return;
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    break;
+                }
+                readBuffer.getInt();
+                int requestID = readBuffer.getInt();
+                byte opcode = readBuffer.get();
+                ByteBuffer request = ByteBuffer.allocate(length - (Protocol.HEADER_SIZE - 4));
+                readBuffer.get(request.array());
+                Scheduler.execute(() -> execute(requestID, opcode, request));
+            }
+            readBuffer.compact();
+
+            // make room for a frame that is larger than the buffer
+            if (!readBuffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        // executes a request on a worker thread and queues the reply
+        private void execute(int requestID, byte opcode, ByteBuffer request) {
+            ByteBuffer reply;
+            try {
+                reply = Protocol.frame(requestID, Protocol.OK, handler.handle(opcode, request));
+            } catch (Exception e) {
+                reply = Protocol.errorFrame(requestID, e);
+            }
+            replies.add(reply);
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        // writes queued replies until the socket buffer is full
+        void write() {
+            try {
+                for (ByteBuffer reply = replies.peek(); reply != null; reply = replies.peek()) {
+                    channel.write(reply);
+                    if (reply.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    replies.poll();
+                }
+                if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) { }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package transport;
+
+import peer.IPeer;
+import warehouse.IWarehouse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Sends the data plane calls over persistent TCP connections with a fixed binary encoding. Calls are pipelined:
+ * many threads can have requests in flight on the same connection, and replies are matched by request ID.
+ * The warehouse listens on transport.port, peer i on transport.port + 1 + i.
+ */
+public class NioTransport implements Transport {
+
+    public static final String HOST = System.getProperty("transport.host", "127.0.0.1");
+    public static final int PORT = Integer.getInteger("transport.port", 10990);
+
+    @Override
+    public void exportWarehouse(IWarehouse warehouse) throws IOException {
+        new NioServer(PORT, new WarehouseEndpoint(warehouse));
+    }
+
+    @Override
+    public void exportPeer(int peerID, IPeer peer) throws IOException {
+        new NioServer(getPeerPort(peerID), new PeerEndpoint(peer));
+    }
+
+    @Override
+    public IWarehouse connectWarehouse(IWarehouse stub) {
+        return new WarehouseClient(new NioConnection(new InetSocketAddress(HOST, PORT)));
+    }
+
+    @Override
+    public IPeer connectPeer(int peerID, IPeer stub) {
+        return new PeerClient(new NioConnection(new InetSocketAddress(HOST, getPeerPort(peerID))), stub);
+    }
+
+    private static int getPeerPort(int peerID) {
+        return PORT + 1 + peerID;
+    }
+}
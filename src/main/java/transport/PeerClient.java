@@ -0,0 +1,107 @@
+package transport;
+
+import cache.UpdateMessage;
+import peer.IPeer;
+import peer.ReplyStatus;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Peer on the other end of a NIO connection. Trades and cache updates go over the connection,
+ * elections, heartbeats and the other control calls over the RMI stub.
+ */
+class PeerClient implements IPeer {
+
+    private final NioConnection connection;
+    private final IPeer stub;
+
+    PeerClient(NioConnection connection, IPeer stub) {
+        this.connection = connection;
+        this.stub = stub;
+    }
+
+    // data plane
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        return Protocol.readReplyStatus(connection.call(Protocol.PEER_BUY, Protocol.request(updateMessage)));
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        return Protocol.readReplyStatus(connection.call(Protocol.PEER_SELL, Protocol.request(updateMessage)));
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        return Protocol.readReplyStatuses(connection.call(Protocol.PEER_BATCH, Protocol.request(updateMessages)));
+    }
+
+    @Override
+    public void updateCache(UpdateMessage cacheUpdateMessage) throws RemoteException {
+        connection.call(Protocol.PEER_UPDATE_CACHE, Protocol.request(cacheUpdateMessage));
+    }
+
+    @Override
+    public void updateCaches(List<UpdateMessage> cacheUpdateMessages) throws RemoteException {
+        connection.call(Protocol.PEER_UPDATE_CACHES, Protocol.request(cacheUpdateMessages));
+    }
+
+    // control plane
+
+    @Override
+    public void election(int[] tags, int n) throws RemoteException {
+        stub.election(tags, n);
+    }
+
+    @Override
+    public void coordinator(int[] traderIDs, int[] tags) throws RemoteException {
+        stub.coordinator(traderIDs, tags);
+    }
+
+    @Override
+    public void elect(int n) throws RemoteException {
+        stub.elect(n);
+    }
+
+    @Override
+    public int[] treeElection(int root, int position, int n) throws RemoteException {
+        return stub.treeElection(root, position, n);
+    }
+
+    @Override
+    public void treeCoordinator(int root, int position, int[] traderIDs) throws RemoteException {
+        stub.treeCoordinator(root, position, traderIDs);
+    }
+
+    @Override
+    public void start() throws RemoteException {
+        stub.start();
+    }
+
+    @Override
+    public int getPeerID() throws RemoteException {
+        return stub.getPeerID();
+    }
+
+    @Override
+    public void heartbeat(int senderID) throws RemoteException {
+        stub.heartbeat(senderID);
+    }
+
+    @Override
+    public void startHeartbeat() throws RemoteException {
+        stub.startHeartbeat();
+    }
+
+    @Override
+    public void removeTrader(int traderID) throws RemoteException {
+        stub.removeTrader(traderID);
+    }
+
+    @Override
+    public void crash() throws RemoteException {
+        stub.crash();
+    }
+}
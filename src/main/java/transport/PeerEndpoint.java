@@ -0,0 +1,37 @@
+package transport;
+
+import peer.IPeer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Executes the requests for a peer that arrive over the NIO transport.
+ */
+class PeerEndpoint implements RequestHandler {
+
+    private final IPeer peer;
+
+    PeerEndpoint(IPeer peer) {
+        this.peer = peer;
+    }
+
+    @Override
+    public ByteBuffer handle(byte opcode, ByteBuffer request) throws Exception {
+        switch (opcode) {
+            case Protocol.PEER_BUY:
+                return Protocol.encode(peer.buy(Protocol.readUpdateMessage(request)));
+            case Protocol.PEER_SELL:
+                return Protocol.encode(peer.sell(Protocol.readUpdateMessage(request)));
+            case Protocol.PEER_BATCH:
+                return Protocol.encode(peer.batch(Protocol.readUpdateMessages(request)));
+            case Protocol.PEER_UPDATE_CACHE:
+                peer.updateCache(Protocol.readUpdateMessage(request));
+                return null;
+            case Protocol.PEER_UPDATE_CACHES:
+                peer.updateCaches(Protocol.readUpdateMessages(request));
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown peer opcode " + opcode + ".");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package transport;
+
+import cache.UpdateMessage;
+import cache.UpdateMessageCodec;
+import peer.ReplyStatus;
+import product.Product;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Wire format of the NIO transport. Requests and replies are frames:
+ * length of the rest of the frame (4 bytes), request ID (4 bytes), opcode or reply code (1 byte), body.
+ */
+final class Protocol {
+
+    // opcodes of the warehouse
+    static final byte WAREHOUSE_LOOKUP = 1;
+    static final byte WAREHOUSE_BUY = 2;
+    static final byte WAREHOUSE_SELL = 3;
+    static final byte WAREHOUSE_BATCH = 4;
+    static final byte WAREHOUSE_ACQUIRE_LEASE = 5;
+    static final byte WAREHOUSE_RELEASE_LEASE = 6;
+    static final byte WAREHOUSE_BUY_FROM_LEASE = 7;
+
+    // opcodes of the peers
+    static final byte PEER_BUY = 10;
+    static final byte PEER_SELL = 11;
+    static final byte PEER_BATCH = 12;
+    static final byte PEER_UPDATE_CACHE = 13;
+    static final byte PEER_UPDATE_CACHES = 14;
+
+    // reply codes
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final int HEADER_SIZE = 9; // length, request ID and code
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private static final Product[] PRODUCTS = Product.values();
+    private static final ReplyStatus[] REPLY_STATUSES = ReplyStatus.values();
+
+    private Protocol() { }
+
+    /**
+     * @param requestID ID that matches the reply to the request.
+     * @param code Opcode or reply code.
+     * @param body Encoded body, ready to be read, may be null.
+     * @return The frame, ready to be written.
+     */
+    static ByteBuffer frame(int requestID, byte code, ByteBuffer body) {
+        int bodySize = body == null ? 0 : body.remaining();
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+        frame.putInt(HEADER_SIZE - 4 + bodySize).putInt(requestID).put(code);
+        if (body != null) {
+            frame.put(body);
+        }
+        return frame.flip();
+    }
+
+    static ByteBuffer errorFrame(int requestID, Exception e) {
+        byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+        return frame(requestID, ERROR, ByteBuffer.allocate(4 + message.length).putInt(message.length).put(message).flip());
+    }
+
+    static String readError(ByteBuffer body) {
+        byte[] message = new byte[body.getInt()];
+        body.get(message);
+        return new String(message, StandardCharsets.UTF_8);
+    }
+
+    // products
+
+    static byte encodeProduct(Product product) {
+        return product == null ? -1 : (byte) product.ordinal();
+    }
+
+    static Product decodeProduct(byte ordinal) {
+        return ordinal < 0 ? null : PRODUCTS[ordinal];
+    }
+
+    // requests, encoded into a buffer of exactly the size of the frame. Calls run on a new virtual thread each,
+    // so a buffer per thread would be allocated for every request anyway.
+
+    /**
+     * @param size Size of the request body.
+     * @return Buffer for the frame, positioned after the frame header. NioConnection.call fills in the header.
+     */
+    static ByteBuffer request(int size) {
+        return ByteBuffer.allocate(HEADER_SIZE + size).position(HEADER_SIZE);
+    }
+
+    static ByteBuffer request(UpdateMessage updateMessage) {
+        ByteBuffer request = request(UpdateMessageCodec.sizeOf(updateMessage));
+        UpdateMessageCodec.encode(updateMessage, request);
+        return request;
+    }
+
+    static ByteBuffer request(List<UpdateMessage> updateMessages) {
+        ByteBuffer request = request(UpdateMessageCodec.sizeOf(updateMessages));
+        UpdateMessageCodec.encode(updateMessages, request);
+        return request;
+    }
+
+    static UpdateMessage readUpdateMessage(ByteBuffer buffer) {
+        return UpdateMessageCodec.decode(buffer);
+    }
+
+    static List<UpdateMessage> readUpdateMessages(ByteBuffer buffer) {
+        return UpdateMessageCodec.decodeAll(buffer);
+    }
+
+    // reply statuses
+
+    static ByteBuffer encode(ReplyStatus replyStatus) {
+        return ByteBuffer.allocate(1).put((byte) replyStatus.ordinal()).flip();
+    }
+
+    static ReplyStatus readReplyStatus(ByteBuffer buffer) {
+        return REPLY_STATUSES[buffer.get()];
+    }
+
+    static ByteBuffer encode(ReplyStatus[] replyStatuses) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + replyStatuses.length).putInt(replyStatuses.length);
+        for (ReplyStatus replyStatus : replyStatuses) {
+            buffer.put((byte) replyStatus.ordinal());
+        }
+        return buffer.flip();
+    }
+
+    static ReplyStatus[] readReplyStatuses(ByteBuffer buffer) {
+        ReplyStatus[] replyStatuses = new ReplyStatus[buffer.getInt()];
+        for (int i = 0; i < replyStatuses.length; i++) {
+            replyStatuses[i] = REPLY_STATUSES[buffer.get()];
+        }
+        return replyStatuses;
+    }
+
+    static ByteBuffer encode(int value) {
+        return ByteBuffer.allocate(4).putInt(value).flip();
+    }
+}
@@ -0,0 +1,16 @@
+package transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Executes the requests that arrive at a NioServer.
+ */
+interface RequestHandler {
+
+    /**
+     * @param opcode Which call is requested, see Protocol.
+     * @param request Encoded arguments.
+     * @return Encoded result, ready to be read, or null if the call has no result.
+     */
+    ByteBuffer handle(byte opcode, ByteBuffer request) throws Exception;
+}
@@ -0,0 +1,27 @@
+package transport;
+
+import peer.IPeer;
+import warehouse.IWarehouse;
+
+/**
+ * Sends all calls with Java RMI. Peers and warehouse are exported by UnicastRemoteObject already,
+ * so there is nothing to do.
+ */
+public class RmiTransport implements Transport {
+
+    @Override
+    public void exportWarehouse(IWarehouse warehouse) { }
+
+    @Override
+    public void exportPeer(int peerID, IPeer peer) { }
+
+    @Override
+    public IWarehouse connectWarehouse(IWarehouse stub) {
+        return stub;
+    }
+
+    @Override
+    public IPeer connectPeer(int peerID, IPeer stub) {
+        return stub;
+    }
+}
@@ -0,0 +1,63 @@
+package transport;
+
+import peer.IPeer;
+import warehouse.IWarehouse;
+
+import java.io.IOException;
+
+/**
+ * Carries the data plane calls (buy, sell, batch, cache updates, leases) between peers and the warehouse.
+ * The RMI registry is still used to find the peers and the warehouse, and for the control plane calls
+ * (election, heartbeat, start, crash). Selected with the system property transport (rmi or nio).
+ */
+public interface Transport {
+
+    String TRANSPORT_PROPERTY = "transport";
+    String DEFAULT_TRANSPORT = "rmi";
+
+    /**
+     * @return The transport selected by the system property transport.
+     */
+    static Transport get() {
+        return Holder.TRANSPORT;
+    }
+
+    /**
+     * Makes the warehouse reachable for the traders.
+     * @param warehouse The warehouse.
+     */
+    void exportWarehouse(IWarehouse warehouse) throws IOException;
+
+    /**
+     * Makes a peer reachable for the other peers.
+     * @param peerID ID of the peer.
+     * @param peer The peer.
+     */
+    void exportPeer(int peerID, IPeer peer) throws IOException;
+
+    /**
+     * @param stub RMI stub of the warehouse from the registry.
+     * @return Warehouse whose calls go through this transport.
+     */
+    IWarehouse connectWarehouse(IWarehouse stub);
+
+    /**
+     * @param peerID ID of the peer.
+     * @param stub RMI stub of the peer from the registry.
+     * @return Peer whose calls go through this transport.
+     */
+    IPeer connectPeer(int peerID, IPeer stub);
+
+    // creates the transport once it is used
+    class Holder {
+        private static final Transport TRANSPORT = create(System.getProperty(TRANSPORT_PROPERTY, DEFAULT_TRANSPORT));
+
+        private static Transport create(String name) {
+            return switch (name) {
+                case "rmi" -> new RmiTransport();
+                case "nio" -> new NioTransport();
+                default -> throw new IllegalArgumentException("Unknown transport " + name + ". Available transports: rmi, nio.");
+            };
+        }
+    }
+}
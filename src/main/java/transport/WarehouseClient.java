@@ -0,0 +1,63 @@
+package transport;
+
+import cache.UpdateMessage;
+import cache.UpdateMessageCodec;
+import peer.ReplyStatus;
+import product.Product;
+import warehouse.IWarehouse;
+
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Warehouse on the other end of a NIO connection.
+ */
+class WarehouseClient implements IWarehouse {
+
+    private final NioConnection connection;
+
+    WarehouseClient(NioConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public int lookup(Product product) throws RemoteException {
+        ByteBuffer request = Protocol.request(1).put(Protocol.encodeProduct(product));
+        return connection.call(Protocol.WAREHOUSE_LOOKUP, request).getInt();
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        return Protocol.readReplyStatus(connection.call(Protocol.WAREHOUSE_BUY, Protocol.request(updateMessage)));
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        return Protocol.readReplyStatus(connection.call(Protocol.WAREHOUSE_SELL, Protocol.request(updateMessage)));
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        return Protocol.readReplyStatuses(connection.call(Protocol.WAREHOUSE_BATCH, Protocol.request(updateMessages)));
+    }
+
+    @Override
+    public int acquireLease(int traderID, Product product, int amount) throws RemoteException {
+        ByteBuffer request = Protocol.request(9).putInt(traderID).put(Protocol.encodeProduct(product)).putInt(amount);
+        return connection.call(Protocol.WAREHOUSE_ACQUIRE_LEASE, request).getInt();
+    }
+
+    @Override
+    public ReplyStatus[] buyFromLease(int traderID, List<UpdateMessage> updateMessages) throws RemoteException {
+        ByteBuffer request = Protocol.request(4 + UpdateMessageCodec.sizeOf(updateMessages)).putInt(traderID);
+        UpdateMessageCodec.encode(updateMessages, request);
+        return Protocol.readReplyStatuses(connection.call(Protocol.WAREHOUSE_BUY_FROM_LEASE, request));
+    }
+
+    @Override
+    public void releaseLease(int traderID, Product product, int unused) throws RemoteException {
+        ByteBuffer request = Protocol.request(9).putInt(traderID).put(Protocol.encodeProduct(product)).putInt(unused);
+        connection.call(Protocol.WAREHOUSE_RELEASE_LEASE, request);
+    }
+}
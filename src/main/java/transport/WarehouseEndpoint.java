@@ -0,0 +1,40 @@
+package transport;
+
+import warehouse.IWarehouse;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Executes the requests for the warehouse that arrive over the NIO transport.
+ */
+class WarehouseEndpoint implements RequestHandler {
+
+    private final IWarehouse warehouse;
+
+    WarehouseEndpoint(IWarehouse warehouse) {
+        this.warehouse = warehouse;
+    }
+
+    @Override
+    public ByteBuffer handle(byte opcode, ByteBuffer request) throws Exception {
+        switch (opcode) {
+            case Protocol.WAREHOUSE_LOOKUP:
+                return Protocol.encode(warehouse.lookup(Protocol.decodeProduct(request.get())));
+            case Protocol.WAREHOUSE_BUY:
+                return Protocol.encode(warehouse.buy(Protocol.readUpdateMessage(request)));
+            case Protocol.WAREHOUSE_SELL:
+                return Protocol.encode(warehouse.sell(Protocol.readUpdateMessage(request)));
+            case Protocol.WAREHOUSE_BATCH:
+                return Protocol.encode(warehouse.batch(Protocol.readUpdateMessages(request)));
+            case Protocol.WAREHOUSE_ACQUIRE_LEASE:
+                return Protocol.encode(warehouse.acquireLease(request.getInt(), Protocol.decodeProduct(request.get()), request.getInt()));
+            case Protocol.WAREHOUSE_BUY_FROM_LEASE:
+                return Protocol.encode(warehouse.buyFromLease(request.getInt(), Protocol.readUpdateMessages(request)));
+            case Protocol.WAREHOUSE_RELEASE_LEASE:
+                warehouse.releaseLease(request.getInt(), Protocol.decodeProduct(request.get()), request.getInt());
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown warehouse opcode " + opcode + ".");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package utils;
+
+import product.Product;
+
+/**
+ * Typed log events of the hot paths. An event consists of its type, two peer IDs, a product and an amount,
+ * so it can be stored in a fixed size binary record and rendered into the text of Messages later.
+ */
+public enum Event {
+    BUY_ATTEMPT,
+    BUY_SUCCESSFUL,
+    OUT_OF_STOCK,
+    BUY_LOW_SEQUENCE_NUMBER,
+    BUY_ERROR,
+    SELL_ATTEMPT,
+    SELL_SUCCESSFUL,
+    SELL_LOW_SEQUENCE_NUMBER,
+    SELL_ERROR,
+    NOT_A_TRADER,
+    WAREHOUSE_BUY,
+    WAREHOUSE_SELL,
+    OVERSOLD,
+    SEND_HEARTBEAT,
+    HEARTBEAT_RESPONSE,
+    HEARTBEAT_TIMEOUT,
+    TRADER_REMOVED,
+    PEER_DOES_NOT_RESPOND;
+
+    private static final Event[] VALUES = values();
+
+    /**
+     * @return ID of the event in binary records, 0 is reserved for empty records.
+     */
+    public byte getID() {
+        return (byte) (ordinal() + 1);
+    }
+
+    /**
+     * @param id ID of the event in a binary record.
+     * @return The event, or null if the ID is unknown.
+     */
+    public static Event fromID(int id) {
+        return id >= 1 && id <= VALUES.length ? VALUES[id - 1] : null;
+    }
+
+    /**
+     * Renders the event as the text of Messages.
+     * @param peerID ID of the acting peer.
+     * @param otherID ID of the other peer, usually the trader.
+     * @param product The product, may be null.
+     * @param amount The amount.
+     * @return The log message.
+     */
+    public String render(int peerID, int otherID, Product product, int amount) {
+        return switch (this) {
+            case BUY_ATTEMPT -> Messages.getBuyAttemptMessage(peerID, otherID, product, amount);
+            case BUY_SUCCESSFUL -> Messages.getBuySuccessfulMessage(peerID, otherID, product, amount);
+            case OUT_OF_STOCK -> Messages.getOutOfStockMessage(peerID, otherID, product, amount);
+            case BUY_LOW_SEQUENCE_NUMBER -> Messages.getBuyLowSequenceNumberMessage(peerID, otherID, product, amount);
+            case BUY_ERROR -> Messages.getBuyErrorMessage(peerID, otherID, product, amount);
+            case SELL_ATTEMPT -> Messages.getSellAttemptMessage(peerID, otherID, product, amount);
+            case SELL_SUCCESSFUL -> Messages.getSellSuccessfulMessage(peerID, otherID, product, amount);
+            case SELL_LOW_SEQUENCE_NUMBER -> Messages.getSellLowSequenceNumberMessage(peerID, otherID, product, amount);
+            case SELL_ERROR -> Messages.getSellErrorMessage(peerID, otherID, product, amount);
+            case NOT_A_TRADER -> Messages.getNotATraderMessage(peerID, otherID);
+            case WAREHOUSE_BUY -> Messages.getWarehouseBuyMessage(product, amount);
+            case WAREHOUSE_SELL -> Messages.getWarehouseSellMessage(product, amount);
+            case OVERSOLD -> Messages.getOversoldMessage();
+            case SEND_HEARTBEAT -> Messages.getSendHeartbeatMessage(peerID, otherID);
+            case HEARTBEAT_RESPONSE -> Messages.getHeartbeatResponseMessage(peerID, otherID);
+            case HEARTBEAT_TIMEOUT -> Messages.getHeartbeatTimeoutMessage(peerID, otherID);
+            case TRADER_REMOVED -> Messages.getTraderRemovedMessage(peerID, otherID);
+            case PEER_DOES_NOT_RESPOND -> Messages.getPeerDoesNotRespondMessage(otherID);
+        };
+    }
+}
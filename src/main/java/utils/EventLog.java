@@ -0,0 +1,115 @@
+package utils;
+
+import product.Product;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary event log in a memory-mapped file. Writers claim a fixed size record with an atomic add and write
+ * it with absolute puts, so recording an event neither locks nor allocates. The operating system persists the
+ * mapped pages, even if the process crashes. Use EventLogDecoder to render the file as text.
+ *
+ * File layout: a header of HEADER_SIZE bytes (magic, version, record size, wall clock time and nanoTime at
+ * creation), followed by records of RECORD_SIZE bytes:
+ * event ID (1 byte), product ordinal or -1 (1 byte), unused (2 bytes), peer ID (4 bytes), other peer ID (4 bytes),
+ * amount (4 bytes), nanoTime (8 bytes).
+ */
+public class EventLog {
+
+    public static final int MAGIC = 0x45564C47; // "EVLG"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 24;
+    public static final long SIZE = Long.getLong("events.size", 64L * 1024 * 1024); // max. file size in bytes
+
+    private static final ConcurrentMap<String, EventLog> EVENT_LOGS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (EventLog eventLog : EVENT_LOGS.values()) {
+                eventLog.buffer.force();
+            }
+        }));
+    }
+
+    /**
+     * Gets the event log that belongs to a text log file, e.g. peer0_log.bin for peer0_log.txt.
+     * @param logFile Name of the text log file.
+     * @return The event log.
+     */
+    public static EventLog forLogFile(String logFile) {
+        EventLog eventLog = EVENT_LOGS.get(logFile);
+        if (eventLog == null) {
+            eventLog = EVENT_LOGS.computeIfAbsent(logFile, file -> new EventLog(getEventFile(file)));
+        }
+        return eventLog;
+    }
+
+    /**
+     * @param logFile Name of the text log file.
+     * @return Name of the binary event log file.
+     */
+    public static String getEventFile(String logFile) {
+        return (logFile.endsWith(".txt") ? logFile.substring(0, logFile.length() - 4) : logFile) + ".bin";
+    }
+
+    // CLASS
+
+    private final MappedByteBuffer buffer;
+    private final AtomicLong position;
+    private final AtomicLong dropped;
+
+    public EventLog(String eventFile) {
+        try (FileChannel channel = FileChannel.open(Paths.get(eventFile), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putShort(6, (short) RECORD_SIZE);
+        buffer.putLong(8, System.currentTimeMillis());
+        buffer.putLong(16, System.nanoTime());
+        this.position = new AtomicLong(HEADER_SIZE);
+        this.dropped = new AtomicLong();
+    }
+
+    /**
+     * Writes an event. The event ID is written last, so a record that is only partially written is skipped by the decoder.
+     * @param event Type of the event.
+     * @param peerID ID of the acting peer.
+     * @param otherID ID of the other peer, usually the trader.
+     * @param product The product, may be null.
+     * @param amount The amount.
+     */
+    public void record(Event event, int peerID, int otherID, Product product, int amount) {
+        long offset = position.getAndAdd(RECORD_SIZE);
+        if (offset + RECORD_SIZE > SIZE) {
+            dropped.incrementAndGet(); // file is full
+            return;
+        }
+        int index = (int) offset;
+        buffer.put(index + 1, product == null ? -1 : (byte) product.ordinal());
+        buffer.putInt(index + 4, peerID);
+        buffer.putInt(index + 8, otherID);
+        buffer.putInt(index + 12, amount);
+        buffer.putLong(index + 16, System.nanoTime());
+        buffer.put(index, event.getID());
+    }
+
+    /**
+     * @return Number of events that have been dropped because the file was full.
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+}
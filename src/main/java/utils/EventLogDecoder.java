@@ -0,0 +1,65 @@
+package utils;
+
+import product.Product;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Renders binary event logs as the same text the text logs contain.
+ * Usage: java -cp build/classes/java/main utils.EventLogDecoder peer0_log.bin [more files]
+ */
+public class EventLogDecoder {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss.SSS");
+
+    public static void main(String[] args) throws IOException {
+        for (String eventFile : args) {
+            decode(eventFile, System.out);
+        }
+    }
+
+    /**
+     * Prints every record of an event log as a timestamped text line.
+     * @param eventFile Name of the event log file.
+     * @param out Receives the lines.
+     */
+    public static void decode(String eventFile, PrintStream out) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(eventFile), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < EventLog.HEADER_SIZE || buffer.getInt(0) != EventLog.MAGIC) {
+            throw new IOException(eventFile + " is not an event log.");
+        }
+        int recordSize = buffer.getShort(6);
+        long baseTime = buffer.getLong(8);
+        long baseNanoTime = buffer.getLong(16);
+
+        Product[] products = Product.values();
+        for (int offset = EventLog.HEADER_SIZE; offset + recordSize <= buffer.capacity(); offset += recordSize) {
+            Event event = Event.fromID(buffer.get(offset));
+            if (event == null) {
+                continue; // empty or partially written record
+            }
+            int productOrdinal = buffer.get(offset + 1);
+            Product product = productOrdinal >= 0 && productOrdinal < products.length ? products[productOrdinal] : null;
+            int peerID = buffer.getInt(offset + 4);
+            int otherID = buffer.getInt(offset + 8);
+            int amount = buffer.getInt(offset + 12);
+            long time = baseTime + (buffer.getLong(offset + 16) - baseNanoTime) / 1_000_000;
+
+            String timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()).format(formatter);
+            out.println(timestamp + " " + event.render(peerID, otherID, product, amount));
+        }
+    }
+}
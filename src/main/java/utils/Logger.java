@@ -1,50 +1,194 @@
 package utils;
 
+import product.Product;
+
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Asynchronous logger. Callers put records into a lock-free ring buffer and return right away. A background
+ * thread formats the records and writes them in batches to log files that stay open.
+ * Configured with the system properties log.level, log.queue.size, log.overflow (BLOCK or DROP) and log.console.
+ * With log.format=binary, events are written to memory-mapped EventLog files instead of the text log files.
+ */
 public class Logger {
-    public static final String STATS_FILE = "trader_trouble_stats.txt";
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    // what happens when the ring buffer is full
+    public enum OverflowPolicy { BLOCK, DROP }
+
+    public static final Level LEVEL = Level.valueOf(System.getProperty("log.level", "INFO"));
+    public static final OverflowPolicy OVERFLOW_POLICY = OverflowPolicy.valueOf(System.getProperty("log.overflow", "BLOCK"));
+    public static final int QUEUE_SIZE = Integer.getInteger("log.queue.size", 8192);
+    public static final boolean CONSOLE = Boolean.parseBoolean(System.getProperty("log.console", "true"));
+    public static final boolean BINARY = "binary".equals(System.getProperty("log.format", "text"));
+    private static final int BATCH_SIZE = 512; // max. number of records written before the files are flushed
+    private static final long IDLE_WAIT = 1_000_000; // in nanoseconds, time the writer waits for new records
 
     // Date and time formatter
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss.SSS");
 
+    private static final RingBuffer<Record> queue = new RingBuffer<>(QUEUE_SIZE);
+    private static final AtomicLong enqueued = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long written = 0;
+    private static final Thread writerThread = startWriter();
+
     // Method to log messages with a timestamp
-    public synchronized static void log(String message, String logFile) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String logMessage = timestamp + " " + message;
+    public static void log(String message, String logFile) {
+        log(Level.INFO, message, logFile);
+    }
 
-        // Print to console
-        synchronized (Logger.class) {
-            System.out.println(logMessage);
+    // Method to log messages with a timestamp and a level
+    public static void log(Level level, String message, String logFile) {
+        if (isEnabled(level)) {
+            enqueue(new Record(System.currentTimeMillis(), message, logFile, null, 0, 0, null, 0));
         }
+    }
 
-        // Append the message to the log file
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true))) {
-            writer.write(logMessage);
-            writer.newLine();
-        } catch (IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
+    /**
+     * Logs a typed event. In binary mode the event is written to the EventLog of the log file, otherwise the
+     * writer thread renders it as the text of Messages.
+     * @param event Type of the event.
+     * @param peerID ID of the acting peer.
+     * @param otherID ID of the other peer, usually the trader.
+     * @param product The product, may be null.
+     * @param amount The amount.
+     * @param logFile Name of the log file.
+     */
+    public static void event(Event event, int peerID, int otherID, Product product, int amount, String logFile) {
+        if (!isEnabled(Level.INFO)) {
+            return;
         }
+        if (BINARY) {
+            EventLog.forLogFile(logFile).record(event, peerID, otherID, product, amount);
+        } else {
+            enqueue(new Record(System.currentTimeMillis(), null, logFile, event, peerID, otherID, product, amount));
+        }
+    }
 
+    // Checks if messages of a level are logged, use it to skip building messages that are not logged.
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0;
     }
 
-    // Method for logging statistic messages.
-    public synchronized static void logStats(String message) {
+    /**
+     * Waits until all records logged so far have been written.
+     * @param timeout Maximum time to wait in milliseconds.
+     * @return Whether all records have been written in time.
+     */
+    public static boolean flush(long timeout) {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + timeout * 1_000_000;
+        while (written < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(IDLE_WAIT);
+        }
+        return true;
+    }
 
-        // Print to console
-        System.out.println(message);
+    /**
+     * @return Number of records that have been dropped because the ring buffer was full.
+     */
+    public static long getDroppedRecords() {
+        return dropped.get();
+    }
 
-        // Append the message to the log file
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(STATS_FILE, true))) {
-            writer.write(message);
-            writer.newLine();
-        } catch (IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
+    // puts a record into the ring buffer, blocks or drops it if the buffer is full
+    private static void enqueue(Record record) {
+        while (!queue.offer(record)) {
+            if (OVERFLOW_POLICY == OverflowPolicy.DROP) {
+                dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(writerThread);
+            Thread.onSpinWait();
         }
+        enqueued.incrementAndGet();
+    }
+
+    // starts the thread that writes the records
+    private static Thread startWriter() {
+        Thread thread = new Thread(Logger::writeRecords, "logger");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000)));
+        return thread;
+    }
+
+    // drains the ring buffer in batches and writes the records to their files
+    private static void writeRecords() {
+        Map<String, BufferedWriter> writers = new HashMap<>();
+        StringBuilder console = new StringBuilder();
+        long count = 0;
+
+        while (true) {
+            int batch = 0;
+            for (Record record = queue.poll(); record != null; record = batch < BATCH_SIZE ? queue.poll() : null) {
+                String message = record.event == null ? record.message
+                        : record.event.render(record.peerID, record.otherID, record.product, record.amount);
+                String logMessage = format(record.timestamp) + " " + message;
+                if (CONSOLE) {
+                    console.append(logMessage).append(System.lineSeparator());
+                }
+                try {
+                    BufferedWriter writer = writers.get(record.logFile);
+                    if (writer == null) {
+                        writer = Files.newBufferedWriter(Paths.get(record.logFile), StandardCharsets.UTF_8,
+                                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                        writers.put(record.logFile, writer);
+                    }
+                    writer.write(logMessage);
+                    writer.newLine();
+                } catch (IOException e) {
+                    System.err.println("Error writing to log file: " + e.getMessage());
+                }
+                batch++;
+            }
 
+            if (batch == 0) {
+                LockSupport.parkNanos(IDLE_WAIT);
+                continue;
+            }
+
+            // flush the batch
+            if (console.length() > 0) {
+                System.out.print(console);
+                console.setLength(0);
+            }
+            for (BufferedWriter writer : writers.values()) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    System.err.println("Error writing to log file: " + e.getMessage());
+                }
+            }
+            count += batch;
+            written = count;
+        }
     }
+
+    // formats a timestamp in milliseconds
+    private static String format(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).format(formatter);
+    }
+
+    // a log message or event waiting to be written
+    private record Record(long timestamp, String message, String logFile,
+                          Event event, int peerID, int otherID, Product product, int amount) { }
 }
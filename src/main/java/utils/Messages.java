@@ -40,6 +40,18 @@ public class Messages {
         return "Buy request processed by warehouse: Removed " + quantity + " of " + product + " from the inventory.";
     }
 
+    public static String getLeaseGrantedMessage(int traderID, Product product, int quantity) {
+        return "Lease granted to trader " + traderID + ": Reserved " + quantity + " of " + product + ".";
+    }
+
+    public static String getLeaseReleasedMessage(int traderID, Product product, int unused) {
+        return "Lease of trader " + traderID + " released: Returned " + unused + " of " + product + " to the inventory.";
+    }
+
+    public static String getLeaseReclaimedMessage(int traderID, Product product, int unused) {
+        return "Lease of trader " + traderID + " expired: Returned " + unused + " of " + product + " to the inventory.";
+    }
+
     public static String getBuyAttemptMessage(int buyerID, int traderID, Product product, int quantity) {
         return "Peer " + buyerID + " attempts buying " + quantity + " piece(s) of " + product + " from trader " + traderID + ".";
     }
@@ -89,10 +101,26 @@ public class Messages {
     }
 
     public static String getHeartbeatTimeoutMessage(int senderID, int receiverID) {
-        return "Peer " + senderID + " didn't receive a heartbeat response from peer " + receiverID + ". Notifying all peers.";
+        return "Peer " + senderID + " suspects that peer " + receiverID + " crashed, its heartbeats are missing. Notifying all peers.";
+    }
+
+    public static String getBackupAddedMessage(long logIndex) {
+        return "Backup added. It receives the log from record " + logIndex + " on.";
+    }
+
+    public static String getMetricsReportFailedMessage(String fileName, Exception e) {
+        return "Metrics could not be written to " + fileName + ": " + e.getMessage();
+    }
+
+    public static String getWarehouseFencedMessage(long epoch) {
+        return "A backup has been promoted to primary after epoch " + epoch + ". Warehouse stepped down and takes no more writes.";
+    }
+
+    public static String getWarehousePromotedMessage(long logIndex, long epoch) {
+        return "Primary warehouse does not respond. Backup promoted to primary of epoch " + epoch + " at log record " + logIndex + ".";
     }
 
-    public static String getTraderUpdatedMessage(int peerID, int newTraderID) {
-        return "Peer " + peerID + " updated trader to peer " + newTraderID + ".";
+    public static String getTraderRemovedMessage(int peerID, int traderID) {
+        return "Peer " + peerID + " moved the products of trader " + traderID + " to the other traders.";
     }
 }
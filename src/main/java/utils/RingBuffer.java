@@ -0,0 +1,82 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * Every slot has a sequence number that tells whether it is free for the producer claiming position p
+ * (sequence == p) or filled for the consumer at position p (sequence == p + 1). Producers claim positions
+ * with a CAS on the tail, so they never block each other.
+ * @param <T> Type of the elements.
+ */
+public class RingBuffer<T> {
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private long head; // only accessed by the consumer
+
+    /**
+     * @param capacity Maximum number of elements, rounded up to the next power of two.
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = 0;
+    }
+
+    /**
+     * Adds an element, can be called by any thread.
+     * @param element The element to add.
+     * @return Whether the element has been added, false if the buffer is full.
+     */
+    public boolean offer(T element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    sequences.set(index, position + 1); // publish the element
+                    return true;
+                }
+            } else if (sequence < position) {
+                return false; // the consumer has not freed the slot yet
+            }
+            // another producer claimed the position, try again
+        }
+    }
+
+    /**
+     * Removes the oldest element, must only be called by the consumer thread.
+     * @return The element, or null if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        T element = (T) elements[index];
+        elements[index] = null;
+        sequences.set(index, head + elements.length); // free the slot for the next round
+        head++;
+        return element;
+    }
+
+    /**
+     * @return Maximum number of elements.
+     */
+    public int capacity() {
+        return elements.length;
+    }
+}
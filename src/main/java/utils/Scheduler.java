@@ -0,0 +1,195 @@
+package utils;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared scheduler of a process. A single timer thread triggers the scheduled tasks and hands them to the
+ * workers, so the number of threads doesn't grow with the number of peers in the process.
+ * The workers are virtual threads if the JVM supports them (Java 21+), a pool of platform threads otherwise.
+ * Set the system property scheduler.virtual to false to always use platform threads.
+ * The time and randomness of the process come from here as well, so a simulation can install a backend with a
+ * virtual clock and a seeded random number generator for its thread instead.
+ */
+public final class Scheduler {
+
+    public static final boolean VIRTUAL = Boolean.parseBoolean(System.getProperty("scheduler.virtual", "true"));
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ExecutorService VIRTUAL_WORKERS = VIRTUAL ? createVirtualWorkers() : null;
+    private static final ExecutorService WORKERS = VIRTUAL_WORKERS != null ? VIRTUAL_WORKERS : createPlatformWorkers();
+
+    private static final ThreadLocal<Backend> BACKEND = new ThreadLocal<>(); // replaces the threads and the clock if installed
+
+    private Scheduler() { }
+
+    /**
+     * Replacement for the threads, the clock and the randomness of the process.
+     */
+    public interface Backend {
+
+        // same contracts as the static methods of the Scheduler
+
+        void execute(Runnable task);
+
+        ExecutorService getWorkers();
+
+        ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+        ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+        long nanoTime();
+
+        Random getRandom();
+    }
+
+    /**
+     * Makes all following calls of the current thread use a backend instead of the threads and the clock of the
+     * process. Other threads, e.g. the ones of RMI, are not affected.
+     * @param newBackend The backend, null to go back to the threads and the clock of the process.
+     */
+    public static void install(Backend newBackend) {
+        if (newBackend == null) {
+            BACKEND.remove();
+        } else {
+            BACKEND.set(newBackend);
+        }
+    }
+
+    /**
+     * Runs a task on a worker.
+     * @param task The task.
+     */
+    public static void execute(Runnable task) {
+        Backend installed = BACKEND.get();
+        if (installed != null) {
+            installed.execute(task);
+            return;
+        }
+        WORKERS.execute(task);
+    }
+
+    /**
+     * @return The workers, e.g. to run requests on them.
+     */
+    public static ExecutorService getWorkers() {
+        Backend installed = BACKEND.get();
+        return installed != null ? installed.getWorkers() : WORKERS;
+    }
+
+    /**
+     * Runs a task on a worker after a delay.
+     * @param task The task.
+     * @param delay Delay before the task runs.
+     * @param unit Unit of the delay.
+     * @return Future to cancel the task.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        Backend installed = BACKEND.get();
+        if (installed != null) {
+            return installed.schedule(task, delay, unit);
+        }
+        return TIMER.schedule(() -> WORKERS.execute(task), delay, unit);
+    }
+
+    /**
+     * Runs a task on a worker periodically. A run that is still busy when the next one is due is not started
+     * twice, the next run is skipped instead. Like with ScheduledExecutorService, a task that throws is not run again.
+     * @param task The task.
+     * @param initialDelay Delay before the first run.
+     * @param period Time between the runs.
+     * @param unit Unit of the delay and the period.
+     * @return Future to cancel the task.
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        Backend installed = BACKEND.get();
+        if (installed != null) {
+            return installed.scheduleAtFixedRate(task, initialDelay, period, unit);
+        }
+        PeriodicTask periodicTask = new PeriodicTask(task);
+        periodicTask.future = TIMER.scheduleAtFixedRate(periodicTask, initialDelay, period, unit);
+        return periodicTask.future;
+    }
+
+    /**
+     * Use this instead of System.nanoTime() for all timing of the protocol.
+     * @return Current time in nanoseconds, only meaningful relative to other times from here.
+     */
+    public static long nanoTime() {
+        Backend installed = BACKEND.get();
+        return installed != null ? installed.nanoTime() : System.nanoTime();
+    }
+
+    /**
+     * @return Random number generator for the protocol, seeded if a backend is installed.
+     */
+    public static Random getRandom() {
+        Backend installed = BACKEND.get();
+        return installed != null ? installed.getRandom() : ThreadLocalRandom.current();
+    }
+
+    /**
+     * @return Whether the workers are virtual threads.
+     */
+    public static boolean usesVirtualThreads() {
+        return VIRTUAL_WORKERS != null;
+    }
+
+    // virtual threads are looked up by reflection, so the code still compiles and runs on Java 17
+    private static ExecutorService createVirtualWorkers() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null; // no virtual threads in this JVM
+        }
+    }
+
+    private static ExecutorService createPlatformWorkers() {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // triggered by the timer thread, runs the task on a worker
+    private static class PeriodicTask implements Runnable {
+        private final Runnable task;
+        private final AtomicBoolean running;
+        private volatile ScheduledFuture<?> future;
+
+        PeriodicTask(Runnable task) {
+            this.task = task;
+            this.running = new AtomicBoolean();
+        }
+
+        @Override
+        public void run() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            WORKERS.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    if (future != null) {
+                        future.cancel(false);
+                    }
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package warehouse;
+
+import cache.UpdateMessage;
+import peer.ReplyStatus;
+import product.Product;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces concurrent buy and sell requests into a single batch call to the warehouse, and concurrent
+ * buys from a lease into a single buyFromLease call. The first waiting caller sends the requests of everyone that arrived in the meantime and hands out
+ * the results, so there is no extra thread and a lone request is sent right away.
+ */
+public class BatchingWarehouse implements IWarehouse {
+
+    private static final int INVENTORY = -1; // requests that buy from or sell to the inventory instead of a lease
+
+    private final IWarehouse warehouse;
+    private final ReentrantLock lock; // a lock instead of synchronized, so virtual threads waiting here don't pin their carrier.
+    private final Condition batchDone;
+    private List<PendingRequest> pendingRequests;
+    private boolean sending;
+
+    public BatchingWarehouse(IWarehouse warehouse) {
+        this.warehouse = warehouse;
+        this.lock = new ReentrantLock();
+        this.batchDone = lock.newCondition();
+        this.pendingRequests = new ArrayList<>();
+        this.sending = false;
+    }
+
+    @Override
+    public int lookup(Product product) throws RemoteException {
+        return warehouse.lookup(product);
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        return submit(new UpdateMessage(updateMessage.sequenceNumber(), updateMessage.peerID(), updateMessage.product(), -updateMessage.amount()), INVENTORY);
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        return submit(updateMessage, INVENTORY);
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        return warehouse.batch(updateMessages);
+    }
+
+    @Override
+    public int acquireLease(int traderID, Product product, int amount) throws RemoteException {
+        return warehouse.acquireLease(traderID, product, amount);
+    }
+
+    @Override
+    public ReplyStatus[] buyFromLease(int traderID, List<UpdateMessage> updateMessages) throws RemoteException {
+        if (updateMessages.size() == 1) {
+            return new ReplyStatus[] { submit(updateMessages.get(0), traderID) };
+        }
+        return warehouse.buyFromLease(traderID, updateMessages);
+    }
+
+    @Override
+    public void releaseLease(int traderID, Product product, int unused) throws RemoteException {
+        warehouse.releaseLease(traderID, product, unused);
+    }
+
+    /**
+     * Queues a request and waits until it has been sent, either by this thread or by another one.
+     * @param updateMessage Message to send. Negative amounts are buys, positive amounts are sells.
+     * @param traderID ID of the trader whose lease the message buys from, or INVENTORY.
+     * @return The reply status of the message.
+     */
+    private ReplyStatus submit(UpdateMessage updateMessage, int traderID) throws RemoteException {
+        PendingRequest request = new PendingRequest(updateMessage, traderID);
+        List<PendingRequest> requests;
+
+        lock.lock();
+        try {
+            pendingRequests.add(request);
+            // wait until the request is done or no one else is sending.
+            while (!request.done && sending) {
+                try {
+                    batchDone.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RemoteException("Interrupted while waiting for batch.", e);
+                }
+            }
+            if (request.done) {
+                return request.getReplyStatus();
+            }
+            sending = true;
+            requests = pendingRequests;
+            pendingRequests = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+
+        // send all pending requests, including this one, with one call per inventory or lease.
+        try {
+            Map<Integer, List<PendingRequest>> groups = new LinkedHashMap<>();
+            for (PendingRequest pendingRequest : requests) {
+                groups.computeIfAbsent(pendingRequest.traderID, id -> new ArrayList<>()).add(pendingRequest);
+            }
+            for (var group : groups.entrySet()) {
+                send(group.getKey(), group.getValue());
+            }
+        } finally {
+            lock.lock();
+            try {
+                for (PendingRequest pendingRequest : requests) {
+                    pendingRequest.done = true;
+                }
+                sending = false;
+                batchDone.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return request.getReplyStatus();
+    }
+
+    /**
+     * Sends requests with a single call and hands out the results.
+     * @param traderID ID of the trader whose lease the requests buy from, or INVENTORY.
+     * @param requests The requests.
+     */
+    private void send(int traderID, List<PendingRequest> requests) {
+        try {
+            List<UpdateMessage> updateMessages = new ArrayList<>(requests.size());
+            for (PendingRequest pendingRequest : requests) {
+                updateMessages.add(pendingRequest.updateMessage);
+            }
+            ReplyStatus[] replyStatuses = traderID == INVENTORY ? warehouse.batch(updateMessages) : warehouse.buyFromLease(traderID, updateMessages);
+            for (int i = 0; i < requests.size(); i++) {
+                requests.get(i).replyStatus = replyStatuses[i];
+            }
+        } catch (RemoteException | RuntimeException e) {
+            RemoteException exception = e instanceof RemoteException ? (RemoteException) e : new RemoteException("Batch failed.", e);
+            for (PendingRequest pendingRequest : requests) {
+                pendingRequest.exception = exception;
+            }
+        }
+    }
+
+    /**
+     * A request waiting to be sent.
+     */
+    private static class PendingRequest {
+
+        private final UpdateMessage updateMessage;
+        private final int traderID;
+        private ReplyStatus replyStatus;
+        private RemoteException exception;
+        private boolean done;
+
+        private PendingRequest(UpdateMessage updateMessage, int traderID) {
+            this.updateMessage = updateMessage;
+            this.traderID = traderID;
+        }
+
+        private ReplyStatus getReplyStatus() throws RemoteException {
+            if (exception != null) {
+                throw exception;
+            }
+            return replyStatus;
+        }
+    }
+}
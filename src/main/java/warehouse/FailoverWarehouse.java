@@ -0,0 +1,210 @@
+package warehouse;
+
+import cache.UpdateMessage;
+import peer.ReplyStatus;
+import product.Product;
+import transport.Transport;
+import utils.Scheduler;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side of a replicated warehouse. Writes go to the primary. Lookups go to the backups in turn, as long as
+ * a backup heard from the primary within the last MAX_STALENESS milliseconds (system property warehouse.staleness),
+ * so lookups of cold caches don't compete with the writes on the primary. When the primary doesn't respond, the
+ * backup with the longest log is promoted and the request is sent again. The primary acknowledges a write only
+ * after a backup applied it, so the longest log holds every acknowledged write. A request the old primary applied
+ * without acknowledging it is known to the new primary if the record reached that backup, and its sequence number
+ * makes sure it is applied only once. Otherwise the new primary applies it for the first time. The other backups
+ * follow the new primary.
+ */
+public class FailoverWarehouse implements IWarehouse {
+
+    public static final long MAX_STALENESS = Long.getLong("warehouse.staleness", 500); // in milliseconds
+    public static final long BACKUP_REFRESH_INTERVAL = 1000; // in milliseconds
+
+    /**
+     * Connects to a warehouse through the transport of the process. Replicated warehouses get failover and
+     * reads from backups.
+     * @param warehouse The warehouse, e.g. an RMI stub.
+     * @return The connected warehouse.
+     */
+    public static IWarehouse connect(IWarehouse warehouse) throws RemoteException {
+        IWarehouse connected = Transport.get().connectWarehouse(warehouse);
+        return warehouse instanceof IWarehouseReplica replica ? new FailoverWarehouse(connected, replica) : connected;
+    }
+
+    // CLASS
+
+    private volatile IWarehouse primary; // trades and lookups of the primary, possibly over another transport
+    private volatile IWarehouseReplica primaryReplica; // replication calls of the primary
+    private volatile List<IWarehouseReplica> backups;
+    private volatile long backupsRefreshed; // from Scheduler.nanoTime()
+    private final AtomicInteger nextBackup;
+
+    /**
+     * @param primary The primary, used for trades.
+     * @param primaryReplica The same primary, used to find its backups.
+     */
+    public FailoverWarehouse(IWarehouse primary, IWarehouseReplica primaryReplica) {
+        this.primary = primary;
+        this.primaryReplica = primaryReplica;
+        this.backups = List.of();
+        this.backupsRefreshed = Scheduler.nanoTime() - TimeUnit.MILLISECONDS.toNanos(BACKUP_REFRESH_INTERVAL);
+        this.nextBackup = new AtomicInteger();
+    }
+
+    @Override
+    public int lookup(Product product) throws RemoteException {
+        List<IWarehouseReplica> replicas = getBackups();
+        for (int i = 0; i < replicas.size(); i++) {
+            IWarehouseReplica backup = replicas.get(Math.floorMod(nextBackup.getAndIncrement(), replicas.size()));
+            try {
+                int amount = backup.lookup(product, MAX_STALENESS);
+                if (amount >= 0) {
+                    return amount;
+                }
+            } catch (RemoteException ignored) {} // try the next backup
+        }
+        return call(warehouse -> warehouse.lookup(product));
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        return call(warehouse -> warehouse.buy(updateMessage));
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        return call(warehouse -> warehouse.sell(updateMessage));
+    }
+
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        return call(warehouse -> warehouse.batch(updateMessages));
+    }
+
+    @Override
+    public int acquireLease(int traderID, Product product, int amount) throws RemoteException {
+        return call(warehouse -> warehouse.acquireLease(traderID, product, amount));
+    }
+
+    @Override
+    public ReplyStatus[] buyFromLease(int traderID, List<UpdateMessage> updateMessages) throws RemoteException {
+        return call(warehouse -> warehouse.buyFromLease(traderID, updateMessages));
+    }
+
+    @Override
+    public void releaseLease(int traderID, Product product, int unused) throws RemoteException {
+        call(warehouse -> {
+            warehouse.releaseLease(traderID, product, unused);
+            return null;
+        });
+    }
+
+    /**
+     * Sends a request to the primary. If the primary doesn't respond, a backup is promoted and the request is
+     * sent to it.
+     * @param call The request.
+     * @return The reply of the primary.
+     */
+    private <T> T call(WarehouseCall<T> call) throws RemoteException {
+        IWarehouse current = primary;
+        try {
+            T reply = call.call(current);
+            getBackups(); // know the backups before the primary fails
+            return reply;
+        } catch (RemoteException e) {
+            if (!failover(current)) {
+                throw e;
+            }
+            return call.call(primary);
+        }
+    }
+
+    /**
+     * Promotes the backup with the longest log, if it agrees, i.e. if it lost the primary as well.
+     * The other backups are attached to the new primary.
+     * @param failedPrimary The primary that didn't respond.
+     * @return Whether there is a new primary.
+     */
+    private synchronized boolean failover(IWarehouse failedPrimary) {
+        if (primary != failedPrimary) {
+            return true; // another request failed over already
+        }
+        for (IWarehouseReplica backup : getCandidates()) {
+            try {
+                if (!backup.promote()) {
+                    return false; // the primary is still alive
+                }
+            } catch (RemoteException e) {
+                continue; // try the next backup
+            }
+            List<IWarehouseReplica> others = new ArrayList<>(backups);
+            others.remove(backup);
+            attachBackups(backup, others);
+            primary = backup;
+            primaryReplica = backup;
+            backups = others;
+            backupsRefreshed = Scheduler.nanoTime() - TimeUnit.MILLISECONDS.toNanos(BACKUP_REFRESH_INTERVAL);
+            return true;
+        }
+        return false;
+    }
+
+    // the reachable backups, longest log first. Ties keep the order of the primary, so all traders pick the same.
+    private List<IWarehouseReplica> getCandidates() {
+        List<IWarehouseReplica> candidates = new ArrayList<>();
+        List<Long> logIndexes = new ArrayList<>();
+        for (IWarehouseReplica backup : backups) {
+            try {
+                long logIndex = backup.getLogIndex();
+                int position = 0;
+                while (position < logIndexes.size() && logIndexes.get(position) >= logIndex) {
+                    position++;
+                }
+                candidates.add(position, backup);
+                logIndexes.add(position, logIndex);
+            } catch (RemoteException ignored) {} // can't be promoted either
+        }
+        return candidates;
+    }
+
+    // attaches backups of the old primary to the new one, unless another trader did already
+    private static void attachBackups(IWarehouseReplica newPrimary, List<IWarehouseReplica> others) {
+        List<IWarehouseReplica> attached;
+        try {
+            attached = newPrimary.getBackups();
+        } catch (RemoteException e) {
+            return;
+        }
+        for (IWarehouseReplica other : others) {
+            if (attached.contains(other)) {
+                continue;
+            }
+            try {
+                newPrimary.addBackup(other);
+            } catch (RemoteException ignored) {} // the backup has to join again
+        }
+    }
+
+    // gets the backups of the primary, refreshed once per BACKUP_REFRESH_INTERVAL
+    private List<IWarehouseReplica> getBackups() {
+        if (Scheduler.nanoTime() - backupsRefreshed >= TimeUnit.MILLISECONDS.toNanos(BACKUP_REFRESH_INTERVAL)) {
+            backupsRefreshed = Scheduler.nanoTime();
+            try {
+                backups = primaryReplica.getBackups();
+            } catch (RemoteException ignored) {} // keep the known backups for the failover
+        }
+        return backups;
+    }
+
+    // Remote call to the primary
+    private interface WarehouseCall<T> {
+        T call(IWarehouse warehouse) throws RemoteException;
+    }
+}
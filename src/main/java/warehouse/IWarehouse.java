@@ -6,6 +6,7 @@ import product.Product;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 public interface IWarehouse extends Remote {
 
@@ -29,4 +30,40 @@ public interface IWarehouse extends Remote {
      * @return Returns the reply status.
      */
     ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException;
+
+    /**
+     * Buys and sells several items at once, the inventory is written once for the whole batch.
+     * @param updateMessages Contains product type and amount per message. Negative amounts are buys, positive amounts are sells.
+     * @return Returns the reply status of every message, in the same order.
+     */
+    ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException;
+
+    /**
+     * Reserves stock for a trader, so the trader can sell it without asking the warehouse.
+     * The stock is removed from the inventory until it is released.
+     * @param traderID ID of the trader.
+     * @param product Product to reserve.
+     * @param amount Requested amount.
+     * @return The reserved amount, which is less than requested if the inventory is short.
+     */
+    int acquireLease(int traderID, Product product, int amount) throws RemoteException;
+
+    /**
+     * Records buys a trader has served from its leases. Every buy is logged and checked against the sequence numbers
+     * of its buyer, so a buy that has already been applied, from a lease or from the inventory, is rejected. The
+     * products have been handed out already, a buy the lease doesn't cover anymore is taken from the inventory.
+     * @param traderID ID of the trader that holds the leases.
+     * @param updateMessages The buys, containing product type, amount, buyer and sequence number.
+     * @return Returns the reply status of every buy, in the same order. LOW_SEQUENCE_NUMBER if the buy has been
+     * applied already, the lease keeps its amount then.
+     */
+    ReplyStatus[] buyFromLease(int traderID, List<UpdateMessage> updateMessages) throws RemoteException;
+
+    /**
+     * Ends a lease. Unused stock goes back to the inventory.
+     * @param traderID ID of the trader.
+     * @param product Leased product.
+     * @param unused Amount that goes back to the inventory.
+     */
+    void releaseLease(int traderID, Product product, int unused) throws RemoteException;
 }
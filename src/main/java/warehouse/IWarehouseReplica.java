@@ -0,0 +1,71 @@
+package warehouse;
+
+import product.Product;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * A warehouse that takes part in replication. The primary ships every record of its write-ahead log to its backups.
+ * Backups only serve reads until one of them is promoted to primary. Every promotion starts a new epoch, and a
+ * primary steps down once a backup tells it about a newer one.
+ */
+public interface IWarehouseReplica extends IWarehouse {
+
+    /**
+     * Adds a backup to the primary. The backup gets a snapshot first and every new log record afterwards.
+     * @param backup The backup.
+     */
+    void addBackup(IWarehouseReplica backup) throws RemoteException;
+
+    /**
+     * @return The backups of the primary, in the order they should be promoted.
+     */
+    List<IWarehouseReplica> getBackups() throws RemoteException;
+
+    /**
+     * Replaces the state of a backup with a snapshot of the primary.
+     * @param primary The primary.
+     * @param epoch Epoch of the primary.
+     * @param logIndex Number of log records the primary had shipped when the snapshot was taken.
+     * @param snapshot Snapshot lines of the primary.
+     * @throws RemoteException If the replica knows a newer epoch, or is the primary.
+     */
+    void install(IWarehouseReplica primary, long epoch, long logIndex, List<String> snapshot) throws RemoteException;
+
+    /**
+     * Applies log records of the primary to a backup. An empty list only tells the backup that it is up to date.
+     * Records of a primary with an older epoch are ignored.
+     * @param epoch Epoch of the primary.
+     * @param logIndex Index of the first record.
+     * @param records The records, in the order the primary logged them.
+     * @return Epoch of the replica, newer than the given one if the primary has been replaced.
+     * @throws RemoteException If the records don't follow the last applied record, or this replica is the primary.
+     */
+    long replicate(long epoch, long logIndex, List<String> records) throws RemoteException;
+
+    /**
+     * @return Number of log records this replica has shipped (primary) or applied (backup).
+     */
+    long getLogIndex() throws RemoteException;
+
+    /**
+     * Looks up the amount of a product, as long as the replica is recent enough.
+     * @param product Product to lookup.
+     * @param maxStaleness Maximum time in milliseconds since the replica last heard from the primary.
+     * @return The amount of the product, or -1 if the replica is too stale.
+     */
+    int lookup(Product product, long maxStaleness) throws RemoteException;
+
+    /**
+     * Makes a backup the primary of a new epoch, unless it heard from the current primary within the last
+     * PROMOTION_TIMEOUT milliseconds, or the current primary still responds.
+     * @return Whether this replica is the primary now.
+     */
+    boolean promote() throws RemoteException;
+
+    /**
+     * Simulate crash of the warehouse.
+     */
+    void crash() throws RemoteException;
+}
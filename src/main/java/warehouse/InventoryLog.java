@@ -0,0 +1,344 @@
+package warehouse;
+
+import metrics.Histogram;
+import metrics.Metrics;
+import utils.Scheduler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable storage of the warehouse inventory. Every mutation is appended to a write-ahead log,
+ * and the log is periodically compacted into a snapshot file. The in-memory state can be rebuilt
+ * from the snapshot plus the log tail after a crash.
+ * Appends are group committed: concurrent appends queue up, and a single flusher writes the queued
+ * records with one write, forces them to disk with one fsync and then wakes up all their callers.
+ * An append only returns once its records are on disk, but under load many appends share an fsync.
+ * Both files start with a generation line. Compaction writes a snapshot of the next generation before it truncates
+ * the log, so a log that is older than the snapshot is already part of it and is skipped by the recovery.
+ */
+public class InventoryLog {
+
+    public static final String COMMIT_BATCH_PROPERTY = "warehouse.commit.batch";
+    public static final String COMMIT_LINGER_PROPERTY = "warehouse.commit.linger";
+    public static final int COMMIT_BATCH_SIZE = Integer.getInteger(COMMIT_BATCH_PROPERTY, 256); // most records per fsync
+    public static final long COMMIT_LINGER = Long.getLong(COMMIT_LINGER_PROPERTY, 0); // in microseconds, time the flusher waits for more records
+
+    // metrics of the group commit
+    private static final Histogram COMMIT_BATCH = Metrics.distribution("warehouse.commit.batch"); // records per fsync
+    private static final Histogram COMMIT_LATENCY = Metrics.histogram("warehouse.commit"); // write and fsync of a batch
+    private static final String GENERATION_PREFIX = "generation,";
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final int batchSize;
+    private final long linger; // in nanoseconds
+    private final ReentrantLock lock; // a lock instead of synchronized, so virtual threads doing file I/O don't pin their carrier.
+    private final ReentrantLock queueLock; // only held to queue and take commits, never during file I/O
+    private final Condition queued; // signalled when a commit is queued, wakes up a lingering flusher
+    private final Deque<Commit> queue;
+    private int queuedRecords;
+    private boolean flushing; // whether a flusher is running
+    private FileChannel logChannel;
+    private long generation; // generation of the log, the snapshot covers all older ones
+
+    public InventoryLog(String snapshotFile, String logFile) {
+        this(snapshotFile, logFile, COMMIT_BATCH_SIZE, COMMIT_LINGER);
+    }
+
+    /**
+     * @param snapshotFile Path of the snapshot file.
+     * @param logFile Path of the write-ahead log.
+     * @param batchSize Most records written and forced to disk together. A larger append is still written at once.
+     * @param linger Time in microseconds the flusher waits for more records before it writes a batch that isn't full.
+     */
+    public InventoryLog(String snapshotFile, String logFile, int batchSize, long linger) {
+        if (batchSize < 1 || linger < 0) {
+            throw new IllegalArgumentException("Invalid group commit with batch size " + batchSize + " and linger " + linger + ".");
+        }
+        this.snapshotFile = Paths.get(snapshotFile);
+        this.logFile = Paths.get(logFile);
+        this.batchSize = batchSize;
+        this.linger = TimeUnit.MICROSECONDS.toNanos(linger);
+        this.lock = new ReentrantLock();
+        this.queueLock = new ReentrantLock();
+        this.queued = queueLock.newCondition();
+        this.queue = new ArrayDeque<>();
+    }
+
+    /**
+     * Deletes all stored state and starts with an empty snapshot and an empty log.
+     */
+    public void reset() throws IOException {
+        lock.lock();
+        try {
+            generation = 0;
+            writeSnapshot(new ArrayList<>());
+            openLog(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the snapshot lines followed by the log lines, in the order they have been written.
+     * Afterwards, new records are appended to the existing log. A log that the snapshot covers already, because
+     * a compaction crashed before it truncated the log, is skipped and truncated.
+     * @param snapshotLines Receives the lines of the snapshot file.
+     * @param logLines Receives the lines of the write-ahead log.
+     */
+    public void recover(List<String> snapshotLines, List<String> logLines) throws IOException {
+        lock.lock();
+        try {
+            long snapshotGeneration = Files.exists(snapshotFile) ? readLines(snapshotFile, snapshotLines) : 0;
+            List<String> lines = new ArrayList<>();
+            long logGeneration = Files.exists(logFile) ? readLines(logFile, lines) : 0;
+            if (logGeneration < snapshotGeneration) {
+                generation = snapshotGeneration;
+                openLog(true);
+            } else {
+                logLines.addAll(lines);
+                generation = logGeneration;
+                openLog(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends records to the write-ahead log and waits until they are on disk. The records of one call are
+     * written together, and together with the records of concurrent calls.
+     * @param records The records to append, one line each.
+     */
+    public void append(List<String> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        Commit commit = new Commit(records);
+        boolean startFlusher;
+        queueLock.lock();
+        try {
+            queue.add(commit);
+            queuedRecords += records.size();
+            startFlusher = !flushing;
+            flushing = true;
+            queued.signal();
+        } finally {
+            queueLock.unlock();
+        }
+        if (startFlusher) {
+            Scheduler.getWorkers().execute(this::flush);
+        }
+
+        try {
+            commit.done.join(); // not interruptible, the records may be on disk already
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given lines and truncates the log. The snapshot is written to a
+     * temporary file first and then moved, so a crash never leaves a half written snapshot behind.
+     * It belongs to the next generation, so a crash before the log is truncated doesn't replay the log twice.
+     * @param lines Compacted state of the warehouse.
+     */
+    public void compact(List<String> lines) throws IOException {
+        lock.lock();
+        try {
+            generation++;
+            writeSnapshot(lines);
+            openLog(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the log. Appends that haven't been written yet fail.
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (logChannel != null) {
+                logChannel.close();
+                logChannel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the snapshot file of the current generation atomically.
+     * @param lines Content of the snapshot, one line each.
+     */
+    private void writeSnapshot(List<String> lines) throws IOException {
+        Path tempFile = Paths.get(snapshotFile + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(GENERATION_PREFIX + generation);
+            writer.newLine();
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens the log channel for appending.
+     * @param truncate Whether existing records should be deleted. The emptied log starts with the current generation.
+     */
+    private void openLog(boolean truncate) throws IOException {
+        if (logChannel != null) {
+            logChannel.close();
+        }
+        logChannel = truncate
+                ? FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (truncate) {
+            ByteBuffer header = ByteBuffer.wrap((GENERATION_PREFIX + generation + "\n").getBytes(StandardCharsets.UTF_8));
+            while (header.hasRemaining()) {
+                logChannel.write(header);
+            }
+            logChannel.force(true);
+        }
+    }
+
+    /**
+     * Writes the queued commits until the queue is empty. Only one flusher runs at a time.
+     */
+    private void flush() {
+        while (true) {
+            List<Commit> batch = new ArrayList<>();
+            int records = 0;
+            queueLock.lock();
+            try {
+                if (queue.isEmpty()) {
+                    flushing = false;
+                    return;
+                }
+                // wait a little for more records, so they share the fsync
+                long remaining = linger;
+                while (remaining > 0 && queuedRecords < batchSize) {
+                    try {
+                        remaining = queued.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break; // write what is queued without waiting
+                    }
+                }
+                while (!queue.isEmpty() && (batch.isEmpty() || records + queue.peek().records.size() <= batchSize)) {
+                    Commit commit = queue.poll();
+                    records += commit.records.size();
+                    batch.add(commit);
+                }
+                queuedRecords -= records;
+            } finally {
+                queueLock.unlock();
+            }
+            write(batch, records);
+        }
+    }
+
+    /**
+     * Writes a batch of commits with a single write and forces it to disk, then wakes up the callers.
+     * @param batch The commits.
+     * @param records Number of records of the commits.
+     */
+    private void write(List<Commit> batch, int records) {
+        long startTime = Scheduler.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        for (Commit commit : batch) {
+            for (String record : commit.records) {
+                sb.append(record).append("\n");
+            }
+        }
+
+        IOException failure = null;
+        lock.lock();
+        try {
+            if (logChannel == null) {
+                throw new IOException("Inventory log is closed.");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                logChannel.write(buffer);
+            }
+            logChannel.force(false);
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            lock.unlock();
+        }
+        COMMIT_LATENCY.recordSince(startTime);
+        COMMIT_BATCH.record(records);
+
+        for (Commit commit : batch) {
+            if (failure == null) {
+                commit.done.complete(null);
+            } else {
+                commit.done.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Reads all non-blank lines of a file except its generation line.
+     * @param file File to read.
+     * @param lines Receives the lines.
+     * @return Generation of the file, 0 for files without a generation line.
+     */
+    private static long readLines(Path file, List<String> lines) throws IOException {
+        long fileGeneration = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.startsWith(GENERATION_PREFIX)) {
+                    fileGeneration = Long.parseLong(line.substring(GENERATION_PREFIX.length()).trim());
+                } else if (!line.isBlank()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return fileGeneration;
+    }
+
+    /**
+     * Records of a single append, done once they are on disk.
+     */
+    private static class Commit {
+        private final List<String> records;
+        private final CompletableFuture<Void> done;
+
+        Commit(List<String> records) {
+            this.records = records;
+            this.done = new CompletableFuture<>();
+        }
+    }
+}
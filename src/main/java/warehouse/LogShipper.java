@@ -0,0 +1,268 @@
+package warehouse;
+
+import utils.Scheduler;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ships the log records of the primary warehouse to its backups. Every backup has its own queue, all records that
+ * queued up for a backup are sent with a single call, and at most one call per backup is running, which keeps the
+ * records in order. A write waits until at least one backup has applied its records, so an acknowledged write
+ * survives the loss of the primary. A backup that can't be reached, or doesn't apply the records within ACK_TIMEOUT,
+ * is dropped and has to join again. Idle backups get an empty batch every REPLICATION_INTERVAL, so they know how
+ * recent their state is. Every batch carries the epoch of the primary. A backup that knows a newer epoch refuses
+ * it, and the shipper stops for good: another replica has been promoted.
+ */
+public class LogShipper {
+
+    public static final int REPLICATION_INTERVAL = 100; // in milliseconds
+    public static final long ACK_TIMEOUT = Long.getLong("warehouse.ack.timeout", 1000); // in milliseconds
+
+    private final List<Backup> backups;
+    private final Deque<Waiter> waiters; // writes waiting for a backup, in the order of their records
+    private long logIndex; // number of shipped records
+    private long epoch; // increases with every promotion
+    private boolean fenced; // a backup knows a newer epoch
+    private ScheduledFuture<?> keepAliveTask;
+
+    public LogShipper() {
+        this.backups = new CopyOnWriteArrayList<>();
+        this.waiters = new ArrayDeque<>();
+        this.logIndex = 0;
+        this.epoch = 0;
+    }
+
+    /**
+     * Queues log records for all backups and waits until at least one of them has applied the records.
+     * Returns right away if there are no backups.
+     * @param records The records, in the order they have been logged.
+     * @throws IOException If another replica has been promoted, this one must not take writes anymore.
+     */
+    public void ship(List<String> records) throws IOException {
+        Waiter waiter;
+        synchronized (this) {
+            if (fenced) {
+                throw new IOException("Replaced by a primary with a newer epoch.");
+            }
+            long index = logIndex;
+            logIndex += records.size();
+            for (Backup backup : backups) {
+                backup.queue.add(new Batch(index, records));
+                schedule(backup);
+            }
+            if (backups.isEmpty()) {
+                return;
+            }
+            waiter = new Waiter(logIndex);
+            waiters.add(waiter);
+        }
+
+        try {
+            if (!waiter.acknowledged.completeOnTimeout(false, ACK_TIMEOUT, TimeUnit.MILLISECONDS).join()) {
+                dropBehind(waiter.logIndex); // the backups are too slow, go on without them
+            }
+        } catch (CompletionException e) {
+            throw new IOException("Replaced by a primary with a newer epoch.", e.getCause());
+        }
+    }
+
+    /**
+     * Adds a backup, or restarts shipping to it. Must be called while no records are logged, right after the
+     * backup installed a snapshot.
+     * @param replica The backup.
+     */
+    public synchronized void add(IWarehouseReplica replica) {
+        backups.removeIf(backup -> backup.replica.equals(replica));
+        backups.add(new Backup(replica, logIndex));
+        if (keepAliveTask == null) {
+            keepAliveTask = Scheduler.scheduleAtFixedRate(this::keepAlive, REPLICATION_INTERVAL, REPLICATION_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops shipping to all backups.
+     */
+    public synchronized void stop() {
+        if (keepAliveTask != null) {
+            keepAliveTask.cancel(false);
+        }
+        for (Backup backup : backups) {
+            backup.queue.clear();
+        }
+        backups.clear();
+        releaseWaiters();
+    }
+
+    /**
+     * Continues the numbering of the records, used when a backup becomes the primary.
+     * @param logIndex Number of records the backup has applied.
+     * @param epoch Epoch of the new primary.
+     */
+    public synchronized void continueAt(long logIndex, long epoch) {
+        this.logIndex = logIndex;
+        this.epoch = epoch;
+    }
+
+    /**
+     * @return Number of shipped records.
+     */
+    public synchronized long getLogIndex() {
+        return logIndex;
+    }
+
+    /**
+     * @return Epoch of the primary.
+     */
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The backups, in the order they have been added.
+     */
+    public List<IWarehouseReplica> getBackups() {
+        List<IWarehouseReplica> replicas = new ArrayList<>();
+        for (Backup backup : backups) {
+            replicas.add(backup.replica);
+        }
+        return replicas;
+    }
+
+    // tells idle backups that they are up to date
+    private synchronized void keepAlive() {
+        for (Backup backup : backups) {
+            if (backup.queue.isEmpty()) {
+                backup.queue.add(new Batch(logIndex, List.of()));
+                schedule(backup);
+            }
+        }
+    }
+
+    private void schedule(Backup backup) {
+        if (backup.scheduled.compareAndSet(false, true)) {
+            Scheduler.execute(() -> deliver(backup));
+        }
+    }
+
+    /**
+     * Sends the queued records of a backup until its queue is empty.
+     * @param backup The backup to serve.
+     */
+    private void deliver(Backup backup) {
+        while (true) {
+            List<String> records = new ArrayList<>();
+            long index = -1;
+            for (Batch batch = backup.queue.poll(); batch != null; batch = backup.queue.poll()) {
+                if (index == -1) {
+                    index = batch.logIndex;
+                }
+                records.addAll(batch.records);
+            }
+
+            if (index == -1) {
+                backup.scheduled.set(false);
+                // another batch might have been queued before the flag was cleared.
+                if (backup.queue.isEmpty() || !backup.scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            long shippedEpoch = getEpoch();
+            try {
+                long backupEpoch = backup.replica.replicate(shippedEpoch, index, records);
+                if (backupEpoch > shippedEpoch) {
+                    fence();
+                    return;
+                }
+            } catch (RemoteException | RuntimeException e) {
+                drop(backup); // lost records can't be sent again, the backup has to join again
+                return;
+            }
+            acknowledge(backup, index + records.size());
+        }
+    }
+
+    // a backup has applied the records up to the given index
+    private synchronized void acknowledge(Backup backup, long appliedIndex) {
+        backup.appliedIndex = appliedIndex;
+        while (!waiters.isEmpty() && waiters.peek().logIndex <= appliedIndex) {
+            waiters.poll().acknowledged.complete(true);
+        }
+    }
+
+    // stops shipping to a backup
+    private synchronized void drop(Backup backup) {
+        backups.remove(backup);
+        backup.queue.clear();
+        backup.scheduled.set(false);
+        if (backups.isEmpty()) {
+            releaseWaiters();
+        }
+    }
+
+    // drops the backups that haven't applied the records up to the given index yet
+    private synchronized void dropBehind(long logIndex) {
+        for (Backup backup : backups) {
+            if (backup.appliedIndex < logIndex) {
+                drop(backup);
+            }
+        }
+    }
+
+    // there is no backup to wait for anymore
+    private void releaseWaiters() {
+        for (Waiter waiter : waiters) {
+            waiter.acknowledged.complete(true);
+        }
+        waiters.clear();
+    }
+
+    // another replica has been promoted, fail all waiting writes and stop shipping
+    private synchronized void fence() {
+        fenced = true;
+        for (Waiter waiter : waiters) {
+            waiter.acknowledged.completeExceptionally(new IOException("Replaced by a primary with a newer epoch."));
+        }
+        waiters.clear();
+        stop();
+    }
+
+    // records logged together, starting at logIndex
+    private record Batch(long logIndex, List<String> records) { }
+
+    // a write that waits until a backup has applied the records up to logIndex
+    private record Waiter(long logIndex, CompletableFuture<Boolean> acknowledged) {
+        Waiter(long logIndex) {
+            this(logIndex, new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * Queue and delivery state of a single backup.
+     */
+    private static class Backup {
+        private final IWarehouseReplica replica;
+        private final Queue<Batch> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile long appliedIndex; // records the backup has applied
+
+        Backup(IWarehouseReplica replica, long appliedIndex) {
+            this.replica = replica;
+            this.appliedIndex = appliedIndex;
+        }
+    }
+}
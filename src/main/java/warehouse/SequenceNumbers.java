@@ -0,0 +1,167 @@
+package warehouse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of the applied sequence numbers per peer, which assures that there are no duplicate
+ * messages per peer. A peer may have several messages in flight that arrive in any order, so every
+ * peer has a sliding window over its last WINDOW sequence numbers with a bit for every applied one.
+ * Sequence numbers below the window count as applied. Every peer has its own entry that doubles as
+ * its lock, so requests of different peers never wait for each other. When several entries are locked
+ * at once, they are locked in ascending peer ID order.
+ */
+public class SequenceNumbers {
+
+    public static final int WINDOW = Long.SIZE; // sequence numbers tracked per peer
+
+    private final ConcurrentMap<Integer, Entry> peerIDToSequenceNumber;
+
+    public SequenceNumbers() {
+        this.peerIDToSequenceNumber = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the entry of a peer. Lock it while checking and updating its sequence numbers.
+     * @param peerID ID of the peer.
+     * @return The entry of the peer.
+     */
+    public Entry get(int peerID) {
+        return peerIDToSequenceNumber.computeIfAbsent(peerID, id -> new Entry());
+    }
+
+    /**
+     * Marks a sequence number of a peer as applied, used when replaying logged mutations.
+     * @param peerID ID of the peer.
+     * @param sequenceNumber The applied sequence number.
+     */
+    public void advance(int peerID, int sequenceNumber) {
+        Entry entry = get(peerID);
+        entry.lock();
+        try {
+            entry.markApplied(sequenceNumber);
+        } finally {
+            entry.unlock();
+        }
+    }
+
+    /**
+     * Sets the window of a peer, used when loading a snapshot.
+     * @param peerID ID of the peer.
+     * @param window The window.
+     */
+    public void restore(int peerID, Window window) {
+        Entry entry = get(peerID);
+        entry.lock();
+        try {
+            entry.restore(window);
+        } finally {
+            entry.unlock();
+        }
+    }
+
+    /**
+     * @return A copy of the window of every peer.
+     */
+    public Map<Integer, Window> toMap() {
+        Map<Integer, Window> map = new HashMap<>();
+        for (var entry : peerIDToSequenceNumber.entrySet()) {
+            entry.getValue().lock();
+            try {
+                map.put(entry.getKey(), entry.getValue().getWindow());
+            } finally {
+                entry.getValue().unlock();
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Applied sequence numbers of a peer.
+     * @param sequenceNumber The highest applied sequence number.
+     * @param applied Bit i is set if sequenceNumber - i has been applied.
+     */
+    public record Window(int sequenceNumber, long applied) {
+
+        /**
+         * @return The window as it is stored in snapshots.
+         */
+        @Override
+        public String toString() {
+            return sequenceNumber + "," + Long.toHexString(applied);
+        }
+
+        /**
+         * @param sequenceNumber The highest applied sequence number.
+         * @param applied The applied bits as written by toString, or null for snapshots that only stored the
+         *                highest sequence number.
+         * @return The window.
+         */
+        public static Window parse(String sequenceNumber, String applied) {
+            return new Window(Integer.parseInt(sequenceNumber), applied == null ? -1L : Long.parseUnsignedLong(applied, 16));
+        }
+    }
+
+    /**
+     * Sequence number state of a single peer.
+     */
+    public static class Entry extends ReentrantLock {
+
+        private int sequenceNumber; // highest applied sequence number
+        private long applied = -1L; // bit i is set if sequenceNumber - i has been applied, all below 1 count as applied
+
+        /**
+         * @return The highest applied sequence number.
+         */
+        public int getSequenceNumber() {
+            return sequenceNumber;
+        }
+
+        /**
+         * @return A copy of the window, to restore it later.
+         */
+        public Window getWindow() {
+            return new Window(sequenceNumber, applied);
+        }
+
+        /**
+         * Sets the window, e.g. to undo messages whose write failed.
+         * @param window The window from getWindow.
+         */
+        public void restore(Window window) {
+            this.sequenceNumber = window.sequenceNumber();
+            this.applied = window.applied();
+        }
+
+        /**
+         * @param sequenceNumber Sequence number of an incoming message.
+         * @return Whether the message has already been applied, or is too old to tell.
+         */
+        public boolean isDuplicate(int sequenceNumber) {
+            if (sequenceNumber > this.sequenceNumber) {
+                return false;
+            }
+            long offset = (long) this.sequenceNumber - sequenceNumber;
+            return offset >= WINDOW || (applied & (1L << offset)) != 0;
+        }
+
+        /**
+         * Marks a message as applied. Moves the window if it is the highest sequence number so far.
+         * @param sequenceNumber Sequence number of the applied message.
+         */
+        public void markApplied(int sequenceNumber) {
+            if (sequenceNumber > this.sequenceNumber) {
+                long shift = (long) sequenceNumber - this.sequenceNumber;
+                applied = shift >= WINDOW ? 0 : applied << shift;
+                this.sequenceNumber = sequenceNumber;
+            }
+            long offset = (long) this.sequenceNumber - sequenceNumber;
+            if (offset < WINDOW) {
+                applied |= 1L << offset;
+            }
+        }
+    }
+}
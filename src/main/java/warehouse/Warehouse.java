@@ -1,183 +1,933 @@
 package warehouse;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.rmi.Remote;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import cache.UpdateMessage;
+import metrics.Histogram;
+import metrics.Metrics;
+import peer.Directory;
 import peer.ReplyStatus;
 import product.Product;
+import transport.Transport;
+import utils.Event;
 import utils.Logger;
 import utils.Messages;
+import utils.Scheduler;
 
-import java.io.BufferedWriter;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-public class Warehouse extends UnicastRemoteObject implements IWarehouse {
+public class Warehouse extends UnicastRemoteObject implements IWarehouseReplica {
 
     public static final int REGISTRY_PORT = 1099;
     private static final String INVENTORY_FILE = "warehouse_inventory.txt";
+    private static final String INVENTORY_LOG_FILE = "warehouse_inventory_log.txt";
     public static final String WAREHOUSE_LOG_FILE = "warehouse_log.txt";
     public static final String WAREHOUSE_NAME = "warehouse";
+    public static final String BACKUP_ARGUMENT = "backup";
+    public static final int SNAPSHOT_INTERVAL = 1000; // number of logged mutations after which the log is compacted
+    public static final int LEASE_DURATION = 5000; // in milliseconds, how long a trader may sell from a lease after it was granted
+    public static final int LEASE_GRACE_PERIOD = 5000; // in milliseconds, unused stock of an expired lease is reclaimed afterwards
+    private static final String FENCED_RECORD = "fenced"; // logged when the primary steps down
+    public static final int PROMOTION_TIMEOUT = 5 * LogShipper.REPLICATION_INTERVAL; // in milliseconds, a backup is only promoted after missing the keep-alives this long
 
-    public static final String STATS_FILE = "stats3.txt";
+    // metrics of the warehouse process
+    private static final Histogram BUY_LATENCY = Metrics.histogram("warehouse.buy");
+    private static final Histogram SELL_LATENCY = Metrics.histogram("warehouse.sell");
+    private static final Histogram BATCH_LATENCY = Metrics.histogram("warehouse.batch");
+    private static final Histogram LOOKUP_LATENCY = Metrics.histogram("warehouse.lookup");
+    private static final Histogram LEASE_BUY_LATENCY = Metrics.histogram("warehouse.lease.buy");
+    private static final LongAdder OVERSOLD = Metrics.counter("warehouse.oversold");
+    private static final LongAdder[] REPLY_STATUS_COUNTS = Metrics.counters("warehouse.reply", ReplyStatus.class);
 
-    public static void main(String[] args) throws RemoteException {
+    public static void main(String[] args) throws IOException, NotBoundException {
         Registry registry = LocateRegistry.getRegistry("127.0.0.1", REGISTRY_PORT);
-        registry.rebind(WAREHOUSE_NAME, new Warehouse());
+
+        // pass "backup <backup_id>" to start a backup of the primary warehouse
+        if (args.length > 1 && args[0].equals(BACKUP_ARGUMENT)) {
+            int backupID = Integer.parseInt(args[1]);
+            Warehouse backup = new Warehouse(false, "warehouse_backup" + backupID + "_inventory.txt", "warehouse_backup" + backupID + "_inventory_log.txt", false);
+            registry.rebind(WAREHOUSE_NAME + "_backup" + backupID, backup);
+            ((IWarehouseReplica) Directory.findWarehouse(registry)).addBackup(backup);
+            Metrics.startReporting("warehouse_backup" + backupID);
+            return;
+        }
+
+        // pass "recover" to rebuild the inventory of a crashed warehouse instead of starting empty
+        boolean recover = args.length > 0 && args[0].equals("recover");
+        Warehouse warehouse = new Warehouse(recover);
+        Transport.get().exportWarehouse(warehouse);
+        registry.rebind(WAREHOUSE_NAME, warehouse);
+        Directory.announce(registry, warehouse);
+        Metrics.startReporting("warehouse");
     }
 
     // CLASS
-    private final Map<Integer, Integer> peerIDtoSequenceNumber; // assures that there are no duplicate messages per peer.
+    private final Map<Product, AtomicInteger> inventory; // one counter per product, so different products never block each other.
+    private final SequenceNumbers peerIDtoSequenceNumber; // assures that there are no duplicate messages per peer.
+    private final InventoryLog inventoryLog;
+    private final ReadWriteLock snapshotLock; // mutations share the read lock, compaction takes the write lock.
+    private final AtomicInteger recordsSinceSnapshot;
+    private final Map<Integer, Map<Product, Lease>> leases; // outstanding leases per trader and product.
+    private final LogShipper logShipper; // ships the log records of the primary to the backups.
+    private volatile boolean primary; // backups only serve reads
+    private volatile IWarehouseReplica primaryReplica; // primary of a backup
+    private long appliedIndex; // log records a backup has applied
+    private volatile long epoch; // increases with every promotion, a primary with an older epoch steps down
+    private volatile boolean fenced; // stepped down as primary, the log may hold writes the new primary doesn't know
+    private volatile long lastSync; // when a backup last heard from the primary, from Scheduler.nanoTime()
+    private ScheduledFuture<?> leaseReclaimTask; // reclaims expired leases on the primary, guarded by this
+    private volatile boolean crashed;
 
     public Warehouse() throws RemoteException {
+        this(false);
+    }
+
+    public Warehouse(boolean recover) throws RemoteException {
+        this(recover, INVENTORY_FILE, INVENTORY_LOG_FILE);
+    }
+
+    public Warehouse(boolean recover, String inventoryFile, String inventoryLogFile) throws RemoteException {
+        this(recover, inventoryFile, inventoryLogFile, true);
+    }
+
+    public Warehouse(boolean recover, String inventoryFile, String inventoryLogFile, boolean primary) throws RemoteException {
         super();
-        resetInventory();
-        this.peerIDtoSequenceNumber = new HashMap<>();
+        this.inventory = new EnumMap<>(Product.class);
+        for (Product product : Product.values()) {
+            this.inventory.put(product, new AtomicInteger());
+        }
+        this.peerIDtoSequenceNumber = new SequenceNumbers();
+        this.inventoryLog = new InventoryLog(inventoryFile, inventoryLogFile);
+        this.snapshotLock = new ReentrantReadWriteLock();
+        this.recordsSinceSnapshot = new AtomicInteger();
+        this.leases = new HashMap<>();
+        this.logShipper = new LogShipper();
+        this.primary = primary;
+        this.appliedIndex = 0;
+        this.crashed = false;
+        try {
+            if (recover) {
+                recoverInventory();
+                if (primary) {
+                    startLeaseReclaim();
+                }
+            } else {
+                inventoryLog.reset();
+            }
+        } catch (IOException e) {
+            throw new RemoteException("Could not initialize inventory.", e);
+        }
+    }
+
+    @Override
+    public int lookup(Product product) throws RemoteException {
+
+        // crash simulation
+        checkNotCrashed();
+
+        long startTime = Scheduler.nanoTime();
+        int stock = inventory.get(product).get();
+        LOOKUP_LATENCY.recordSince(startTime);
+        return stock;
+    }
+
+    @Override
+    public ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+        checkPrimary();
+        long startTime = Scheduler.nanoTime();
+        ReplyStatus replyStatus = process(List.of(updateMessage), new int[] { -updateMessage.amount() })[0];
+        BUY_LATENCY.recordSince(startTime);
+        return replyStatus;
+    }
+
+    @Override
+    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+        checkPrimary();
+        long startTime = Scheduler.nanoTime();
+        ReplyStatus replyStatus = process(List.of(updateMessage), new int[] { updateMessage.amount() })[0];
+        SELL_LATENCY.recordSince(startTime);
+        return replyStatus;
     }
 
-    private void resetInventory() {
+    @Override
+    public ReplyStatus[] batch(List<UpdateMessage> updateMessages) throws RemoteException {
+        checkPrimary();
+        int[] deltas = new int[updateMessages.size()];
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = updateMessages.get(i).amount(); // negative amounts are buys, positive amounts are sells.
+        }
+        long startTime = Scheduler.nanoTime();
+        ReplyStatus[] replyStatuses = process(updateMessages, deltas);
+        BATCH_LATENCY.recordSince(startTime);
+        return replyStatuses;
+    }
+
+    @Override
+    public int acquireLease(int traderID, Product product, int amount) throws RemoteException {
+        checkPrimary();
+        int granted;
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (leases) {
+                // take as much as possible, but not more than requested.
+                AtomicInteger stock = inventory.get(product);
+                granted = takeUpTo(stock, amount);
+                if (granted == 0) {
+                    return 0;
+                }
+
+                // log the lease, put the products back if that fails.
+                try {
+                    log(List.of("lease," + traderID + "," + product + "," + granted));
+                } catch (IOException e) {
+                    stock.addAndGet(granted);
+                    return 0;
+                }
+                // a new grant renews the whole lease of the product
+                Lease lease = leases.computeIfAbsent(traderID, id -> new EnumMap<>(Product.class)).computeIfAbsent(product, p -> new Lease());
+                lease.amount += granted;
+                lease.expiresAt = Scheduler.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LEASE_DURATION);
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        startLeaseReclaim();
+        Logger.log(Messages.getLeaseGrantedMessage(traderID, product, granted), WAREHOUSE_LOG_FILE);
+        compactIfNeeded();
+        return granted;
+    }
+
+    @Override
+    public ReplyStatus[] buyFromLease(int traderID, List<UpdateMessage> updateMessages) throws RemoteException {
+        checkPrimary();
+        long startTime = Scheduler.nanoTime();
+        ReplyStatus[] replyStatuses;
+        snapshotLock.readLock().lock();
+        try {
+            TreeMap<Integer, SequenceNumbers.Entry> entries = lockPeers(updateMessages);
+            try {
+                synchronized (leases) {
+                    replyStatuses = applyLeaseBuys(traderID, updateMessages, entries);
+                }
+            } finally {
+                unlockPeers(entries);
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        for (ReplyStatus replyStatus : replyStatuses) {
+            REPLY_STATUS_COUNTS[replyStatus.ordinal()].increment();
+        }
+        LEASE_BUY_LATENCY.recordSince(startTime);
+        return replyStatuses;
+    }
+
+    @Override
+    public void releaseLease(int traderID, Product product, int unused) throws RemoteException {
+        checkPrimary();
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (leases) {
+                // never release more than has been leased.
+                Lease lease = leases.getOrDefault(traderID, Map.of()).get(product);
+                unused = lease == null ? 0 : Math.max(0, Math.min(unused, lease.amount));
+                if (unused == 0) {
+                    return;
+                }
+
+                try {
+                    log(List.of("release," + traderID + "," + product + "," + unused));
+                } catch (IOException e) {
+                    throw new RemoteException("Could not release lease.", e);
+                }
+                lease.amount -= unused;
+                inventory.get(product).addAndGet(unused);
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        Logger.log(Messages.getLeaseReleasedMessage(traderID, product, unused), WAREHOUSE_LOG_FILE);
+        compactIfNeeded();
+    }
+
+    /**
+     * Returns the unused stock of leases that expired more than LEASE_GRACE_PERIOD ago to the inventory, e.g.
+     * the stock of a trader that crashed while holding a lease. Buys from a reclaimed lease are rejected.
+     */
+    public void reclaimExpiredLeases() {
+        if (!primary || crashed) {
+            return;
+        }
+        List<String> records = new ArrayList<>();
+        snapshotLock.readLock().lock();
         try {
-            writeInventoryFile(new HashMap<>());
-        } catch (IOException ignore) {}
+            synchronized (leases) {
+                long deadline = Scheduler.nanoTime() - TimeUnit.MILLISECONDS.toNanos(LEASE_GRACE_PERIOD);
+                List<Lease> expiredLeases = new ArrayList<>();
+                List<Product> products = new ArrayList<>();
+                for (var traderEntry : leases.entrySet()) {
+                    for (var entry : traderEntry.getValue().entrySet()) {
+                        if (entry.getValue().amount > 0 && entry.getValue().expiresAt - deadline < 0) {
+                            records.add("release," + traderEntry.getKey() + "," + entry.getKey() + "," + entry.getValue().amount);
+                            expiredLeases.add(entry.getValue());
+                            products.add(entry.getKey());
+                        }
+                    }
+                }
+                if (records.isEmpty()) {
+                    return;
+                }
+
+                try {
+                    log(records);
+                } catch (IOException e) {
+                    return; // tried again with the next run
+                }
+                for (int i = 0; i < expiredLeases.size(); i++) {
+                    inventory.get(products.get(i)).addAndGet(expiredLeases.get(i).amount);
+                    expiredLeases.get(i).amount = 0;
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        for (String record : records) {
+            String[] parts = record.split(",");
+            Logger.log(Messages.getLeaseReclaimedMessage(Integer.parseInt(parts[1]), Product.valueOf(parts[2]), Integer.parseInt(parts[3])), WAREHOUSE_LOG_FILE);
+        }
+        compactIfNeeded();
+    }
+
+    // starts reclaiming expired leases, once
+    private synchronized void startLeaseReclaim() {
+        if (leaseReclaimTask == null && !crashed) {
+            leaseReclaimTask = Scheduler.scheduleAtFixedRate(this::reclaimExpiredLeases, LEASE_GRACE_PERIOD, LEASE_GRACE_PERIOD / 2, TimeUnit.MILLISECONDS);
+        }
     }
 
+    // REPLICATION
+
     @Override
-    public synchronized int lookup(Product product) throws RemoteException {
-        // read inventory file and return the count of itemType.
+    public void addBackup(IWarehouseReplica backup) throws RemoteException {
+        checkPrimary();
+        long logIndex;
+        // no mutations while the snapshot is installed, so the backup gets every later record from the shipper
+        snapshotLock.writeLock().lock();
         try {
-            Map<Product, Integer> inventory = readInventoryFile();
-            return inventory.getOrDefault(product, 0);
-        } catch (IOException ignore) {}
-        return 0;
+            logIndex = logShipper.getLogIndex();
+            backup.install(this, epoch, logIndex, getSnapshot());
+            logShipper.add(backup);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        Logger.log(Messages.getBackupAddedMessage(logIndex), WAREHOUSE_LOG_FILE);
     }
 
     @Override
-    public synchronized ReplyStatus buy(UpdateMessage updateMessage) throws RemoteException {
+    public List<IWarehouseReplica> getBackups() throws RemoteException {
+        checkNotCrashed();
+        return logShipper.getBackups();
+    }
 
-        // check if sequence number is valid
-        if (updateMessage.sequenceNumber() <= peerIDtoSequenceNumber.getOrDefault(updateMessage.peerID(), 0)) {
-            return ReplyStatus.LOW_SEQUENCE_NUMBER;
+    @Override
+    public void install(IWarehouseReplica primary, long epoch, long logIndex, List<String> snapshot) throws RemoteException {
+        checkBackup();
+        snapshotLock.writeLock().lock();
+        try {
+            if (epoch < this.epoch) {
+                throw new RemoteException("Primary of epoch " + epoch + " has been replaced.");
+            }
+            for (AtomicInteger stock : inventory.values()) {
+                stock.set(0);
+            }
+            synchronized (leases) {
+                leases.clear();
+            }
+            for (String line : snapshot) {
+                applySnapshotLine(line);
+            }
+            inventoryLog.compact(snapshot);
+            recordsSinceSnapshot.set(0);
+            this.appliedIndex = logIndex;
+            this.epoch = epoch;
+            this.fenced = false;
+            this.primaryReplica = primary;
+            this.lastSync = Scheduler.nanoTime();
+        } catch (IOException e) {
+            throw new RemoteException("Could not install snapshot.", e);
+        } finally {
+            snapshotLock.writeLock().unlock();
         }
+    }
 
-        // decrement the count of itemType in the inventory file.
+    @Override
+    public long replicate(long epoch, long logIndex, List<String> records) throws RemoteException {
+        checkNotCrashed();
+        snapshotLock.writeLock().lock();
         try {
-            Map<Product, Integer> inventory = readInventoryFile();
-            int currentStock = inventory.getOrDefault(updateMessage.product(), 0);
-            // check if item is in stock
-            if (currentStock < updateMessage.amount()) {
-                Logger.log(Messages.getOversoldMessage(), WAREHOUSE_LOG_FILE);
-                return ReplyStatus.NOT_IN_STOCK;
+            if (epoch < this.epoch) {
+                return this.epoch; // the sender has been replaced by a newer primary
+            }
+            checkBackup();
+            if (logIndex != appliedIndex) {
+                throw new RemoteException("Expected log record " + appliedIndex + ", got " + logIndex + ".");
             }
-            // update inventory and save to file
-            inventory.put(updateMessage.product(), currentStock - updateMessage.amount());
-            Logger.log(Messages.getWarehouseBuyMessage(updateMessage.product(), updateMessage.amount()), WAREHOUSE_LOG_FILE);
-            writeInventoryFile(inventory);
+            if (!records.isEmpty()) {
+                inventoryLog.append(records);
+                for (String record : records) {
+                    replayRecord(record);
+                }
+                appliedIndex += records.size();
+            }
+            lastSync = Scheduler.nanoTime();
         } catch (IOException e) {
-            return ReplyStatus.ERROR_DURING_WRITE;
+            throw new RemoteException("Could not log replicated records.", e);
+        } finally {
+            snapshotLock.writeLock().unlock();
         }
+        compactIfNeeded();
+        return epoch;
+    }
 
-        // update sequence number
-        peerIDtoSequenceNumber.put(updateMessage.peerID(), updateMessage.sequenceNumber());
+    @Override
+    public long getLogIndex() throws RemoteException {
+        checkNotCrashed();
+        if (primary) {
+            return logShipper.getLogIndex();
+        }
+        snapshotLock.readLock().lock();
+        try {
+            return appliedIndex;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
 
-        return ReplyStatus.SUCCESSFUL;
+    @Override
+    public int lookup(Product product, long maxStaleness) throws RemoteException {
+        checkNotCrashed();
+        if (!primary && Scheduler.nanoTime() - lastSync > TimeUnit.MILLISECONDS.toNanos(maxStaleness)) {
+            return -1;
+        }
+        long startTime = Scheduler.nanoTime();
+        int stock = inventory.get(product).get();
+        LOOKUP_LATENCY.recordSince(startTime);
+        return stock;
+    }
+
+    @Override
+    public synchronized boolean promote() throws RemoteException {
+        checkNotCrashed();
+        if (primary) {
+            return true;
+        }
+        if (primaryReplica == null) {
+            return false; // never got a snapshot
+        }
+        if (Scheduler.nanoTime() - lastSync < TimeUnit.MILLISECONDS.toNanos(PROMOTION_TIMEOUT)) {
+            return false; // the primary sent a keep-alive recently
+        }
+        try {
+            primaryReplica.getLogIndex();
+            return false; // the primary is alive, don't create a second one
+        } catch (RemoteException ignored) {}
+
+        snapshotLock.writeLock().lock();
+        try {
+            epoch++;
+            logShipper.continueAt(appliedIndex, epoch);
+            primary = true;
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        startLeaseReclaim();
+        Logger.log(Messages.getWarehousePromotedMessage(getLogIndex(), epoch), WAREHOUSE_LOG_FILE);
+        return true;
     }
 
+    // Afterwards every call fails and no more records are shipped
     @Override
-    public synchronized ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+    public void crash() {
+        crashed = true;
+        logShipper.stop();
+        synchronized (this) {
+            if (leaseReclaimTask != null) {
+                leaseReclaimTask.cancel(false);
+            }
+        }
+    }
+
+    // crash simulation
+    private void checkNotCrashed() throws RemoteException {
+        if (crashed) {
+            throw new RemoteException();
+        }
+    }
+
+    // only the primary takes writes
+    private void checkPrimary() throws RemoteException {
+        checkNotCrashed();
+        if (!primary) {
+            throw new RemoteException("Warehouse is a backup.");
+        }
+    }
+
+    // only backups take log records of a primary
+    private void checkBackup() throws RemoteException {
+        checkNotCrashed();
+        if (primary) {
+            throw new RemoteException("Warehouse is the primary.");
+        }
+    }
+
+    /**
+     * Applies a batch of mutations with a single write to the inventory log.
+     * @param updateMessages Messages containing product type, peer ID and sequence number.
+     * @param deltas Change of the product amount per message. Negative for buys, positive for sells.
+     * @return The reply status of every message.
+     */
+    private ReplyStatus[] process(List<UpdateMessage> updateMessages, int[] deltas) {
+        ReplyStatus[] replyStatuses;
+        snapshotLock.readLock().lock();
+        try {
+            TreeMap<Integer, SequenceNumbers.Entry> entries = lockPeers(updateMessages);
+            try {
+                replyStatuses = apply(updateMessages, deltas, entries);
+            } finally {
+                unlockPeers(entries);
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        for (ReplyStatus replyStatus : replyStatuses) {
+            REPLY_STATUS_COUNTS[replyStatus.ordinal()].increment();
+        }
+        return replyStatuses;
+    }
+
+    /**
+     * Locks the sequence numbers of every involved peer in ascending order, so batches never deadlock each other.
+     * @param updateMessages Messages of the peers.
+     * @return The locked entries by peer ID.
+     */
+    private TreeMap<Integer, SequenceNumbers.Entry> lockPeers(List<UpdateMessage> updateMessages) {
+        TreeMap<Integer, SequenceNumbers.Entry> entries = new TreeMap<>();
+        for (UpdateMessage updateMessage : updateMessages) {
+            entries.computeIfAbsent(updateMessage.peerID(), peerIDtoSequenceNumber::get);
+        }
+        for (SequenceNumbers.Entry entry : entries.values()) {
+            entry.lock();
+        }
+        return entries;
+    }
+
+    private static void unlockPeers(Map<Integer, SequenceNumbers.Entry> entries) {
+        for (SequenceNumbers.Entry entry : entries.values()) {
+            entry.unlock();
+        }
+    }
 
-        // check if sequence number is valid
-        if (updateMessage.sequenceNumber() <= peerIDtoSequenceNumber.getOrDefault(updateMessage.peerID(), 0)) {
-            return ReplyStatus.LOW_SEQUENCE_NUMBER;
+    /**
+     * Records buys a trader served from its leases, logs them with a single write and takes them out of the lease.
+     * The trader has handed out the products already, so a buy the lease doesn't cover anymore, e.g. because the
+     * lease was reclaimed before the buy was reported, is taken from the inventory instead.
+     * Must be called while holding the locks of all involved peers and the lock of the leases.
+     * @param traderID ID of the trader that holds the leases.
+     * @param updateMessages The buys.
+     * @param entries Sequence number entries of the involved peers.
+     * @return The reply status of every buy.
+     */
+    private ReplyStatus[] applyLeaseBuys(int traderID, List<UpdateMessage> updateMessages, Map<Integer, SequenceNumbers.Entry> entries) {
+        ReplyStatus[] replyStatuses = new ReplyStatus[updateMessages.size()];
+        Map<Integer, SequenceNumbers.Window> previousWindows = new HashMap<>();
+        Map<Product, Lease> traderLeases = leases.computeIfAbsent(traderID, id -> new EnumMap<>(Product.class));
+        Map<Product, Integer> previousAmounts = new EnumMap<>(Product.class);
+        int[] fromInventory = new int[replyStatuses.length];
+        List<String> records = new ArrayList<>();
+
+        for (int i = 0; i < replyStatuses.length; i++) {
+            UpdateMessage updateMessage = updateMessages.get(i);
+            SequenceNumbers.Entry sequenceNumber = entries.get(updateMessage.peerID());
+            if (sequenceNumber.isDuplicate(updateMessage.sequenceNumber())) {
+                replyStatuses[i] = ReplyStatus.LOW_SEQUENCE_NUMBER;
+                continue;
+            }
+            Lease lease = traderLeases.computeIfAbsent(updateMessage.product(), product -> new Lease());
+            int fromLease = Math.min(lease.amount, updateMessage.amount());
+            if (fromLease < updateMessage.amount()) {
+                fromInventory[i] = takeUpTo(inventory.get(updateMessage.product()), updateMessage.amount() - fromLease);
+                if (fromLease + fromInventory[i] < updateMessage.amount()) {
+                    Logger.event(Event.OVERSOLD, updateMessage.peerID(), traderID, updateMessage.product(), updateMessage.amount() - fromLease - fromInventory[i], WAREHOUSE_LOG_FILE);
+                    OVERSOLD.increment();
+                }
+            }
+
+            previousAmounts.putIfAbsent(updateMessage.product(), lease.amount);
+            lease.amount -= fromLease;
+            records.add("sold," + traderID + "," + getLogRecord(updateMessage, -fromLease) + "," + -fromInventory[i]);
+            previousWindows.putIfAbsent(updateMessage.peerID(), sequenceNumber.getWindow());
+            sequenceNumber.markApplied(updateMessage.sequenceNumber());
+            replyStatuses[i] = ReplyStatus.SUCCESSFUL;
         }
 
-        // increment the count of itemType in the inventory and write to file.
+        if (records.isEmpty()) {
+            return replyStatuses;
+        }
+
+        // log all buys at once, undo them if that fails.
         try {
-            Map<Product, Integer> inventory = readInventoryFile();
-            inventory.put(updateMessage.product(), inventory.getOrDefault(updateMessage.product(), 0) + updateMessage.amount());
-            Logger.log(Messages.getWarehouseSellMessage(updateMessage.product(), updateMessage.amount()), WAREHOUSE_LOG_FILE);
-            writeInventoryFile(inventory);
+            log(records);
         } catch (IOException e) {
-            return ReplyStatus.ERROR_DURING_WRITE;
+            for (var entry : previousAmounts.entrySet()) {
+                traderLeases.get(entry.getKey()).amount = entry.getValue();
+            }
+            for (var entry : previousWindows.entrySet()) {
+                entries.get(entry.getKey()).restore(entry.getValue());
+            }
+            for (int i = 0; i < replyStatuses.length; i++) {
+                if (replyStatuses[i] == ReplyStatus.SUCCESSFUL) {
+                    inventory.get(updateMessages.get(i).product()).addAndGet(fromInventory[i]);
+                    replyStatuses[i] = ReplyStatus.ERROR_DURING_WRITE;
+                }
+            }
+            return replyStatuses;
+        }
+
+        for (int i = 0; i < replyStatuses.length; i++) {
+            if (replyStatuses[i] == ReplyStatus.SUCCESSFUL) {
+                UpdateMessage updateMessage = updateMessages.get(i);
+                Logger.event(Event.WAREHOUSE_BUY, updateMessage.peerID(), traderID, updateMessage.product(), updateMessage.amount(), WAREHOUSE_LOG_FILE);
+            }
+        }
+        return replyStatuses;
+    }
+
+    /**
+     * Validates the messages, logs the valid ones with a single write and applies them afterwards.
+     * Buys take their products out of stock before logging, so concurrent buys can't oversell. Sells
+     * are added to the stock after logging, so a failed write never makes products available.
+     * Must be called while holding the locks of all involved peers.
+     * @param updateMessages Messages containing product type, peer ID and sequence number.
+     * @param deltas Change of the product amount per message. Negative for buys, positive for sells.
+     * @param entries Sequence number entries of the involved peers.
+     * @return The reply status of every message.
+     */
+    private ReplyStatus[] apply(List<UpdateMessage> updateMessages, int[] deltas, Map<Integer, SequenceNumbers.Entry> entries) {
+        ReplyStatus[] replyStatuses = new ReplyStatus[updateMessages.size()];
+        Map<Integer, SequenceNumbers.Window> previousWindows = new HashMap<>();
+        List<String> records = new ArrayList<>();
+
+        for (int i = 0; i < replyStatuses.length; i++) {
+            UpdateMessage updateMessage = updateMessages.get(i);
+            SequenceNumbers.Entry sequenceNumber = entries.get(updateMessage.peerID());
+
+            // check if sequence number is valid
+            if (sequenceNumber.isDuplicate(updateMessage.sequenceNumber())) {
+                replyStatuses[i] = ReplyStatus.LOW_SEQUENCE_NUMBER;
+                continue;
+            }
+
+            // take the products out of stock, fails if another request took them first.
+            if (deltas[i] < 0 && !tryDecrement(inventory.get(updateMessage.product()), -deltas[i])) {
+                Logger.event(Event.OVERSOLD, updateMessage.peerID(), -1, updateMessage.product(), -deltas[i], WAREHOUSE_LOG_FILE);
+                OVERSOLD.increment();
+                replyStatuses[i] = ReplyStatus.NOT_IN_STOCK;
+                continue;
+            }
+
+            records.add(getLogRecord(updateMessage, deltas[i]));
+            previousWindows.putIfAbsent(updateMessage.peerID(), sequenceNumber.getWindow());
+            sequenceNumber.markApplied(updateMessage.sequenceNumber());
+            replyStatuses[i] = ReplyStatus.SUCCESSFUL;
+        }
+
+        if (records.isEmpty()) {
+            return replyStatuses;
+        }
+
+        // log all mutations at once, undo the batch if that fails.
+        try {
+            log(records);
+        } catch (IOException e) {
+            for (int i = 0; i < replyStatuses.length; i++) {
+                if (replyStatuses[i] == ReplyStatus.SUCCESSFUL) {
+                    if (deltas[i] < 0) {
+                        inventory.get(updateMessages.get(i).product()).addAndGet(-deltas[i]);
+                    }
+                    replyStatuses[i] = ReplyStatus.ERROR_DURING_WRITE;
+                }
+            }
+            for (var entry : previousWindows.entrySet()) {
+                entries.get(entry.getKey()).restore(entry.getValue());
+            }
+            return replyStatuses;
+        }
+
+        for (int i = 0; i < replyStatuses.length; i++) {
+            if (replyStatuses[i] != ReplyStatus.SUCCESSFUL) {
+                continue;
+            }
+            UpdateMessage updateMessage = updateMessages.get(i);
+            if (deltas[i] < 0) {
+                Logger.event(Event.WAREHOUSE_BUY, updateMessage.peerID(), -1, updateMessage.product(), -deltas[i], WAREHOUSE_LOG_FILE);
+            } else {
+                inventory.get(updateMessage.product()).addAndGet(deltas[i]);
+                Logger.event(Event.WAREHOUSE_SELL, updateMessage.peerID(), -1, updateMessage.product(), deltas[i], WAREHOUSE_LOG_FILE);
+            }
         }
+        return replyStatuses;
+    }
+
+    /**
+     * Decrements the stock without locking.
+     * @param stock Stock of a product.
+     * @param amount Amount to remove.
+     * @return Whether there was enough stock.
+     */
+    private static boolean tryDecrement(AtomicInteger stock, int amount) {
+        while (true) {
+            int currentStock = stock.get();
+            if (currentStock < amount) {
+                return false;
+            }
+            if (stock.compareAndSet(currentStock, currentStock - amount)) {
+                return true;
+            }
+        }
+    }
 
-        // update sequence number
-        peerIDtoSequenceNumber.put(updateMessage.peerID(), updateMessage.sequenceNumber());
-        return ReplyStatus.SUCCESSFUL;
+    /**
+     * Takes as much stock as possible without locking, but not more than the given amount.
+     * @param stock Stock of a product.
+     * @param amount Maximum amount to remove.
+     * @return The removed amount.
+     */
+    private static int takeUpTo(AtomicInteger stock, int amount) {
+        while (true) {
+            int currentStock = stock.get();
+            int taken = Math.max(0, Math.min(currentStock, amount));
+            if (taken == 0 || stock.compareAndSet(currentStock, currentStock - taken)) {
+                return taken;
+            }
+        }
     }
 
     // FILE MANAGEMENT
 
     /**
-     * Takes the values of the inventory map and writes it into the warehouse file.
-     * @param inventory The inventory of the warehouse.
+     * Appends records to the write-ahead log and waits until a backup has applied them. A primary that has been
+     * replaced steps down. The records stay in its own log, the caller undoes them in memory and the log is marked
+     * as fenced, so the replica can't be recovered from it anymore.
+     * @param records The records.
      */
-    private void writeInventoryFile(Map<Product, Integer> inventory) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        for (var entry : inventory.entrySet()) {
-            sb
-                    .append(entry.getKey())
-                    .append(",")
-                    .append(entry.getValue())
-                    .append("\n");
+    private void log(List<String> records) throws IOException {
+        if (fenced) {
+            throw new IOException("Replaced by a primary with a newer epoch.");
+        }
+        inventoryLog.append(records);
+        recordsSinceSnapshot.addAndGet(records.size());
+        try {
+            logShipper.ship(records);
+        } catch (IOException e) {
+            stepDown();
+            throw e;
         }
-        createFile(sb.toString());
+    }
+
+    // another replica has been promoted. Writes the new primary doesn't know may be logged already, so the log
+    // must not be used for a recovery anymore.
+    private void stepDown() {
+        primary = false;
+        fenced = true;
+        try {
+            inventoryLog.append(List.of(FENCED_RECORD));
+        } catch (IOException ignored) {} // the replica can still be recovered then, like before a promotion
+        Logger.log(Messages.getWarehouseFencedMessage(epoch), WAREHOUSE_LOG_FILE);
     }
 
     /**
-     * Reads the contents of the warehouse file and creates a HashMap.
-     * @return A map containing products and their respective amounts.
+     * Creates the write-ahead log record of a mutation. A record has the format peerID,sequenceNumber,product,delta.
+     * @param updateMessage The message that causes the mutation.
+     * @param delta Change of the product amount.
+     * @return The log record.
      */
-    private Map<Product, Integer> readInventoryFile() throws IOException {
-        Map<Product, Integer> inventory = new HashMap<>();
+    private static String getLogRecord(UpdateMessage updateMessage, int delta) {
+        return updateMessage.peerID() + "," + updateMessage.sequenceNumber() + "," + updateMessage.product() + "," + delta;
+    }
 
-        String content = readFile();
-        for (String line : content.split("\n")) {
-            if (line.isBlank()) {
-                continue;
+    /**
+     * Replaces the write-ahead log by a snapshot of the inventory once enough mutations have been logged.
+     * Mutations are paused while the snapshot is taken. A failed compaction is not fatal, because the log
+     * still contains every mutation.
+     */
+    private void compactIfNeeded() {
+        if (recordsSinceSnapshot.get() < SNAPSHOT_INTERVAL) {
+            return;
+        }
+        snapshotLock.writeLock().lock();
+        try {
+            if (recordsSinceSnapshot.get() >= SNAPSHOT_INTERVAL) { // another thread might have compacted already
+                inventoryLog.compact(getSnapshot());
+                recordsSinceSnapshot.set(0);
             }
-            String[] parts = line.split(",");
-            Product product = Product.valueOf(parts[0].toUpperCase());
-            int amount = Integer.parseInt(parts[1]);
-            inventory.put(product, amount);
+        } catch (IOException ignore) {
+        } finally {
+            snapshotLock.writeLock().unlock();
         }
+    }
 
-        return inventory;
+    /**
+     * Creates the snapshot lines. Products are stored as product,amount, sequence numbers as peer,peerID,sequenceNumber,appliedBits
+     * and outstanding leases as lease,traderID,product,amount,remainingMillis.
+     * @return The lines of the snapshot.
+     */
+    private List<String> getSnapshot() {
+        List<String> lines = new ArrayList<>();
+        for (var entry : inventory.entrySet()) {
+            lines.add(entry.getKey() + "," + entry.getValue().get());
+        }
+        for (var entry : peerIDtoSequenceNumber.toMap().entrySet()) {
+            lines.add("peer," + entry.getKey() + "," + entry.getValue());
+        }
+        if (fenced) {
+            lines.add(FENCED_RECORD);
+        }
+        synchronized (leases) {
+            long now = Scheduler.nanoTime();
+            for (var traderEntry : leases.entrySet()) {
+                for (var entry : traderEntry.getValue().entrySet()) {
+                    Lease lease = entry.getValue();
+                    if (lease.amount > 0) {
+                        long remaining = Math.max(0, TimeUnit.NANOSECONDS.toMillis(lease.expiresAt - now));
+                        lines.add("lease," + traderEntry.getKey() + "," + entry.getKey() + "," + lease.amount + "," + remaining);
+                    }
+                }
+            }
+        }
+        return lines;
     }
 
     /**
-     * Writes a string to text file to save trader's current state.
-     * @param content Content to write to file.
+     * Rebuilds inventory and sequence numbers from the snapshot and the tail of the write-ahead log.
+     * An incomplete last record, e.g. caused by a crash during the write, is skipped.
+     * @throws IOException If the replica stepped down as primary, it has to join the new primary as a backup instead.
      */
-    private void createFile(String content) throws IOException {
-        BufferedWriter writer = Files.newBufferedWriter(Paths.get(INVENTORY_FILE), StandardCharsets.UTF_8);
-        writer.write(content);
-        writer.close();
+    private void recoverInventory() throws IOException {
+        List<String> snapshotLines = new ArrayList<>();
+        List<String> logLines = new ArrayList<>();
+        inventoryLog.recover(snapshotLines, logLines);
+
+        for (String line : snapshotLines) {
+            applySnapshotLine(line);
+        }
+        for (String line : logLines) {
+            replayRecord(line);
+        }
+        if (fenced) {
+            throw new IOException("Warehouse has been replaced by a newer primary, start it as a backup instead.");
+        }
     }
 
     /**
-     * Reads the contexts of text file into string.
-     * @return Content of the file.
+     * Applies a line of a snapshot.
+     * @param line The line.
      */
-    private String readFile() throws IOException {
-        StringBuilder text = new StringBuilder();
-        BufferedReader reader = Files.newBufferedReader(Paths.get(INVENTORY_FILE), StandardCharsets.UTF_8);
-        for (String line = reader.readLine(); line != null; line = reader.readLine())
-            text.append(line).append("\n");
+    private void applySnapshotLine(String line) {
+        String[] parts = line.split(",");
+        if (parts[0].equals(FENCED_RECORD)) {
+            fenced = true;
+        } else if (parts[0].equals("peer")) {
+            peerIDtoSequenceNumber.restore(Integer.parseInt(parts[1]),
+                    SequenceNumbers.Window.parse(parts[2], parts.length > 3 ? parts[3] : null));
+        } else if (parts[0].equals("lease")) {
+            // the time the warehouse was down is unknown, the remaining time starts again
+            Lease lease = new Lease();
+            lease.amount = Integer.parseInt(parts[3]);
+            lease.expiresAt = Scheduler.nanoTime() + TimeUnit.MILLISECONDS.toNanos(parts.length > 4 ? Long.parseLong(parts[4]) : LEASE_DURATION);
+            synchronized (leases) {
+                leases.computeIfAbsent(Integer.parseInt(parts[1]), id -> new EnumMap<>(Product.class)).put(Product.valueOf(parts[2]), lease);
+            }
+        } else {
+            inventory.get(Product.valueOf(parts[0].toUpperCase())).set(Integer.parseInt(parts[1]));
+        }
+    }
 
-        reader.close();
+    /**
+     * Applies a record of the write-ahead log. Incomplete records are skipped.
+     * @param line The record.
+     */
+    private void replayRecord(String line) {
+        String[] parts = line.split(",");
+        try {
+            if (parts[0].equals(FENCED_RECORD)) {
+                fenced = true;
+                return;
+            }
+            if (parts[0].equals("lease") || parts[0].equals("release") || parts[0].equals("sold")) {
+                replayLeaseRecord(parts);
+                recordsSinceSnapshot.incrementAndGet();
+                return;
+            }
+            int peerID = Integer.parseInt(parts[0]);
+            int sequenceNumber = Integer.parseInt(parts[1]);
+            Product product = Product.valueOf(parts[2]);
+            int delta = Integer.parseInt(parts[3]);
+            inventory.get(product).addAndGet(delta);
+            peerIDtoSequenceNumber.advance(peerID, sequenceNumber);
+            recordsSinceSnapshot.incrementAndGet();
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ignore) {}
+    }
 
-        return text.toString();
+    /**
+     * Applies a logged lease record. Grants have the format lease,traderID,product,amount, buys from a lease
+     * have the format sold,traderID,peerID,sequenceNumber,product,leaseDelta,inventoryDelta and releases have the format
+     * release,traderID,product,unused. Replayed grants expire LEASE_DURATION after the replay.
+     * @param parts The fields of the record.
+     */
+    private void replayLeaseRecord(String[] parts) {
+        int traderID = Integer.parseInt(parts[1]);
+        Product product = Product.valueOf(parts[0].equals("sold") ? parts[4] : parts[2]);
+        Lease lease = leases.computeIfAbsent(traderID, id -> new EnumMap<>(Product.class)).computeIfAbsent(product, p -> new Lease());
+        if (parts[0].equals("sold")) {
+            lease.amount += Integer.parseInt(parts[5]);
+            if (parts.length > 6) {
+                inventory.get(product).addAndGet(Integer.parseInt(parts[6]));
+            }
+            peerIDtoSequenceNumber.advance(Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        } else if (parts[0].equals("lease")) {
+            int granted = Integer.parseInt(parts[3]);
+            inventory.get(product).addAndGet(-granted);
+            lease.amount += granted;
+            lease.expiresAt = Scheduler.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LEASE_DURATION);
+        } else {
+            int unused = Integer.parseInt(parts[3]);
+            inventory.get(product).addAndGet(unused);
+            lease.amount -= unused;
+        }
+    }
+
+    /**
+     * Stock of a product leased to a trader.
+     */
+    private static class Lease {
+        private int amount; // neither sold nor released yet
+        private long expiresAt; // from Scheduler.nanoTime()
     }
 }
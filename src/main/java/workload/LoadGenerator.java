@@ -0,0 +1,104 @@
+package workload;
+
+import metrics.Histogram;
+import utils.Scheduler;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Places the orders of a buyer or seller as configured by a Workload and records their latency.
+ * The latency is measured from the time an order was due, not from the time it was sent, so orders that wait for
+ * earlier ones count their waiting time too (no coordinated omission). In the periodic mode, orders that are skipped
+ * because the last one is still running are added to the histogram as well.
+ */
+public class LoadGenerator {
+
+    /**
+     * A single order of the peer.
+     */
+    public interface Order {
+
+        /**
+         * @return Whether an order was placed, false if the peer doesn't place orders right now, e.g. as a trader.
+         */
+        boolean place();
+    }
+
+    private final Workload workload;
+    private final long period; // in nanoseconds
+    private final Order order;
+    private final Histogram latency;
+    private ScheduledFuture<?> periodicTask;
+    private volatile boolean stopped;
+
+    /**
+     * @param workload The workload.
+     * @param period Period of the peer in milliseconds, the time between orders unless the workload sets a rate.
+     * @param order Places an order.
+     * @param latency Receives the latency of every order.
+     */
+    public LoadGenerator(Workload workload, long period, Order order, Histogram latency) {
+        this.workload = workload;
+        this.period = TimeUnit.MILLISECONDS.toNanos(period);
+        this.order = order;
+        this.latency = latency;
+    }
+
+    /**
+     * Starts placing orders, the first one after a period.
+     */
+    public void start() {
+        switch (workload.getMode()) {
+            case PERIODIC -> periodicTask = Scheduler.scheduleAtFixedRate(() -> {
+                long startTime = Scheduler.nanoTime();
+                if (order.place()) {
+                    latency.recordWithExpectedInterval(Scheduler.nanoTime() - startTime, period);
+                }
+            }, period, period, TimeUnit.NANOSECONDS);
+            case OPEN -> scheduleArrival(Scheduler.nanoTime() + period);
+            case CLOSED -> {
+                for (int i = 0; i < workload.getConcurrency(); i++) {
+                    Scheduler.schedule(this::placeClosedLoopOrder, period, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops placing orders. Orders that are running finish.
+     */
+    public void stop() {
+        stopped = true;
+        if (periodicTask != null) {
+            periodicTask.cancel(false);
+        }
+    }
+
+    // the next order is due at a time of its own, no matter how long the orders before take
+    private void scheduleArrival(long dueTime) {
+        Scheduler.schedule(() -> {
+            if (stopped) {
+                return;
+            }
+            scheduleArrival(dueTime + workload.nextInterarrivalTime(period));
+            if (order.place()) {
+                latency.record(Scheduler.nanoTime() - dueTime);
+            }
+        }, Math.max(0, dueTime - Scheduler.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    // every loop places its next order after the last one is done and the think time has passed
+    private void placeClosedLoopOrder() {
+        if (stopped) {
+            return;
+        }
+        long startTime = Scheduler.nanoTime();
+        if (order.place()) {
+            latency.record(Scheduler.nanoTime() - startTime);
+            Scheduler.schedule(this::placeClosedLoopOrder, workload.getThinkTime(), TimeUnit.MILLISECONDS);
+        } else {
+            Scheduler.schedule(this::placeClosedLoopOrder, period, TimeUnit.NANOSECONDS); // try again later
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package workload;
+
+import product.Product;
+import utils.Scheduler;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How often the buyers and sellers place orders and which products they pick. Read from system properties:
+ * - workload.mode: periodic (default) places one order per period of the peer and skips orders while the last one
+ *   is still running, open places orders at workload.rate no matter how long they take, and closed keeps
+ *   workload.concurrency orders running and places the next one workload.think milliseconds after one is done.
+ * - workload.arrival: poisson (default) or constant time between the orders of the open mode.
+ * - workload.rate: orders per second and peer in the open mode, by default one per period of the peer.
+ * - workload.skew: exponent of the Zipf distribution of the products, 0 (default) picks all products equally often.
+ */
+public class Workload {
+
+    public enum Mode { PERIODIC, OPEN, CLOSED }
+
+    public enum Arrival { CONSTANT, POISSON }
+
+    public static final String MODE_PROPERTY = "workload.mode";
+    public static final String ARRIVAL_PROPERTY = "workload.arrival";
+    public static final String RATE_PROPERTY = "workload.rate";
+    public static final String CONCURRENCY_PROPERTY = "workload.concurrency";
+    public static final String THINK_TIME_PROPERTY = "workload.think";
+    public static final String SKEW_PROPERTY = "workload.skew";
+
+    private static final List<Product> PRODUCTS = List.of(Product.values());
+
+    /**
+     * @return The workload configured by the system properties.
+     */
+    public static Workload fromProperties() {
+        return new Workload(
+                Mode.valueOf(System.getProperty(MODE_PROPERTY, "periodic").toUpperCase()),
+                Arrival.valueOf(System.getProperty(ARRIVAL_PROPERTY, "poisson").toUpperCase()),
+                Double.parseDouble(System.getProperty(RATE_PROPERTY, "0")),
+                Integer.getInteger(CONCURRENCY_PROPERTY, 1),
+                Long.getLong(THINK_TIME_PROPERTY, 0),
+                Double.parseDouble(System.getProperty(SKEW_PROPERTY, "0")));
+    }
+
+    // CLASS
+
+    private final Mode mode;
+    private final Arrival arrival;
+    private final double rate; // orders per second, 0 for one per period of the peer
+    private final int concurrency;
+    private final long thinkTime; // in milliseconds
+    private final double skew;
+    private final ZipfDistribution productDistribution;
+
+    /**
+     * @param mode When orders are placed.
+     * @param arrival Time between the orders of the open mode.
+     * @param rate Orders per second and peer in the open mode, 0 for one per period of the peer.
+     * @param concurrency Orders a peer keeps running in the closed mode.
+     * @param thinkTime Time between the end of an order and the next order in the closed mode, in milliseconds.
+     * @param skew Exponent of the Zipf distribution of the products.
+     */
+    public Workload(Mode mode, Arrival arrival, double rate, int concurrency, long thinkTime, double skew) {
+        if (rate < 0 || concurrency < 1 || thinkTime < 0 || skew < 0) {
+            throw new IllegalArgumentException("Invalid workload " + mode + " with rate " + rate + ", concurrency "
+                    + concurrency + ", think time " + thinkTime + " and skew " + skew + ".");
+        }
+        this.mode = mode;
+        this.arrival = arrival;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.thinkTime = thinkTime;
+        this.skew = skew;
+        this.productDistribution = new ZipfDistribution(PRODUCTS.size(), skew);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public long getThinkTime() {
+        return thinkTime;
+    }
+
+    /**
+     * @return The system properties of this workload, to pass them on to other processes.
+     */
+    public List<String> toOptions() {
+        return List.of(
+                "-D" + MODE_PROPERTY + "=" + mode.name().toLowerCase(),
+                "-D" + ARRIVAL_PROPERTY + "=" + arrival.name().toLowerCase(),
+                "-D" + RATE_PROPERTY + "=" + rate,
+                "-D" + CONCURRENCY_PROPERTY + "=" + concurrency,
+                "-D" + THINK_TIME_PROPERTY + "=" + thinkTime,
+                "-D" + SKEW_PROPERTY + "=" + skew);
+    }
+
+    /**
+     * @return A product picked with the Zipf distribution, FISH is the most popular one.
+     */
+    public Product pickProduct() {
+        return PRODUCTS.get(productDistribution.sample(Scheduler.getRandom()));
+    }
+
+    /**
+     * @param period Period of the peer in nanoseconds, used if no rate is configured.
+     * @return Time until the next order of the open mode in nanoseconds.
+     */
+    public long nextInterarrivalTime(long period) {
+        double meanTime = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : period;
+        if (arrival == Arrival.CONSTANT) {
+            return (long) meanTime;
+        }
+        // exponentially distributed times between the orders make a Poisson process
+        return (long) (-meanTime * Math.log(1 - Scheduler.getRandom().nextDouble()));
+    }
+}
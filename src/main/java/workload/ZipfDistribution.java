@@ -0,0 +1,50 @@
+package workload;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipf distribution over the ranks 0 to n - 1: rank k is picked with a probability proportional to 1 / (k + 1)^skew.
+ * A skew of 0 picks all ranks equally often, the higher the skew the more often the first ranks are picked.
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulativeProbabilities;
+
+    /**
+     * @param n Number of ranks.
+     * @param skew Exponent of the distribution, at least 0.
+     */
+    public ZipfDistribution(int n, double skew) {
+        if (n <= 0 || skew < 0) {
+            throw new IllegalArgumentException("Zipf distribution needs at least one rank and a skew of at least 0.");
+        }
+        this.cumulativeProbabilities = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cumulativeProbabilities[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulativeProbabilities[k] /= sum;
+        }
+    }
+
+    /**
+     * @param random Random number generator to draw from.
+     * @return A random rank.
+     */
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        // not found returns -(insertion point) - 1, the insertion point is the first rank above the drawn value
+        return Math.min(index >= 0 ? index : -index - 1, cumulativeProbabilities.length - 1);
+    }
+
+    /**
+     * @param rank A rank.
+     * @return Probability that the rank is picked.
+     */
+    public double getProbability(int rank) {
+        return rank == 0 ? cumulativeProbabilities[0] : cumulativeProbabilities[rank] - cumulativeProbabilities[rank - 1];
+    }
+}
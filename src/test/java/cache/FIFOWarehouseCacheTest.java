@@ -46,6 +46,8 @@ public class FIFOWarehouseCacheTest {
     public void FIFOFunctionalityTest() throws RemoteException {
         Warehouse warehouse = new Warehouse();
         IWarehouseCache cache = new FIFOWarehouseCache(warehouse);
+        // the buy looks the stock up, updates are applied to it from now on
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, cache.buy(new UpdateMessage(1, 9, Product.BOARS, 1)));
 
         cache.updateCache(new UpdateMessage(1, 0, Product.BOARS, 1));
         Assertions.assertEquals(1, cache.lookup(Product.BOARS));
@@ -60,4 +62,75 @@ public class FIFOWarehouseCacheTest {
 
         Assertions.assertEquals(4, cache.lookup(Product.BOARS));
     }
+
+    @Test
+    public void FIFOMultiplePeersTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        FIFOWarehouseCache cache = new FIFOWarehouseCache(warehouse);
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, cache.buy(new UpdateMessage(1, 9, Product.BOARS, 1)));
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, cache.buy(new UpdateMessage(2, 9, Product.FISH, 1)));
+
+        // out of order messages of two peers arrive interleaved
+        cache.updateCache(new UpdateMessage(2, 0, Product.BOARS, 1));
+        cache.updateCache(new UpdateMessage(3, 1, Product.FISH, 1));
+        cache.updateCache(new UpdateMessage(3, 0, Product.BOARS, 1));
+        cache.updateCache(new UpdateMessage(2, 1, Product.FISH, 1));
+        Assertions.assertEquals(0, cache.lookup(Product.BOARS));
+        Assertions.assertEquals(0, cache.lookup(Product.FISH));
+        Assertions.assertEquals(4, cache.getReorderBufferDepth());
+
+        cache.updateCache(new UpdateMessage(1, 1, Product.FISH, 1));
+        Assertions.assertEquals(0, cache.lookup(Product.BOARS));
+        Assertions.assertEquals(3, cache.lookup(Product.FISH));
+        Assertions.assertEquals(4, cache.getNextSequenceNumber(1));
+
+        cache.updateCache(new UpdateMessage(1, 0, Product.BOARS, 1));
+        Assertions.assertEquals(3, cache.lookup(Product.BOARS));
+        Assertions.assertEquals(0, cache.getReorderBufferDepth());
+        Assertions.assertEquals(2, cache.getMaxReorderBufferDepth());
+        Assertions.assertEquals(0, cache.getOldestGapAge());
+
+        // duplicates are ignored
+        cache.updateCache(new UpdateMessage(3, 0, Product.BOARS, 1));
+        Assertions.assertEquals(3, cache.lookup(Product.BOARS));
+    }
+
+    @Test
+    public void FIFOReorderBufferOverflowTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        FIFOWarehouseCache cache = new FIFOWarehouseCache(warehouse);
+
+        cache.updateCache(new UpdateMessage(3, 0, Product.SALT, 1));
+        Assertions.assertEquals(1, cache.getReorderBufferDepth());
+
+        // message 1 and 2 are lost, the buffer gives up once a message is too far ahead.
+        cache.updateCache(new UpdateMessage(FIFOWarehouseCache.REORDER_BUFFER_CAPACITY + 2, 0, Product.SALT, 1));
+        Assertions.assertEquals(0, cache.getReorderBufferDepth());
+        Assertions.assertEquals(1, cache.getSkippedUpdates());
+        Assertions.assertEquals(FIFOWarehouseCache.REORDER_BUFFER_CAPACITY + 3, cache.getNextSequenceNumber(0));
+
+        // cached values are looked up again, updates of other peers don't change products that aren't cached
+        cache.updateCache(new UpdateMessage(1, 1, Product.SALT, -3));
+        warehouse.sell(new UpdateMessage(1, 0, Product.SALT, 2));
+        Assertions.assertEquals(0, cache.lookup(Product.SALT));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(1, 1, Product.SALT, 2)));
+    }
+
+    @Test
+    public void FIFOResyncTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        FIFOWarehouseCache cache = new FIFOWarehouseCache(warehouse);
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, cache.buy(new UpdateMessage(1, 1, Product.SALT, 1)));
+        cache.updateCache(new UpdateMessage(3, 0, Product.SALT, 1));
+        Assertions.assertEquals(1, cache.getReorderBufferDepth());
+
+        // the sender dropped message 1 and 2, the buffered message is applied and the cache looks up again
+        cache.updateCache(UpdateMessage.resync(2, 0));
+        Assertions.assertEquals(0, cache.getReorderBufferDepth());
+        Assertions.assertEquals(1, cache.getSkippedUpdates());
+        Assertions.assertEquals(4, cache.getNextSequenceNumber(0));
+
+        warehouse.sell(new UpdateMessage(1, 0, Product.SALT, 2));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(2, 1, Product.SALT, 2)));
+    }
 }
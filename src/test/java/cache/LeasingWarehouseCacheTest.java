@@ -0,0 +1,102 @@
+package cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import peer.ReplyStatus;
+import product.Product;
+import warehouse.Warehouse;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LeasingWarehouseCacheTest {
+
+    @Test
+    public void buyFromLeaseTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        LeasingWarehouseCache cache = new LeasingWarehouseCache(warehouse, 0);
+        warehouse.sell(new UpdateMessage(1, 1, Product.FISH, 15));
+
+        // first buy leases a block, the rest of the block stays with the trader.
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(1, 2, Product.FISH, 3)));
+        Assertions.assertEquals(LeasingWarehouseCache.LEASE_SIZE - 3, cache.getLeasedAmount(Product.FISH));
+        Assertions.assertEquals(15 - LeasingWarehouseCache.LEASE_SIZE, warehouse.lookup(Product.FISH));
+
+        // the buy is served without the warehouse and reported later, a retry at the same trader is a duplicate
+        Assertions.assertEquals(1, cache.getUnreportedBuys());
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, cache.buy(new UpdateMessage(1, 2, Product.FISH, 3)));
+        cache.reportBuys();
+        Assertions.assertEquals(0, cache.getUnreportedBuys());
+
+        // once reported, a retry at another trader or straight at the warehouse is counted once
+        LeasingWarehouseCache otherCache = new LeasingWarehouseCache(warehouse, 1);
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, otherCache.buy(new UpdateMessage(1, 2, Product.FISH, 3)));
+        otherCache.reportBuys();
+        Assertions.assertEquals(5, otherCache.getLeasedAmount(Product.FISH));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, warehouse.buy(new UpdateMessage(1, 2, Product.FISH, 3)));
+        Assertions.assertEquals(LeasingWarehouseCache.LEASE_SIZE - 3, cache.getLeasedAmount(Product.FISH));
+
+        // unused stock goes back to the warehouse
+        cache.releaseAllLeases();
+        otherCache.releaseAllLeases();
+        Assertions.assertEquals(0, cache.getLeasedAmount(Product.FISH));
+        Assertions.assertEquals(12, warehouse.lookup(Product.FISH));
+    }
+
+    @Test
+    public void reconcileTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        LeasingWarehouseCache cache = new LeasingWarehouseCache(warehouse, 0);
+        warehouse.sell(new UpdateMessage(1, 1, Product.SALT, 20));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(1, 2, Product.SALT, 2)));
+
+        // the buyer retries at the warehouse before the trader reported the buy, the trader gets the amount back
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.buy(new UpdateMessage(1, 2, Product.SALT, 2)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(2, 2, Product.SALT, 1)));
+        cache.reportBuys();
+        Assertions.assertEquals(LeasingWarehouseCache.LEASE_SIZE - 1, cache.getLeasedAmount(Product.SALT));
+
+        // the lease is reclaimed before a buy is reported, the warehouse takes it from the inventory
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(3, 2, Product.SALT, 4)));
+        warehouse.releaseLease(0, Product.SALT, LeasingWarehouseCache.LEASE_SIZE);
+        Assertions.assertEquals(17, warehouse.lookup(Product.SALT));
+        cache.reportBuys();
+        Assertions.assertEquals(13, warehouse.lookup(Product.SALT));
+        cache.close();
+    }
+
+    @Test
+    public void noOversellTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        LeasingWarehouseCache cache1 = new LeasingWarehouseCache(warehouse, 0);
+        LeasingWarehouseCache cache2 = new LeasingWarehouseCache(warehouse, 1);
+        warehouse.sell(new UpdateMessage(1, 2, Product.SALT, 4));
+
+        // the first trader leases all stock, the second one can't sell anything.
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache1.buy(new UpdateMessage(1, 3, Product.SALT, 1)));
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, cache2.buy(new UpdateMessage(1, 4, Product.SALT, 1)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache1.buy(new UpdateMessage(2, 3, Product.SALT, 3)));
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, cache1.buy(new UpdateMessage(3, 3, Product.SALT, 1)));
+
+        cache1.releaseAllLeases();
+        Assertions.assertEquals(0, warehouse.lookup(Product.SALT));
+    }
+
+    @Test
+    public void stockListenerTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        LeasingWarehouseCache cache = new LeasingWarehouseCache(warehouse, 0);
+        List<String> changes = new ArrayList<>();
+        Assertions.assertTrue(cache.setStockListener((product, amount) -> changes.add(product + "," + amount)));
+        warehouse.sell(new UpdateMessage(1, 1, Product.BOARS, 12));
+
+        // the lease and the release change the stock, the buys from the lease don't
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(1, 2, Product.BOARS, 3)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(2, 2, Product.BOARS, 3)));
+        Assertions.assertEquals(List.of("BOARS,-" + LeasingWarehouseCache.LEASE_SIZE), changes);
+        cache.close();
+        Assertions.assertEquals(List.of("BOARS,-" + LeasingWarehouseCache.LEASE_SIZE, "BOARS," + (LeasingWarehouseCache.LEASE_SIZE - 6)), changes);
+        Assertions.assertEquals(6, warehouse.lookup(Product.BOARS));
+    }
+}
@@ -0,0 +1,67 @@
+package cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UpdateMessageCodecTest {
+
+    private static void assertSameMessage(UpdateMessage expected, UpdateMessage actual) {
+        Assertions.assertEquals(expected.sequenceNumber(), actual.sequenceNumber());
+        Assertions.assertEquals(expected.peerID(), actual.peerID());
+        Assertions.assertEquals(expected.product(), actual.product());
+        Assertions.assertEquals(expected.amount(), actual.amount());
+        Assertions.assertArrayEquals(expected.dependencies(), actual.dependencies());
+    }
+
+    @Test
+    public void encodeDecodeTest() {
+        List<UpdateMessage> updateMessages = List.of(
+                new UpdateMessage(7, 3, Product.SALT, -4),
+                new UpdateMessage(8, 3, Product.BOARS, 2, new int[] { 1, 0, 5 }),
+                new UpdateMessage(Integer.MAX_VALUE, 0, null, Integer.MIN_VALUE));
+
+        Assertions.assertEquals(UpdateMessageCodec.SIZE, UpdateMessageCodec.sizeOf(updateMessages.get(0)));
+        ByteBuffer buffer = ByteBuffer.allocate(UpdateMessageCodec.sizeOf(updateMessages));
+        UpdateMessageCodec.encode(updateMessages, buffer);
+        Assertions.assertEquals(4 + 3 * UpdateMessageCodec.SIZE + 2 + 12, buffer.position());
+
+        List<UpdateMessage> decoded = UpdateMessageCodec.decodeAll(buffer.flip());
+        Assertions.assertEquals(updateMessages.size(), decoded.size());
+        for (int i = 0; i < updateMessages.size(); i++) {
+            assertSameMessage(updateMessages.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serializationTest() throws IOException, ClassNotFoundException {
+        List<UpdateMessage> updateMessages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            updateMessages.add(new UpdateMessage(i, i % 4, Product.FISH, i, i % 10 == 0 ? new int[300] : null));
+        }
+        updateMessages.add(UpdateMessage.resync(100, 1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(updateMessages);
+        }
+        List<UpdateMessage> deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (List<UpdateMessage>) in.readObject();
+        }
+
+        for (int i = 0; i < updateMessages.size(); i++) {
+            assertSameMessage(updateMessages.get(i), deserialized.get(i));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import peer.ReplyStatus;
+import product.Product;
+import simulation.VirtualScheduler;
+import utils.Scheduler;
+import warehouse.IWarehouse;
+import warehouse.Warehouse;
+
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+public class WarehouseCachePoliciesTest {
+
+    @Test
+    public void registryTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        Assertions.assertTrue(WarehouseCachePolicies.create("none", warehouse, 0) instanceof NoWarehouseCache);
+        Assertions.assertTrue(WarehouseCachePolicies.create("fifo", warehouse, 0) instanceof FIFOWarehouseCache);
+        Assertions.assertTrue(WarehouseCachePolicies.create("ttl", warehouse, 0) instanceof TTLWarehouseCache);
+        Assertions.assertTrue(WarehouseCachePolicies.create("write-through", warehouse, 0) instanceof WriteThroughWarehouseCache);
+        Assertions.assertTrue(WarehouseCachePolicies.create("causal", warehouse, 0) instanceof CausalWarehouseCache);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WarehouseCachePolicies.create("unknown", warehouse, 0));
+    }
+
+    @Test
+    public void writeThroughInvalidationTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        IWarehouseCache cache = new WriteThroughWarehouseCache(warehouse);
+
+        Assertions.assertEquals(0, cache.lookup(Product.FISH));
+        warehouse.sell(new UpdateMessage(1, 0, Product.FISH, 3));
+        Assertions.assertEquals(0, cache.lookup(Product.FISH));
+
+        // an update of another trader invalidates the entry
+        cache.updateCache(new UpdateMessage(1, 5, Product.FISH, 3));
+        Assertions.assertEquals(3, cache.lookup(Product.FISH));
+        Assertions.assertEquals(2, cache.getNextSequenceNumber(5));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(1, 1, Product.FISH, 3)));
+    }
+
+    @Test
+    public void writeThroughInvalidationRaceTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        IWarehouseCache[] cache = new IWarehouseCache[1];
+        // another trader sells while the lookup is on its way back, its invalidation arrives first
+        IWarehouse racingWarehouse = (IWarehouse) Proxy.newProxyInstance(IWarehouse.class.getClassLoader(), new Class<?>[] {IWarehouse.class}, (proxy, method, args) -> {
+            Object result = method.invoke(warehouse, args);
+            if (method.getName().equals("lookup") && warehouse.lookup(Product.FISH) == 0) {
+                warehouse.sell(new UpdateMessage(1, 5, Product.FISH, 3));
+                cache[0].updateCache(new UpdateMessage(1, 5, Product.FISH, 3));
+            }
+            return result;
+        });
+        cache[0] = new WriteThroughWarehouseCache(racingWarehouse);
+
+        // the older value is returned, but not cached
+        Assertions.assertEquals(0, cache[0].lookup(Product.FISH));
+        Assertions.assertEquals(3, cache[0].lookup(Product.FISH));
+    }
+
+    @Test
+    public void TTLReadThroughTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        IWarehouseCache cache = new TTLWarehouseCache(warehouse);
+
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.sell(new UpdateMessage(1, 0, Product.SALT, 3)));
+        Assertions.assertEquals(3, cache.lookup(Product.SALT));
+
+        // a change of another trader is only seen after the entry expired
+        warehouse.sell(new UpdateMessage(2, 0, Product.SALT, 3));
+        Assertions.assertEquals(3, cache.lookup(Product.SALT));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, cache.buy(new UpdateMessage(1, 1, Product.SALT, 2)));
+        Assertions.assertEquals(1, cache.lookup(Product.SALT));
+    }
+
+    @Test
+    public void causalOrderTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        CausalWarehouseCache sender1 = new CausalWarehouseCache(warehouse);
+        CausalWarehouseCache sender2 = new CausalWarehouseCache(warehouse);
+        CausalWarehouseCache receiver = new CausalWarehouseCache(warehouse);
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, receiver.buy(new UpdateMessage(1, 3, Product.BOARS, 1)));
+
+        // peer 1 sells, peer 2 sees it and buys. The buy depends on the sell.
+        UpdateMessage sell = sender1.createCacheUpdate(1, Product.BOARS, 4);
+        sender1.updateCache(sell);
+        sender2.updateCache(sell);
+        UpdateMessage buy = sender2.createCacheUpdate(2, Product.BOARS, -3);
+        sender2.updateCache(buy);
+
+        // the buy arrives first and waits for the sell
+        receiver.updateCache(buy);
+        Assertions.assertEquals(0, receiver.lookup(Product.BOARS));
+        Assertions.assertEquals(1, receiver.getPendingUpdates());
+
+        receiver.updateCache(sell);
+        Assertions.assertEquals(1, receiver.lookup(Product.BOARS));
+        Assertions.assertEquals(0, receiver.getPendingUpdates());
+    }
+
+    @Test
+    public void causalColdCacheTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        warehouse.sell(new UpdateMessage(1, 1, Product.FISH, 10));
+        warehouse.buy(new UpdateMessage(1, 2, Product.FISH, 4));
+        CausalWarehouseCache receiver = new CausalWarehouseCache(warehouse);
+
+        // updates of products that aren't cached don't become the stock
+        receiver.updateCache(new UpdateMessage(1, 2, Product.FISH, 5, new int[] {0, 0, 0}));
+        receiver.updateCache(new UpdateMessage(2, 2, Product.FISH, -4, new int[] {0, 0, 1}));
+        Assertions.assertEquals(0, receiver.lookup(Product.FISH));
+        Assertions.assertEquals(3, receiver.getNextSequenceNumber(2));
+
+        // the buy looks the stock up instead of trusting the deltas
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, receiver.buy(new UpdateMessage(1, 3, Product.FISH, 6)));
+        receiver.updateCache(new UpdateMessage(3, 2, Product.FISH, 2, new int[] {0, 0, 2}));
+        Assertions.assertEquals(8, receiver.lookup(Product.FISH));
+    }
+
+    @Test
+    public void causalLostUpdateTest() throws RemoteException {
+        VirtualScheduler scheduler = new VirtualScheduler(1);
+        Scheduler.install(scheduler);
+        try {
+            Warehouse warehouse = new Warehouse();
+            CausalWarehouseCache receiver = new CausalWarehouseCache(warehouse);
+            Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, receiver.buy(new UpdateMessage(1, 3, Product.SALT, 1)));
+
+            // update 1 of peer 1 is lost, the later ones wait for it until they time out
+            receiver.updateCache(new UpdateMessage(2, 1, Product.SALT, 1, new int[] {0, 1}));
+            receiver.updateCache(new UpdateMessage(3, 1, Product.SALT, 1, new int[] {0, 2}));
+            Assertions.assertEquals(2, receiver.getPendingUpdates());
+            scheduler.advance(CausalWarehouseCache.PENDING_TIMEOUT + TimeUnit.MILLISECONDS.toNanos(1));
+            receiver.updateCache(new UpdateMessage(1, 2, Product.FISH, 1));
+            Assertions.assertEquals(0, receiver.getPendingUpdates());
+            Assertions.assertEquals(1, receiver.getSkippedUpdates());
+            Assertions.assertEquals(4, receiver.getNextSequenceNumber(1));
+
+            // the stock is looked up again and the next update of peer 1 is applied right away
+            warehouse.sell(new UpdateMessage(1, 0, Product.SALT, 2));
+            Assertions.assertEquals(ReplyStatus.SUCCESSFUL, receiver.buy(new UpdateMessage(2, 3, Product.SALT, 2)));
+            receiver.updateCache(new UpdateMessage(4, 1, Product.SALT, 5, new int[] {0, 3}));
+            Assertions.assertEquals(7, receiver.lookup(Product.SALT));
+        } finally {
+            Scheduler.install(null);
+        }
+    }
+
+    @Test
+    public void causalOverflowTest() throws RemoteException {
+        CausalWarehouseCache receiver = new CausalWarehouseCache(new Warehouse());
+
+        // every update depends on a lost update of peer 2
+        for (int i = 1; i <= CausalWarehouseCache.PENDING_CAPACITY; i++) {
+            receiver.updateCache(new UpdateMessage(i, 1, Product.FISH, 1, new int[] {0, i - 1, 1}));
+        }
+        Assertions.assertEquals(CausalWarehouseCache.PENDING_CAPACITY, receiver.getPendingUpdates());
+        receiver.updateCache(new UpdateMessage(CausalWarehouseCache.PENDING_CAPACITY + 1, 1, Product.FISH, 1, new int[] {0, CausalWarehouseCache.PENDING_CAPACITY, 1}));
+        Assertions.assertEquals(0, receiver.getPendingUpdates());
+        Assertions.assertEquals(1, receiver.getSkippedUpdates());
+        Assertions.assertEquals(CausalWarehouseCache.PENDING_CAPACITY + 2, receiver.getNextSequenceNumber(1));
+        Assertions.assertEquals(2, receiver.getNextSequenceNumber(2));
+    }
+}
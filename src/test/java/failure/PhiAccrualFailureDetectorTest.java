@@ -0,0 +1,63 @@
+package failure;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class PhiAccrualFailureDetectorTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void regularHeartbeatsTest() {
+        PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector(100, 8, 200);
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            failureDetector.heartbeat(1, now);
+            now += INTERVAL;
+        }
+
+        // a late heartbeat or a short pause is tolerated, a missing heartbeat for a second is not
+        Assertions.assertTrue(failureDetector.isAvailable(1, now));
+        Assertions.assertTrue(failureDetector.isAvailable(1, now + TimeUnit.MILLISECONDS.toNanos(250)));
+        Assertions.assertFalse(failureDetector.isAvailable(1, now + TimeUnit.MILLISECONDS.toNanos(1000)));
+        Assertions.assertTrue(failureDetector.phi(1, now + TimeUnit.MILLISECONDS.toNanos(300))
+                < failureDetector.phi(1, now + TimeUnit.MILLISECONDS.toNanos(400)));
+    }
+
+    @Test
+    public void burstTest() {
+        PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector(100, 8, 200);
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            failureDetector.heartbeat(1, now);
+            now += i % 2 == 0 ? INTERVAL : 2 * INTERVAL; // heartbeats are skipped after deliveries
+        }
+
+        // a burst of piggybacked heartbeats doesn't shrink the expected interval
+        for (int i = 0; i < 150; i++) {
+            failureDetector.heartbeat(1, now);
+            now += TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        // an ordinary gap plus a GC pause afterwards is tolerated
+        Assertions.assertTrue(failureDetector.isAvailable(1, now + 2 * INTERVAL + TimeUnit.MILLISECONDS.toNanos(150)));
+        Assertions.assertFalse(failureDetector.isAvailable(1, now + TimeUnit.MILLISECONDS.toNanos(2000)));
+    }
+
+    @Test
+    public void unknownPeerTest() {
+        PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector(100, 8, 200);
+        Assertions.assertFalse(failureDetector.isMonitored(2));
+        Assertions.assertEquals(0.0, failureDetector.phi(2, INTERVAL * 100));
+
+        failureDetector.heartbeat(2, 0);
+        Assertions.assertTrue(failureDetector.isMonitored(2));
+        Assertions.assertFalse(failureDetector.isAvailable(2, INTERVAL * 100));
+
+        failureDetector.remove(2);
+        Assertions.assertFalse(failureDetector.isMonitored(2));
+        Assertions.assertTrue(failureDetector.isAvailable(2, INTERVAL * 100));
+    }
+}
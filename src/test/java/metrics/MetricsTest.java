@@ -0,0 +1,61 @@
+package metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class MetricsTest {
+
+    private enum Color { RED, GREEN }
+
+    @Test
+    public void bucketTest() {
+        // every value lies in its bucket and the buckets don't overlap
+        long previousEnd = -1;
+        for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+            long end = Histogram.getBucketEnd(bucket);
+            Assertions.assertTrue(end > previousEnd);
+            Assertions.assertEquals(bucket, Histogram.getBucket(end));
+            Assertions.assertEquals(bucket, Histogram.getBucket(previousEnd + 1));
+            previousEnd = end;
+        }
+        Assertions.assertEquals(Long.MAX_VALUE, previousEnd);
+    }
+
+    @Test
+    public void percentileTest() {
+        Histogram histogram = new Histogram();
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(50));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(1_000_000, histogram.getMax());
+        Assertions.assertEquals(500_500.0, histogram.getMean());
+        // percentiles are at most one bucket (about 3%) off
+        Assertions.assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.04);
+        Assertions.assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.04);
+        Assertions.assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        Assertions.assertTrue(histogram.getValueAtPercentile(0) <= 1000 * 1.04);
+    }
+
+    @Test
+    public void registryTest() {
+        LongAdder counter = Metrics.counter("test.counter");
+        Assertions.assertSame(counter, Metrics.counter("test.counter"));
+        Assertions.assertSame(Metrics.histogram("test.latency"), Metrics.histogram("test.latency"));
+
+        LongAdder[] colors = Metrics.counters("test.color", Color.class);
+        colors[Color.GREEN.ordinal()].add(3);
+        counter.increment();
+        Metrics.histogram("test.latency").record(2000);
+
+        String snapshot = Metrics.snapshot();
+        Assertions.assertTrue(snapshot.contains("test.counter 1\n"));
+        Assertions.assertTrue(snapshot.contains("test.color.RED 0\n"));
+        Assertions.assertTrue(snapshot.contains("test.color.GREEN 3\n"));
+        Assertions.assertTrue(snapshot.contains("test.latency count=1 "));
+    }
+}
@@ -0,0 +1,85 @@
+package peer;
+
+import cache.UpdateMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class CacheUpdateBroadcasterTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void overflowTest() throws InterruptedException {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<UpdateMessage> received = new ArrayList<>();
+        IPeer peer = (IPeer) Proxy.newProxyInstance(IPeer.class.getClassLoader(), new Class<?>[] {IPeer.class}, (proxy, method, args) -> {
+            if (method.getName().equals("updateCaches")) {
+                delivering.countDown();
+                blocked.await();
+                synchronized (received) {
+                    received.addAll((List<UpdateMessage>) args[0]);
+                }
+            }
+            return null;
+        });
+
+        // the first delivery hangs while the queue fills up and overflows
+        CacheUpdateBroadcaster broadcaster = new CacheUpdateBroadcaster();
+        broadcaster.send(1, peer, new UpdateMessage(1, 0, Product.FISH, 1));
+        delivering.await();
+        for (int i = 2; i <= CacheUpdateBroadcaster.QUEUE_CAPACITY + 2; i++) {
+            broadcaster.send(1, peer, new UpdateMessage(i, 0, Product.FISH, 1));
+        }
+        blocked.countDown();
+        Assertions.assertTrue(broadcaster.flush(5000));
+
+        // the backlog is replaced by a resync in front of the newest update
+        Assertions.assertEquals(3, received.size());
+        Assertions.assertEquals(1, received.get(0).sequenceNumber());
+        Assertions.assertTrue(received.get(1).isResync());
+        Assertions.assertEquals(CacheUpdateBroadcaster.QUEUE_CAPACITY + 1, received.get(1).sequenceNumber());
+        Assertions.assertEquals(CacheUpdateBroadcaster.QUEUE_CAPACITY + 2, received.get(2).sequenceNumber());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failedDeliveryTest() throws InterruptedException {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<UpdateMessage> received = new ArrayList<>();
+        IPeer peer = (IPeer) Proxy.newProxyInstance(IPeer.class.getClassLoader(), new Class<?>[] {IPeer.class}, (proxy, method, args) -> {
+            if (method.getName().equals("updateCaches")) {
+                if (delivering.getCount() > 0) {
+                    delivering.countDown();
+                    blocked.await();
+                    throw new RemoteException("unreachable");
+                }
+                synchronized (received) {
+                    received.addAll((List<UpdateMessage>) args[0]);
+                }
+            }
+            return null;
+        });
+
+        // the first delivery fails after the next update has been queued
+        CacheUpdateBroadcaster broadcaster = new CacheUpdateBroadcaster();
+        broadcaster.send(1, peer, new UpdateMessage(1, 0, Product.FISH, 1));
+        delivering.await();
+        broadcaster.send(1, peer, new UpdateMessage(2, 0, Product.FISH, 1));
+        blocked.countDown();
+        Assertions.assertTrue(broadcaster.flush(5000));
+
+        // the dropped update is skipped with a resync in front of the queued one
+        Assertions.assertEquals(2, received.size());
+        Assertions.assertTrue(received.get(0).isResync());
+        Assertions.assertEquals(1, received.get(0).sequenceNumber());
+        Assertions.assertEquals(2, received.get(1).sequenceNumber());
+    }
+}
@@ -8,6 +8,7 @@ import product.Product;
 import warehouse.Warehouse;
 
 import java.rmi.RemoteException;
+import java.util.List;
 
 public class CommunicationTest {
 
@@ -45,7 +46,7 @@ public class CommunicationTest {
     }
 
     @Test
-    public void testBuyMultipleTraders() throws RemoteException {
+    public void testBuyMultipleTraders() throws RemoteException, InterruptedException {
         Warehouse warehouse = new Warehouse();
         Seller trader1 = new Seller(0, new FIFOWarehouseCache(warehouse), 3);
         Seller trader2 = new Seller(1, new FIFOWarehouseCache(warehouse), 3);
@@ -59,12 +60,19 @@ public class CommunicationTest {
         Assertions.assertEquals(1, trader1.traderIDs[1]);
         Assertions.assertEquals(2, trader1.traderIDs[2]);
 
+        // trader 3 looks up the stock, afterwards it only learns about changes from cache updates
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, trader3.buy(new UpdateMessage(1, 1, Product.BOARS, 3)));
+
         ReplyStatus sellStatus = trader1.sell(new UpdateMessage(1, 0, Product.BOARS, 3));
         Assertions.assertEquals(ReplyStatus.SUCCESSFUL, sellStatus);
 
         ReplyStatus buyStatus = trader2.buy(new UpdateMessage(1, 1, Product.BOARS, 3));
         Assertions.assertEquals(ReplyStatus.SUCCESSFUL, buyStatus);
 
+        // cache updates are delivered in the background
+        Assertions.assertTrue(trader1.flushCacheUpdates(5000));
+        Assertions.assertTrue(trader2.flushCacheUpdates(5000));
+
         // test behavior if cache is out of date
         warehouse.sell(new UpdateMessage(2, 0, Product.BOARS, 3));
 
@@ -83,4 +91,24 @@ public class CommunicationTest {
         Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, warehouse.buy(new UpdateMessage(1, 1, Product.BOARS, 1)));
         Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.buy(new UpdateMessage(2, 1, Product.BOARS, 1)));
     }
+
+    @Test
+    public void testBatch() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        Seller trader = new Seller(0, new FIFOWarehouseCache(warehouse), 1);
+        trader.setPeers(new IPeer[] { trader });
+        trader.election(new int[] {}, 1);
+
+        ReplyStatus[] replyStatuses = trader.batch(List.of(
+                new UpdateMessage(1, 1, Product.BOARS, 3),
+                new UpdateMessage(1, 2, Product.BOARS, -1)));
+        Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL, ReplyStatus.NOT_IN_STOCK }, replyStatuses);
+
+        // cache is updated by the batch
+        replyStatuses = trader.batch(List.of(
+                new UpdateMessage(2, 2, Product.BOARS, -2),
+                new UpdateMessage(3, 2, Product.BOARS, -2)));
+        Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL, ReplyStatus.NOT_IN_STOCK }, replyStatuses);
+        Assertions.assertEquals(1, warehouse.lookup(Product.BOARS));
+    }
 }
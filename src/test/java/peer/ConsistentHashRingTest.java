@@ -0,0 +1,58 @@
+package peer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+public class ConsistentHashRingTest {
+
+    @Test
+    public void ownerIsTraderTest() {
+        ConsistentHashRing ring = new ConsistentHashRing(new int[] {3, 4, 5});
+        for (Product product : Product.values()) {
+            int owner = ring.getOwner(product);
+            Assertions.assertTrue(owner >= 3 && owner <= 5);
+            Assertions.assertEquals(owner, new ConsistentHashRing(new int[] {5, 4, 3}).getOwner(product));
+        }
+    }
+
+    @Test
+    public void removeTraderTest() {
+        ConsistentHashRing ring = new ConsistentHashRing(new int[] {3, 4, 5});
+        int removedTrader = ring.getOwner(Product.FISH);
+        int[] owners = new int[Product.values().length];
+        for (Product product : Product.values()) {
+            owners[product.ordinal()] = ring.getOwner(product);
+        }
+
+        // only the products of the removed trader move
+        ring.remove(removedTrader);
+        Assertions.assertFalse(ring.contains(removedTrader));
+        for (Product product : Product.values()) {
+            if (owners[product.ordinal()] == removedTrader) {
+                Assertions.assertNotEquals(removedTrader, ring.getOwner(product));
+            } else {
+                Assertions.assertEquals(owners[product.ordinal()], ring.getOwner(product));
+            }
+        }
+    }
+
+    @Test
+    public void noTradersTest() {
+        ConsistentHashRing ring = new ConsistentHashRing(new int[] {1});
+        ring.remove(1);
+        Assertions.assertThrows(IllegalStateException.class, () -> ring.getOwner(Product.SALT));
+    }
+
+    @Test
+    public void ownersTest() {
+        ConsistentHashRing ring = new ConsistentHashRing(new int[] {3, 4, 5});
+        for (Product product : Product.values()) {
+            int[] owners = ring.getOwners(product, 2);
+            Assertions.assertEquals(2, owners.length);
+            Assertions.assertEquals(ring.getOwner(product), owners[0]);
+            Assertions.assertNotEquals(owners[0], owners[1]);
+        }
+        Assertions.assertEquals(3, ring.getOwners(Product.FISH, 5).length);
+    }
+}
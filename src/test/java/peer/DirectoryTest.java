@@ -0,0 +1,45 @@
+package peer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import warehouse.Warehouse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+
+public class DirectoryTest {
+
+    @Test
+    public void announcePeersTest() throws IOException, InterruptedException {
+        Path directoryPath = Files.createTempDirectory("warehouse");
+        Warehouse warehouse = new Warehouse(false, directoryPath.resolve("inventory.txt").toString(), directoryPath.resolve("inventory_log.txt").toString());
+        Directory directory = new Directory(2);
+        APeer seller0 = PeerHost.createPeer(0, false, warehouse, 2);
+        APeer seller1 = PeerHost.createPeer(1, false, warehouse, 2);
+
+        directory.announcePeer(1, seller1);
+        Assertions.assertFalse(directory.awaitPeers(10));
+        Assertions.assertNull(directory.getPeers()[0]);
+
+        // announcing the same peer twice doesn't count it twice
+        directory.announcePeer(1, seller1);
+        Assertions.assertFalse(directory.awaitPeers(10));
+
+        directory.announcePeer(0, seller0);
+        Assertions.assertTrue(directory.awaitPeers(10));
+        Assertions.assertArrayEquals(new IPeer[] { seller0, seller1 }, directory.getPeers());
+    }
+
+    @Test
+    public void waitForWarehouseTest() throws IOException {
+        Path directoryPath = Files.createTempDirectory("warehouse");
+        Warehouse warehouse = new Warehouse(false, directoryPath.resolve("inventory.txt").toString(), directoryPath.resolve("inventory_log.txt").toString());
+        Directory directory = new Directory(1);
+
+        Assertions.assertThrows(RemoteException.class, () -> directory.getWarehouse(10));
+        directory.announceWarehouse(warehouse);
+        Assertions.assertSame(warehouse, directory.getWarehouse(10));
+    }
+}
@@ -0,0 +1,45 @@
+package peer;
+
+import cache.NoWarehouseCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import warehouse.Warehouse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class HeartbeatTest {
+
+    @Test
+    public void crashedTraderIsRemovedTest() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("warehouse");
+        Warehouse warehouse = new Warehouse(false, directory.resolve("inventory.txt").toString(), directory.resolve("inventory_log.txt").toString());
+        APeer[] peers = new APeer[4];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Seller(i, new NoWarehouseCache(warehouse), peers.length);
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+
+        // three traders monitor each other
+        peers[0].election(new int[] {}, 3);
+        for (APeer peer : peers) {
+            peer.startHeartbeat();
+        }
+        Thread.sleep(1000);
+        for (APeer peer : peers) {
+            Assertions.assertTrue(peer.traderRing.contains(3));
+        }
+
+        // the crash is noticed within a second
+        peers[3].crash();
+        Thread.sleep(1500);
+        Assertions.assertFalse(peers[0].traderRing.contains(3));
+        Assertions.assertFalse(peers[1].traderRing.contains(3));
+        Assertions.assertFalse(peers[2].traderRing.contains(3));
+        Assertions.assertTrue(peers[0].traderRing.contains(1));
+        Assertions.assertTrue(peers[0].traderRing.contains(2));
+    }
+}
@@ -0,0 +1,55 @@
+package peer;
+
+import cache.UpdateMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+import warehouse.SequenceNumbers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class OrderWindowTest {
+
+    @Test
+    public void windowTest() throws Exception {
+        OrderWindow orders = new OrderWindow(2);
+        UpdateMessage first = orders.acquire(sequenceNumber -> new UpdateMessage(sequenceNumber, 0, Product.FISH, 1));
+        UpdateMessage second = orders.acquire(sequenceNumber -> new UpdateMessage(sequenceNumber, 0, Product.SALT, 1));
+        Assertions.assertEquals(1, first.sequenceNumber());
+        Assertions.assertEquals(2, second.sequenceNumber());
+        Assertions.assertEquals(2, orders.getInFlight());
+
+        // the window is full, the third order waits until one is done
+        CompletableFuture<UpdateMessage> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return orders.acquire(sequenceNumber -> new UpdateMessage(sequenceNumber, 0, Product.BOARS, 1));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        Assertions.assertFalse(third.isDone());
+
+        // a failed order is sent again with its sequence number before any new order
+        orders.retry(first);
+        Assertions.assertSame(first, third.get(1, TimeUnit.SECONDS));
+        orders.complete(first, true);
+        orders.complete(second, false);
+        Assertions.assertEquals(3, orders.acquire(sequenceNumber -> new UpdateMessage(sequenceNumber, 0, Product.FISH, 1)).sequenceNumber());
+        Assertions.assertEquals(1, orders.getAppliedOrders());
+    }
+
+    @Test
+    public void oldestOrderTest() throws Exception {
+        // new sequence numbers stay within the window of the warehouse, counted from the oldest pending order
+        OrderWindow orders = new OrderWindow(2);
+        UpdateMessage oldest = orders.acquire(sequenceNumber -> new UpdateMessage(sequenceNumber, 0, Product.FISH, 1));
+        for (int i = 1; i < SequenceNumbers.WINDOW; i++) {
+            orders.complete(orders.acquire(sequenceNumber -> new UpdateMessage(sequenceNumber, 0, Product.FISH, 1)), true);
+        }
+        orders.retry(oldest);
+        Assertions.assertSame(oldest, orders.acquire(sequenceNumber -> new UpdateMessage(sequenceNumber, 0, Product.FISH, 1)));
+        Assertions.assertEquals(SequenceNumbers.WINDOW + 1, orders.getNextSequenceNumber());
+    }
+}
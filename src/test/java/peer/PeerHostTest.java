@@ -0,0 +1,33 @@
+package peer;
+
+import cache.UpdateMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+import warehouse.Warehouse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class PeerHostTest {
+
+    @Test
+    public void localPeersTest() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        Warehouse warehouse = new Warehouse(false, directory.resolve("inventory.txt").toString(), directory.resolve("inventory_log.txt").toString());
+        APeer seller0 = PeerHost.createPeer(0, false, warehouse, 2);
+        APeer seller1 = PeerHost.createPeer(1, false, warehouse, 2);
+
+        // peers of the same JVM are used directly, without the registry
+        seller0.start();
+        seller1.start();
+        Assertions.assertSame(seller1, seller0.peers[1]);
+        Assertions.assertSame(seller0, seller1.peers[0]);
+
+        seller0.election(new int[] {}, 1);
+        Assertions.assertArrayEquals(new int[] { 1 }, seller0.traderIDs);
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, seller0.getTrader(Product.FISH).sell(new UpdateMessage(1, 0, Product.FISH, 2)));
+        Assertions.assertEquals(2, warehouse.lookup(Product.FISH));
+    }
+}
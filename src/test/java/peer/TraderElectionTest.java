@@ -135,4 +135,48 @@ public class TraderElectionTest {
         Assertions.assertArrayEquals(new int[] {2}, peer1.traderIDs);
         Assertions.assertArrayEquals(new int[] {2}, peer3.traderIDs);
     }
+
+    @Test
+    public void treeElectionTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        IWarehouseCache warehouseCache = new NoWarehouseCache(warehouse);
+        APeer[] peers = new APeer[7];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Buyer(i, warehouseCache, peers.length);
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+
+        // peer 2 is the root, so peer 3 (position 1) and peer 4 (position 2) are its children
+        peers[2].elect(3);
+
+        for (APeer peer : peers) {
+            Assertions.assertArrayEquals(new int[] {4, 5, 6}, peer.traderIDs);
+        }
+    }
+
+    @Test
+    public void treeElectionCrashedPeerTest() throws RemoteException {
+        Warehouse warehouse = new Warehouse();
+        IWarehouseCache warehouseCache = new NoWarehouseCache(warehouse);
+        APeer[] peers = new APeer[7];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Buyer(i, warehouseCache, peers.length);
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+
+        // peer 1 is an inner node of the tree, its children 3 and 4 are asked by the root instead
+        peers[1].crash();
+        peers[6].crash();
+        peers[0].elect(2);
+
+        Assertions.assertArrayEquals(new int[] {4, 5}, peers[0].traderIDs);
+        Assertions.assertArrayEquals(new int[] {4, 5}, peers[3].traderIDs);
+        Assertions.assertArrayEquals(new int[] {4, 5}, peers[4].traderIDs);
+        Assertions.assertNull(peers[1].traderIDs);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> peers[0].elect(6));
+    }
 }
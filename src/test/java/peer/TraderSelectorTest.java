@@ -0,0 +1,107 @@
+package peer;
+
+import cache.NoWarehouseCache;
+import cache.UpdateMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+import warehouse.Warehouse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.concurrent.CountDownLatch;
+
+public class TraderSelectorTest {
+
+    @Test
+    public void hedgeSlowTraderTest() throws IOException, InterruptedException {
+        Warehouse warehouse = createWarehouse();
+        APeer[] peers = {
+                new Seller(0, new NoWarehouseCache(warehouse), 3),
+                new Seller(1, new NoWarehouseCache(warehouse), 3) {
+                    @Override
+                    public ReplyStatus sell(UpdateMessage updateMessage) throws RemoteException {
+                        try {
+                            Thread.sleep(300); // straggler
+                        } catch (InterruptedException e) {
+                            throw new RemoteException("Interrupted.", e);
+                        }
+                        return super.sell(updateMessage);
+                    }
+                },
+                new Seller(2, new NoWarehouseCache(warehouse), 3)
+        };
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+        peers[0].election(new int[] {}, 2);
+
+        // the order is hedged with trader 2 and applied only once
+        TraderSelector traderSelector = new TraderSelector();
+        UpdateMessage updateMessage = new UpdateMessage(1, 0, Product.FISH, 4);
+        TraderSelector.Reply reply = traderSelector.send(1, new int[] {1, 2}, peers, trader -> trader.sell(updateMessage));
+        Assertions.assertEquals(2, reply.traderID());
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, reply.status());
+
+        Thread.sleep(500); // let the straggler finish
+        Assertions.assertEquals(4, warehouse.lookup(Product.FISH));
+        Assertions.assertTrue(traderSelector.getLatency(1) > traderSelector.getLatency(2));
+        Assertions.assertEquals(2, traderSelector.choose(new int[] {1, 2}));
+        Assertions.assertEquals(2, traderSelector.choose(new int[] {2, 1}));
+    }
+
+    @Test
+    public void ownerFirstTest() throws InterruptedException {
+        TraderSelector traderSelector = new TraderSelector();
+        CountDownLatch calling = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        Thread order = new Thread(() -> {
+            try {
+                traderSelector.send(1, new int[] {1}, new IPeer[2], trader -> {
+                    calling.countDown();
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        throw new RemoteException("Interrupted.", e);
+                    }
+                    return ReplyStatus.SUCCESSFUL;
+                });
+            } catch (RemoteException ignored) {}
+        });
+        order.start();
+        calling.await();
+
+        // the owner keeps the orders of its products while it is only somewhat busier than the other candidate
+        Assertions.assertEquals(1, traderSelector.choose(new int[] {1, 2}));
+        blocked.countDown();
+        order.join();
+    }
+
+    @Test
+    public void routeAroundCrashedTraderTest() throws IOException {
+        Warehouse warehouse = createWarehouse();
+        APeer[] peers = new APeer[3];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Seller(i, new NoWarehouseCache(warehouse), peers.length);
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+        peers[0].election(new int[] {}, 2);
+        peers[1].crash();
+
+        TraderSelector traderSelector = new TraderSelector();
+        UpdateMessage updateMessage = new UpdateMessage(1, 0, Product.SALT, 3);
+        TraderSelector.Reply reply = traderSelector.send(1, new int[] {1, 2}, peers, trader -> trader.sell(updateMessage));
+        Assertions.assertEquals(2, reply.traderID());
+        Assertions.assertTrue(reply.isApplied());
+        Assertions.assertEquals(3, warehouse.lookup(Product.SALT));
+    }
+
+    private static Warehouse createWarehouse() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        return new Warehouse(false, directory.resolve("inventory.txt").toString(), directory.resolve("inventory_log.txt").toString());
+    }
+}
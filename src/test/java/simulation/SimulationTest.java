@@ -0,0 +1,70 @@
+package simulation;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import peer.Buyer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class SimulationTest {
+
+    @Test
+    public void virtualClockTest() {
+        VirtualScheduler scheduler = new VirtualScheduler(1);
+        List<String> runs = new ArrayList<>();
+        scheduler.schedule(() -> runs.add("b@" + scheduler.nanoTime()), 20, TimeUnit.NANOSECONDS);
+        scheduler.schedule(() -> runs.add("a@" + scheduler.nanoTime()), 10, TimeUnit.NANOSECONDS);
+        scheduler.schedule(() -> runs.add("c@" + scheduler.nanoTime()), 20, TimeUnit.NANOSECONDS); // same time, scheduled later
+        ScheduledFuture<?> periodic = scheduler.scheduleAtFixedRate(() -> runs.add("p@" + scheduler.nanoTime()), 15, 10, TimeUnit.NANOSECONDS);
+
+        scheduler.run(30, TimeUnit.NANOSECONDS);
+        periodic.cancel(false);
+        scheduler.run(100, TimeUnit.NANOSECONDS);
+
+        Assertions.assertEquals(List.of("a@10", "p@15", "b@20", "c@20", "p@25"), runs);
+        Assertions.assertEquals(130, scheduler.nanoTime());
+        Assertions.assertEquals(0, scheduler.getPendingTasks());
+    }
+
+    @Test
+    public void reproducibleTest() throws Exception {
+        String first;
+        try (Simulation simulation = new Simulation(3, 3, 2, 42, 1, 5)) {
+            simulation.start();
+            simulation.run(300, TimeUnit.SECONDS);
+            first = simulation.getSummary();
+        }
+        String second;
+        try (Simulation simulation = new Simulation(3, 3, 2, 42, 1, 5)) {
+            simulation.start();
+            simulation.run(300, TimeUnit.SECONDS);
+            second = simulation.getSummary();
+        }
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertTrue(first.startsWith("Simulated 300 s with 6 peers."));
+        Assertions.assertFalse(first.contains("Orders: 0 buys"));
+    }
+
+    @Test
+    public void traderCrashTest() throws Exception {
+        try (Simulation simulation = new Simulation(3, 3, 2, 7, 1, 1)) {
+            simulation.crash(5, 60, TimeUnit.SECONDS);
+            simulation.start();
+            simulation.run(60, TimeUnit.SECONDS);
+            Buyer buyer = (Buyer) simulation.getPeer(0);
+            int buysBeforeCrash = buyer.getOrders().getAppliedOrders();
+
+            simulation.run(240, TimeUnit.SECONDS);
+            Assertions.assertTrue(simulation.getNetwork().isCrashed(5));
+            Assertions.assertTrue(simulation.getNetwork().getDroppedMessages() > 0);
+            // the other trader took over the products of the crashed one, so the buyers keep buying
+            Assertions.assertTrue(simulation.getPeer(4).isTrader());
+            Assertions.assertTrue(buyer.getOrders().getAppliedOrders() > buysBeforeCrash + 10);
+            Assertions.assertTrue(simulation.getSummary().contains("crashed peers: [5]"));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package transport;
+
+import cache.FIFOWarehouseCache;
+import cache.UpdateMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import peer.IPeer;
+import peer.ReplyStatus;
+import peer.Seller;
+import product.Product;
+import warehouse.IWarehouse;
+import warehouse.Warehouse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NioTransportTest {
+
+    private static Warehouse newWarehouse() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        return new Warehouse(false, directory.resolve("inventory.txt").toString(), directory.resolve("inventory_log.txt").toString());
+    }
+
+    private static NioConnection connect(NioServer server) {
+        return new NioConnection(new InetSocketAddress("127.0.0.1", server.getPort()));
+    }
+
+    @Test
+    public void warehouseTest() throws IOException {
+        NioServer server = new NioServer(0, new WarehouseEndpoint(newWarehouse()));
+        IWarehouse warehouse = new WarehouseClient(connect(server));
+
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(1, 0, Product.FISH, 5)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.buy(new UpdateMessage(1, 1, Product.FISH, 2)));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, warehouse.buy(new UpdateMessage(1, 1, Product.FISH, 2)));
+        Assertions.assertEquals(3, warehouse.lookup(Product.FISH));
+
+        ReplyStatus[] replyStatuses = warehouse.batch(List.of(
+                new UpdateMessage(2, 0, Product.SALT, 4),
+                new UpdateMessage(2, 1, Product.SALT, -9)));
+        Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL, ReplyStatus.NOT_IN_STOCK }, replyStatuses);
+
+        Assertions.assertEquals(3, warehouse.acquireLease(5, Product.FISH, 10));
+        Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL }, warehouse.buyFromLease(5, List.of(new UpdateMessage(2, 1, Product.FISH, 1))));
+        warehouse.releaseLease(5, Product.FISH, 2);
+        Assertions.assertEquals(2, warehouse.lookup(Product.FISH));
+    }
+
+    @Test
+    public void pipelinedCallsTest() throws IOException, InterruptedException {
+        NioServer server = new NioServer(0, new WarehouseEndpoint(newWarehouse()));
+        IWarehouse warehouse = new WarehouseClient(connect(server));
+        int threads = 8;
+        int sells = 200;
+        AtomicInteger failures = new AtomicInteger();
+
+        // all threads share one connection
+        List<Thread> sellers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int peerID = t;
+            Thread seller = new Thread(() -> {
+                for (int i = 1; i <= sells; i++) {
+                    try {
+                        if (warehouse.sell(new UpdateMessage(i, peerID, Product.BOARS, 1)) != ReplyStatus.SUCCESSFUL) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (RemoteException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            sellers.add(seller);
+            seller.start();
+        }
+        for (Thread seller : sellers) {
+            seller.join();
+        }
+
+        Assertions.assertEquals(0, failures.get());
+        Assertions.assertEquals(threads * sells, warehouse.lookup(Product.BOARS));
+    }
+
+    @Test
+    public void peerErrorTest() throws IOException {
+        Seller trader = new Seller(0, new FIFOWarehouseCache(newWarehouse()), 1);
+        trader.setPeers(new IPeer[] { trader });
+        trader.election(new int[] {}, 1);
+
+        NioServer server = new NioServer(0, new PeerEndpoint(trader));
+        IPeer peer = new PeerClient(connect(server), trader);
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, peer.sell(new UpdateMessage(1, 1, Product.SALT, 3)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, peer.buy(new UpdateMessage(1, 2, Product.SALT, 3)));
+
+        // a crashed trader throws, the client gets a RemoteException like with RMI
+        trader.crash();
+        Assertions.assertThrows(RemoteException.class, () -> peer.buy(new UpdateMessage(2, 2, Product.SALT, 1)));
+    }
+
+    @Test
+    public void brokenConnectionTest() throws IOException, InterruptedException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        IWarehouse warehouse = new WarehouseClient(new NioConnection((InetSocketAddress) serverChannel.getLocalAddress()));
+
+        // the first connection breaks before the reply, the second one answers every lookup with 7
+        Thread server = new Thread(() -> {
+            try (SocketChannel broken = serverChannel.accept()) {
+                broken.read(ByteBuffer.allocate(Protocol.HEADER_SIZE + 1));
+            } catch (IOException ignored) { }
+            try (SocketChannel channel = serverChannel.accept()) {
+                ByteBuffer request = ByteBuffer.allocate(Protocol.HEADER_SIZE + 1);
+                while (true) {
+                    request.clear();
+                    while (request.hasRemaining()) {
+                        if (channel.read(request) < 0) {
+                            return;
+                        }
+                    }
+                    ByteBuffer reply = Protocol.frame(request.getInt(4), Protocol.OK, ByteBuffer.allocate(4).putInt(7).flip());
+                    while (reply.hasRemaining()) {
+                        channel.write(reply);
+                    }
+                }
+            } catch (IOException ignored) { }
+        });
+        server.start();
+
+        Assertions.assertThrows(RemoteException.class, () -> warehouse.lookup(Product.FISH));
+        Assertions.assertEquals(7, warehouse.lookup(Product.FISH));
+        Assertions.assertEquals(7, warehouse.lookup(Product.SALT));
+        serverChannel.close();
+        server.join(5000);
+    }
+}
@@ -0,0 +1,34 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class EventLogTest {
+
+    @Test
+    public void decodeTest() throws IOException {
+        Path eventFile = Files.createTempFile("events", ".bin");
+        EventLog eventLog = new EventLog(eventFile.toString());
+        eventLog.record(Event.BUY_ATTEMPT, 3, 1, Product.SALT, 5);
+        eventLog.record(Event.NOT_A_TRADER, 3, 2, null, 0);
+        eventLog.record(Event.WAREHOUSE_SELL, 4, -1, Product.FISH, 7);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EventLogDecoder.decode(eventFile.toString(), new PrintStream(output, true, StandardCharsets.UTF_8));
+        String[] lines = output.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+
+        Assertions.assertEquals(3, lines.length);
+        Assertions.assertTrue(lines[0].endsWith(Messages.getBuyAttemptMessage(3, 1, Product.SALT, 5)));
+        Assertions.assertTrue(lines[1].endsWith(Messages.getNotATraderMessage(3, 2)));
+        Assertions.assertTrue(lines[2].endsWith(Messages.getWarehouseSellMessage(Product.FISH, 7)));
+        Files.deleteIfExists(eventFile);
+    }
+}
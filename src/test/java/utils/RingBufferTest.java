@@ -0,0 +1,65 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RingBufferTest {
+
+    @Test
+    public void capacityTest() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        Assertions.assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(buffer.offer(i));
+        }
+        Assertions.assertFalse(buffer.offer(4));
+
+        Assertions.assertEquals(0, buffer.poll());
+        Assertions.assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            Assertions.assertEquals(i, buffer.poll());
+        }
+        Assertions.assertNull(buffer.poll());
+    }
+
+    @Test
+    public void multipleProducersTest() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    while (!buffer.offer(producer * 10000 + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+
+        // every element arrives once, in order per producer
+        int[] last = { -1, -1, -1, -1 };
+        int received = 0;
+        while (received < 4 * 10000) {
+            Integer element = buffer.poll();
+            if (element == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int producer = element / 10000;
+            Assertions.assertEquals(last[producer] + 1, element % 10000);
+            last[producer] = element % 10000;
+            received++;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assertions.assertNull(buffer.poll());
+    }
+}
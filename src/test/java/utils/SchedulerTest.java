@@ -0,0 +1,51 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SchedulerTest {
+
+    @Test
+    public void periodicTaskTest() throws InterruptedException {
+        CountDownLatch runs = new CountDownLatch(3);
+        ScheduledFuture<?> future = Scheduler.scheduleAtFixedRate(runs::countDown, 0, 10, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(runs.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+    }
+
+    @Test
+    public void failingTaskTest() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = Scheduler.scheduleAtFixedRate(() -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException();
+        }, 10, 10, TimeUnit.MILLISECONDS);
+
+        // like with ScheduledExecutorService, the task is not run again after it failed
+        Thread.sleep(200);
+        Assertions.assertTrue(future.isCancelled());
+        Assertions.assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void overlappingRunsTest() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ScheduledFuture<?> future = Scheduler.scheduleAtFixedRate(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException ignored) { }
+            running.decrementAndGet();
+        }, 0, 5, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(200);
+        future.cancel(false);
+        Assertions.assertEquals(1, maxRunning.get());
+    }
+}
@@ -0,0 +1,51 @@
+package warehouse;
+
+import metrics.Metrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class InventoryLogTest {
+
+    @Test
+    public void groupCommitTest() throws IOException {
+        Path directory = Files.createTempDirectory("inventory");
+        String snapshotFile = directory.resolve("inventory.txt").toString();
+        String logFile = directory.resolve("inventory_log.txt").toString();
+        InventoryLog inventoryLog = new InventoryLog(snapshotFile, logFile, 16, 50000);
+        inventoryLog.reset();
+        long batchesBefore = Metrics.distribution("warehouse.commit.batch").getCount();
+
+        // concurrent appends share the fsyncs, every append returns once its record is written
+        List<CompletableFuture<Void>> appends = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            String record = i + ",1,FISH,1";
+            appends.add(CompletableFuture.runAsync(() -> {
+                try {
+                    inventoryLog.append(List.of(record));
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).join();
+        long batches = Metrics.distribution("warehouse.commit.batch").getCount() - batchesBefore;
+        Assertions.assertTrue(batches >= 2 && batches < 32);
+
+        List<String> snapshotLines = new ArrayList<>();
+        List<String> logLines = new ArrayList<>();
+        new InventoryLog(snapshotFile, logFile).recover(snapshotLines, logLines);
+        Assertions.assertEquals(32, logLines.size());
+
+        // appends after closing fail instead of waiting forever
+        inventoryLog.close();
+        Assertions.assertThrows(IOException.class, () -> inventoryLog.append(List.of("0,2,FISH,1")));
+    }
+}
@@ -0,0 +1,118 @@
+package warehouse;
+
+import cache.UpdateMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import peer.ReplyStatus;
+import product.Product;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.List;
+
+public class ReplicationTest {
+
+    @Test
+    public void logShippingTest() throws IOException, InterruptedException {
+        Warehouse primary = createWarehouse(true);
+        primary.sell(new UpdateMessage(1, 1, Product.FISH, 8));
+
+        // the backup starts with a snapshot and receives the later records
+        Warehouse backup = createWarehouse(false);
+        primary.addBackup(backup);
+        Assertions.assertEquals(8, backup.lookup(Product.FISH));
+        primary.buy(new UpdateMessage(1, 2, Product.FISH, 3));
+        primary.sell(new UpdateMessage(2, 1, Product.SALT, 4));
+
+        // a write returns once the backup applied it
+        Assertions.assertEquals(primary.getLogIndex(), backup.getLogIndex());
+
+        Assertions.assertEquals(5, backup.lookup(Product.FISH, 1000));
+        Assertions.assertEquals(4, backup.lookup(Product.SALT, 1000));
+        Assertions.assertEquals(1, primary.getBackups().size());
+
+        // backups don't take writes, and aren't promoted while the primary is alive
+        Assertions.assertThrows(RemoteException.class, () -> backup.sell(new UpdateMessage(3, 1, Product.SALT, 1)));
+        Assertions.assertFalse(backup.promote());
+    }
+
+    @Test
+    public void failoverTest() throws IOException, InterruptedException {
+        Warehouse primary = createWarehouse(true);
+        Warehouse backup = createWarehouse(false);
+        Warehouse otherBackup = createWarehouse(false);
+        primary.addBackup(backup);
+        primary.addBackup(otherBackup);
+        FailoverWarehouse warehouse = new FailoverWarehouse(primary, primary);
+
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(1, 1, Product.BOARS, 6)));
+        awaitReplication(primary, backup);
+        awaitReplication(primary, otherBackup);
+        primary.crash();
+
+        // no promotion before the backups missed several keep-alives
+        Assertions.assertFalse(backup.promote());
+        Thread.sleep(Warehouse.PROMOTION_TIMEOUT + LogShipper.REPLICATION_INTERVAL);
+
+        // the backup is promoted and knows which requests have been applied already
+        long logIndex = backup.getLogIndex();
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, warehouse.sell(new UpdateMessage(1, 1, Product.BOARS, 6)));
+        Assertions.assertEquals(logIndex, backup.getLogIndex());
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.buy(new UpdateMessage(1, 2, Product.BOARS, 2)));
+        Assertions.assertEquals(4, warehouse.lookup(Product.BOARS));
+        Assertions.assertEquals(4, backup.lookup(Product.BOARS));
+
+        // the other backup follows the new primary
+        Assertions.assertEquals(List.of(otherBackup), backup.getBackups());
+        Assertions.assertEquals(backup.getLogIndex(), otherBackup.getLogIndex());
+        Assertions.assertEquals(4, otherBackup.lookup(Product.BOARS, 1000));
+    }
+
+    @Test
+    public void fencingTest() throws IOException, InterruptedException {
+        Path primaryDirectory = Files.createTempDirectory("warehouse");
+        Warehouse primary = createWarehouse(primaryDirectory, false, true);
+        Warehouse backup = createWarehouse(false);
+        primary.addBackup(backup);
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, primary.sell(new UpdateMessage(1, 1, Product.SALT, 5)));
+
+        // a replica that lost its own primary is promoted, the primary above can't be reached by it
+        Warehouse lostPrimary = createWarehouse(true);
+        Warehouse newPrimary = createWarehouse(false);
+        lostPrimary.addBackup(newPrimary);
+        lostPrimary.crash();
+        Thread.sleep(Warehouse.PROMOTION_TIMEOUT + LogShipper.REPLICATION_INTERVAL);
+        Assertions.assertTrue(newPrimary.promote());
+
+        // the backup follows the new primary, so the old primary learns about the newer epoch and steps down
+        newPrimary.addBackup(backup);
+        Assertions.assertEquals(ReplyStatus.ERROR_DURING_WRITE, primary.sell(new UpdateMessage(1, 2, Product.SALT, 1)));
+        Assertions.assertThrows(RemoteException.class, () -> primary.sell(new UpdateMessage(1, 3, Product.SALT, 1)));
+        Assertions.assertEquals(0, backup.lookup(Product.SALT, 1000));
+
+        // the old primary can't attach backups anymore
+        Warehouse lateBackup = createWarehouse(false);
+        newPrimary.addBackup(lateBackup);
+        Assertions.assertThrows(RemoteException.class, () -> lateBackup.install(primary, 0, 0, List.of()));
+
+        // the failed write is in the log of the old primary, so it can't be recovered from it
+        Assertions.assertThrows(RemoteException.class, () -> createWarehouse(primaryDirectory, true, true));
+    }
+
+    private static void awaitReplication(Warehouse primary, Warehouse backup) throws RemoteException, InterruptedException {
+        for (int i = 0; i < 100 && backup.getLogIndex() < primary.getLogIndex(); i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(primary.getLogIndex(), backup.getLogIndex());
+    }
+
+    private static Warehouse createWarehouse(boolean primary) throws IOException {
+        return createWarehouse(Files.createTempDirectory("warehouse"), false, primary);
+    }
+
+    private static Warehouse createWarehouse(Path directory, boolean recover, boolean primary) throws IOException {
+        return new Warehouse(recover, directory.resolve("inventory.txt").toString(), directory.resolve("inventory_log.txt").toString(), primary);
+    }
+}
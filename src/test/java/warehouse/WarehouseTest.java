@@ -0,0 +1,273 @@
+package warehouse;
+
+import cache.UpdateMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import peer.ReplyStatus;
+import product.Product;
+import simulation.VirtualScheduler;
+import utils.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WarehouseTest {
+
+    @Test
+    public void recoveryTest() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        String inventoryFile = directory.resolve("inventory.txt").toString();
+        String inventoryLogFile = directory.resolve("inventory_log.txt").toString();
+
+        Warehouse warehouse = new Warehouse(false, inventoryFile, inventoryLogFile);
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(1, 0, Product.FISH, 5)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(1, 1, Product.SALT, 3)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.buy(new UpdateMessage(1, 2, Product.FISH, 2)));
+
+        // state is rebuilt from the log tail
+        Warehouse recovered = new Warehouse(true, inventoryFile, inventoryLogFile);
+        Assertions.assertEquals(3, recovered.lookup(Product.FISH));
+        Assertions.assertEquals(3, recovered.lookup(Product.SALT));
+        Assertions.assertEquals(0, recovered.lookup(Product.BOARS));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, recovered.buy(new UpdateMessage(1, 2, Product.FISH, 2)));
+    }
+
+    @Test
+    public void recoveryAfterCompactionTest() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        String inventoryFile = directory.resolve("inventory.txt").toString();
+        String inventoryLogFile = directory.resolve("inventory_log.txt").toString();
+
+        // enough mutations to create a snapshot and a log tail
+        Warehouse warehouse = new Warehouse(false, inventoryFile, inventoryLogFile);
+        for (int i = 1; i <= Warehouse.SNAPSHOT_INTERVAL + 10; i++) {
+            Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(i, 0, Product.BOARS, 1)));
+        }
+
+        Warehouse recovered = new Warehouse(true, inventoryFile, inventoryLogFile);
+        Assertions.assertEquals(Warehouse.SNAPSHOT_INTERVAL + 10, recovered.lookup(Product.BOARS));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, recovered.sell(new UpdateMessage(Warehouse.SNAPSHOT_INTERVAL, 0, Product.BOARS, 1)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, recovered.sell(new UpdateMessage(Warehouse.SNAPSHOT_INTERVAL + 11, 0, Product.BOARS, 1)));
+    }
+
+    @Test
+    public void recoveryAfterInterruptedCompactionTest() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        String inventoryFile = directory.resolve("inventory.txt").toString();
+        Path inventoryLogFile = directory.resolve("inventory_log.txt");
+
+        Warehouse warehouse = new Warehouse(false, inventoryFile, inventoryLogFile.toString());
+        for (int i = 1; i < Warehouse.SNAPSHOT_INTERVAL; i++) {
+            Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(i, 0, Product.BOARS, 1)));
+        }
+        List<String> oldLog = Files.readAllLines(inventoryLogFile);
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(Warehouse.SNAPSHOT_INTERVAL, 0, Product.BOARS, 1)));
+
+        // the compaction crashed after the snapshot was written, the log wasn't truncated yet
+        Files.write(inventoryLogFile, oldLog);
+        Warehouse recovered = new Warehouse(true, inventoryFile, inventoryLogFile.toString());
+        Assertions.assertEquals(Warehouse.SNAPSHOT_INTERVAL, recovered.lookup(Product.BOARS));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, recovered.sell(new UpdateMessage(Warehouse.SNAPSHOT_INTERVAL + 1, 0, Product.BOARS, 1)));
+
+        // the records appended after the recovery count
+        Warehouse recoveredAgain = new Warehouse(true, inventoryFile, inventoryLogFile.toString());
+        Assertions.assertEquals(Warehouse.SNAPSHOT_INTERVAL + 1, recoveredAgain.lookup(Product.BOARS));
+    }
+
+    @Test
+    public void sequenceWindowTest() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        String inventoryFile = directory.resolve("inventory.txt").toString();
+        String inventoryLogFile = directory.resolve("inventory_log.txt").toString();
+
+        // orders of a peer that arrive out of order are all applied once
+        Warehouse warehouse = new Warehouse(false, inventoryFile, inventoryLogFile);
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(3, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(1, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, warehouse.sell(new UpdateMessage(3, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(2, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, warehouse.sell(new UpdateMessage(1, 0, Product.FISH, 1)));
+        Assertions.assertEquals(3, warehouse.lookup(Product.FISH));
+
+        // sequence numbers below the window count as applied
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(5 + SequenceNumbers.WINDOW, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, warehouse.sell(new UpdateMessage(4, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(6, 0, Product.FISH, 1)));
+
+        // enough mutations for a snapshot, one sequence number is left out and can still be applied after recovery
+        int gap = Warehouse.SNAPSHOT_INTERVAL - 3;
+        for (int i = 6 + SequenceNumbers.WINDOW; i <= Warehouse.SNAPSHOT_INTERVAL + 10; i++) {
+            if (i != gap) {
+                Assertions.assertEquals(ReplyStatus.SUCCESSFUL, warehouse.sell(new UpdateMessage(i, 0, Product.FISH, 1)));
+            }
+        }
+        Warehouse recovered = new Warehouse(true, inventoryFile, inventoryLogFile);
+        Assertions.assertEquals(warehouse.lookup(Product.FISH), recovered.lookup(Product.FISH));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, recovered.sell(new UpdateMessage(gap - 1, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, recovered.sell(new UpdateMessage(gap, 0, Product.FISH, 1)));
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, recovered.sell(new UpdateMessage(gap, 0, Product.FISH, 1)));
+    }
+
+    @Test
+    public void concurrentBuySellTest() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("warehouse");
+        Warehouse warehouse = new Warehouse(false, directory.resolve("inventory.txt").toString(), directory.resolve("inventory_log.txt").toString());
+        AtomicInteger bought = new AtomicInteger();
+
+        // every thread is a peer that sells and buys a product, peers share products.
+        List<Thread> threads = new ArrayList<>();
+        for (int peerID = 0; peerID < 8; peerID++) {
+            int id = peerID;
+            Product product = Product.values()[peerID % Product.values().length];
+            threads.add(new Thread(() -> {
+                try {
+                    int sequenceNumber = 1;
+                    for (int i = 0; i < 200; i++) {
+                        warehouse.sell(new UpdateMessage(sequenceNumber++, id, product, 1));
+                        if (warehouse.buy(new UpdateMessage(sequenceNumber++, id, product, 2)) == ReplyStatus.SUCCESSFUL) {
+                            bought.addAndGet(2);
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int stock = 0;
+        for (Product product : Product.values()) {
+            Assertions.assertTrue(warehouse.lookup(product) >= 0);
+            stock += warehouse.lookup(product);
+        }
+        Assertions.assertEquals(8 * 200, stock + bought.get());
+    }
+
+    @Test
+    public void batchTest() throws IOException {
+        Warehouse warehouse = new Warehouse();
+        ReplyStatus[] replyStatuses = warehouse.batch(List.of(
+                new UpdateMessage(1, 0, Product.SALT, 4),
+                new UpdateMessage(1, 1, Product.SALT, -5),
+                new UpdateMessage(1, 0, Product.SALT, 1),
+                new UpdateMessage(2, 0, Product.FISH, 2)));
+
+        Assertions.assertArrayEquals(new ReplyStatus[] {
+                ReplyStatus.SUCCESSFUL,
+                ReplyStatus.NOT_IN_STOCK,
+                ReplyStatus.LOW_SEQUENCE_NUMBER,
+                ReplyStatus.SUCCESSFUL }, replyStatuses);
+        Assertions.assertEquals(4, warehouse.lookup(Product.SALT));
+        Assertions.assertEquals(2, warehouse.lookup(Product.FISH));
+
+        replyStatuses = warehouse.batch(List.of(new UpdateMessage(2, 1, Product.SALT, -3), new UpdateMessage(3, 1, Product.FISH, -2)));
+        Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL, ReplyStatus.SUCCESSFUL }, replyStatuses);
+        Assertions.assertEquals(1, warehouse.lookup(Product.SALT));
+        Assertions.assertEquals(0, warehouse.lookup(Product.FISH));
+    }
+
+    @Test
+    public void batchingWarehouseTest() throws IOException, InterruptedException {
+        Warehouse warehouse = new Warehouse();
+        IWarehouse batchingWarehouse = new BatchingWarehouse(warehouse);
+        AtomicInteger successful = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int peerID = 0; peerID < 8; peerID++) {
+            int id = peerID;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int sequenceNumber = 1; sequenceNumber <= 50; sequenceNumber++) {
+                        if (batchingWarehouse.sell(new UpdateMessage(sequenceNumber, id, Product.FISH, 1)) == ReplyStatus.SUCCESSFUL) {
+                            successful.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assertions.assertEquals(8 * 50, successful.get());
+        Assertions.assertEquals(8 * 50, warehouse.lookup(Product.FISH));
+        Assertions.assertEquals(ReplyStatus.NOT_IN_STOCK, batchingWarehouse.buy(new UpdateMessage(51, 0, Product.FISH, 8 * 50 + 1)));
+        Assertions.assertEquals(ReplyStatus.SUCCESSFUL, batchingWarehouse.buy(new UpdateMessage(51, 0, Product.FISH, 8 * 50)));
+    }
+
+    @Test
+    public void leaseRecoveryTest() throws IOException {
+        Path directory = Files.createTempDirectory("warehouse");
+        String inventoryFile = directory.resolve("inventory.txt").toString();
+        String inventoryLogFile = directory.resolve("inventory_log.txt").toString();
+
+        Warehouse warehouse = new Warehouse(false, inventoryFile, inventoryLogFile);
+        warehouse.sell(new UpdateMessage(1, 0, Product.FISH, 10));
+        Assertions.assertEquals(8, warehouse.acquireLease(5, Product.FISH, 8));
+        Assertions.assertEquals(2, warehouse.acquireLease(6, Product.FISH, 8));
+        Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL }, warehouse.buyFromLease(5, List.of(new UpdateMessage(1, 1, Product.FISH, 3))));
+        warehouse.releaseLease(5, Product.FISH, 5);
+
+        Warehouse recovered = new Warehouse(true, inventoryFile, inventoryLogFile);
+        Assertions.assertEquals(5, recovered.lookup(Product.FISH));
+
+        // the buy from the lease is known after the recovery
+        Assertions.assertEquals(ReplyStatus.LOW_SEQUENCE_NUMBER, recovered.buy(new UpdateMessage(1, 1, Product.FISH, 3)));
+
+        // a buy reported after the lease ended has been handed out already, it is taken from the inventory
+        Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL }, recovered.buyFromLease(5, List.of(new UpdateMessage(2, 1, Product.FISH, 1))));
+        Assertions.assertEquals(4, recovered.lookup(Product.FISH));
+
+        // releases are limited by the outstanding lease
+        recovered.releaseLease(5, Product.FISH, 5);
+        Assertions.assertEquals(4, recovered.lookup(Product.FISH));
+        recovered.releaseLease(6, Product.FISH, 5);
+        Assertions.assertEquals(6, recovered.lookup(Product.FISH));
+        Assertions.assertEquals(6, new Warehouse(true, inventoryFile, inventoryLogFile).lookup(Product.FISH));
+    }
+
+    @Test
+    public void leaseExpiryTest() throws IOException {
+        VirtualScheduler scheduler = new VirtualScheduler(1);
+        Scheduler.install(scheduler);
+        try {
+            Path directory = Files.createTempDirectory("warehouse");
+            String inventoryFile = directory.resolve("inventory.txt").toString();
+            String inventoryLogFile = directory.resolve("inventory_log.txt").toString();
+            Warehouse warehouse = new Warehouse(false, inventoryFile, inventoryLogFile);
+            warehouse.sell(new UpdateMessage(1, 0, Product.FISH, 10));
+            Assertions.assertEquals(8, warehouse.acquireLease(5, Product.FISH, 8));
+            Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL }, warehouse.buyFromLease(5, List.of(new UpdateMessage(1, 1, Product.FISH, 3))));
+
+            // the lease survives the recovery, its remaining time starts again
+            Warehouse recovered = new Warehouse(true, inventoryFile, inventoryLogFile);
+            warehouse.crash();
+            scheduler.run(Warehouse.LEASE_DURATION, TimeUnit.MILLISECONDS);
+            Assertions.assertEquals(2, recovered.lookup(Product.FISH));
+
+            // the trader never releases the lease, the unused stock is reclaimed after the grace period
+            scheduler.run(Warehouse.LEASE_GRACE_PERIOD * 2, TimeUnit.MILLISECONDS);
+            Assertions.assertEquals(7, recovered.lookup(Product.FISH));
+            Assertions.assertArrayEquals(new ReplyStatus[] { ReplyStatus.SUCCESSFUL }, recovered.buyFromLease(5, List.of(new UpdateMessage(2, 1, Product.FISH, 1))));
+            Assertions.assertEquals(6, recovered.lookup(Product.FISH));
+            recovered.crash();
+        } finally {
+            Scheduler.install(null);
+        }
+    }
+}
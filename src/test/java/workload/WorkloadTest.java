@@ -0,0 +1,93 @@
+package workload;
+
+import metrics.Histogram;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import simulation.VirtualScheduler;
+import utils.Scheduler;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkloadTest {
+
+    @Test
+    public void zipfTest() {
+        ZipfDistribution uniform = new ZipfDistribution(3, 0);
+        ZipfDistribution skewed = new ZipfDistribution(3, 2);
+        Assertions.assertEquals(1.0 / 3, uniform.getProbability(1), 1e-9);
+        Assertions.assertTrue(skewed.getProbability(0) > skewed.getProbability(1));
+        Assertions.assertTrue(skewed.getProbability(1) > skewed.getProbability(2));
+
+        Random random = new Random(677);
+        int[] counts = new int[3];
+        for (int i = 0; i < 10000; i++) {
+            counts[skewed.sample(random)]++;
+        }
+        Assertions.assertEquals(skewed.getProbability(0), counts[0] / 10000.0, 0.02);
+        Assertions.assertEquals(skewed.getProbability(2), counts[2] / 10000.0, 0.02);
+    }
+
+    @Test
+    public void expectedIntervalTest() {
+        Histogram histogram = new Histogram();
+        histogram.recordWithExpectedInterval(1000, 100);
+        Assertions.assertEquals(10, histogram.getCount());
+        Assertions.assertEquals(1000, histogram.getMax());
+
+        histogram.recordWithExpectedInterval(50, 100);
+        Assertions.assertEquals(11, histogram.getCount());
+    }
+
+    @Test
+    public void openLoopTest() {
+        VirtualScheduler scheduler = new VirtualScheduler(1);
+        Scheduler.install(scheduler);
+        try {
+            Workload workload = new Workload(Workload.Mode.OPEN, Workload.Arrival.CONSTANT, 10, 1, 0, 0);
+            Histogram latency = new Histogram();
+            AtomicInteger orders = new AtomicInteger();
+            // every order takes 250 ms, much longer than the 100 ms between the orders
+            LoadGenerator generator = new LoadGenerator(workload, 1000, () -> {
+                orders.incrementAndGet();
+                scheduler.advance(TimeUnit.MILLISECONDS.toNanos(250));
+                return true;
+            }, latency);
+            generator.start();
+            scheduler.run(10, TimeUnit.SECONDS);
+            generator.stop();
+
+            // the orders still arrive at the rate after the first second, they don't wait for the ones before
+            Assertions.assertEquals(90, orders.get(), 1);
+            Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(250), latency.getMax());
+        } finally {
+            Scheduler.install(null);
+        }
+    }
+
+    @Test
+    public void closedLoopTest() {
+        VirtualScheduler scheduler = new VirtualScheduler(1);
+        Scheduler.install(scheduler);
+        try {
+            Workload workload = new Workload(Workload.Mode.CLOSED, Workload.Arrival.POISSON, 0, 2, 50, 0);
+            Histogram latency = new Histogram();
+            AtomicInteger orders = new AtomicInteger();
+            LoadGenerator generator = new LoadGenerator(workload, 1000, () -> {
+                orders.incrementAndGet();
+                scheduler.advance(TimeUnit.MILLISECONDS.toNanos(50));
+                return true;
+            }, latency);
+            generator.start();
+            scheduler.run(11, TimeUnit.SECONDS);
+            generator.stop();
+
+            // two loops, each places an order every 100 ms after the first second
+            Assertions.assertEquals(200, orders.get(), 10);
+            Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(50), latency.getMax());
+        } finally {
+            Scheduler.install(null);
+        }
+    }
+}